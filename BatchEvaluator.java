@@ -0,0 +1,183 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Evaluates a file (or stdin) of expressions, one per line, and writes one
+ * result per line in input order.
+ *
+ * Usage: java BatchEvaluator [--float] [--cache <entries>] <input|-> <output|->
+ *
+ * Lines are read in chunks through a buffered NIO channel reader. Each chunk
+ * is evaluated on the common ForkJoinPool while the next chunk is being read.
+ * A line that fails to evaluate is written as "Invalid expression: ...",
+ * the same text the interactive calculator prints, and the batch carries on.
+ * With --cache, repeated expressions are answered from an {@link ExpressionCache}.
+ */
+public class BatchEvaluator {
+    private static final int CHUNK_LINES = 1 << 16;
+    private static final int SPLIT_THRESHOLD = 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ExpressionEngine engine = new ExpressionEngine();
+    private final boolean isFloatMode;
+    private final ExpressionCache cache;
+    private final LongAdder errors = new LongAdder();
+    private long lines;
+
+    public BatchEvaluator(boolean isFloatMode) {
+        this(isFloatMode, 0);
+    }
+
+    /** @param cacheEntries size of the result cache, or 0 for no cache */
+    public BatchEvaluator(boolean isFloatMode, int cacheEntries) {
+        this.isFloatMode = isFloatMode;
+        this.cache = cacheEntries > 0 ? new ExpressionCache(engine, cacheEntries) : null;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean floatMode = false;
+        int cacheEntries = 0;
+        int arg = 0;
+        while (arg < args.length && args[arg].startsWith("--")) {
+            if (args[arg].equals("--float")) {
+                floatMode = true;
+                arg++;
+            } else if (args[arg].equals("--cache") && arg + 1 < args.length) {
+                cacheEntries = Integer.parseInt(args[arg + 1]);
+                arg += 2;
+            } else {
+                break;
+            }
+        }
+        if (args.length - arg != 2) {
+            System.out.println("Usage: java BatchEvaluator [--float] [--cache <entries>] <input|-> <output|->");
+            return;
+        }
+
+        BatchEvaluator batch = new BatchEvaluator(floatMode, cacheEntries);
+        long start = System.nanoTime();
+        try (BufferedReader in = openInput(args[arg]);
+             Writer out = openOutput(args[arg + 1])) {
+            batch.run(in, out);
+        }
+        System.err.printf("Evaluated %d expressions (%d invalid) in %.2f s%n",
+                batch.getLines(), batch.getErrors(), (System.nanoTime() - start) / 1e9);
+        if (batch.cache != null) {
+            System.err.println(batch.cache);
+        }
+    }
+
+    /** Evaluates every line of {@code in} and writes the results to {@code out}. */
+    public void run(BufferedReader in, Writer out) throws IOException {
+        ForkJoinTask<?> pending = null;
+        String[] pendingResults = null;
+        int pendingCount = 0;
+
+        while (true) {
+            String[] chunk = new String[CHUNK_LINES];
+            int count = 0;
+            String line;
+            while (count < CHUNK_LINES && (line = in.readLine()) != null) {
+                chunk[count++] = line;
+            }
+
+            if (pending != null) {
+                pending.join();
+                write(out, pendingResults, pendingCount);
+            }
+            if (count == 0) break;
+
+            pendingResults = new String[count];
+            pendingCount = count;
+            pending = ForkJoinPool.commonPool().submit(new EvaluateRange(chunk, pendingResults, 0, count));
+        }
+        out.flush();
+    }
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    private void write(Writer out, String[] results, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.write(results[i]);
+            out.write('\n');
+        }
+        lines += count;
+    }
+
+    private String evaluate(String line) {
+        try {
+            if (isFloatMode) {
+                return Double.toString(cache != null ? cache.evaluateFloat(line) : engine.evaluateFloat(line));
+            }
+            return Integer.toString(cache != null ? cache.evaluateInt(line) : engine.evaluateInt(line));
+        } catch (RuntimeException e) {
+            errors.increment();
+            return "Invalid expression: " + e.getMessage();
+        }
+    }
+
+    private static BufferedReader openInput(String name) throws IOException {
+        Reader reader = name.equals("-")
+                ? Channels.newReader(Channels.newChannel(System.in), StandardCharsets.UTF_8)
+                : Channels.newReader(FileChannel.open(Paths.get(name), StandardOpenOption.READ), StandardCharsets.UTF_8);
+        return new BufferedReader(reader, BUFFER_SIZE);
+    }
+
+    private static Writer openOutput(String name) throws IOException {
+        if (name.equals("-")) {
+            return new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+        FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        return new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /** Evaluates lines[from, to) into results, splitting until ranges are small. */
+    private final class EvaluateRange extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] lines;
+        private final String[] results;
+        private final int from;
+        private final int to;
+
+        EvaluateRange(String[] lines, String[] results, int from, int to) {
+            this.lines = lines;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    results[i] = evaluate(lines[i]);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new EvaluateRange(lines, results, from, mid),
+                    new EvaluateRange(lines, results, mid, to));
+        }
+    }
+}
@@ -1,12 +1,26 @@
-import java.sql.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.Scanner;
 
 public class CRUD{
-    private static final String URL = "jdbc:mysql://localhost:3306/student";
+    private static final String URL = "jdbc:mysql://localhost:3306/student?rewriteBatchedStatements=true";
     private static final String USER = "root";
     private static final String PASSWORD = "gautham";
+    private static final ConnectionPool POOL = ConnectionPool.shared(URL, USER, PASSWORD);
+    // MySQL behind a cache, or a local log file with -Demployee.store=<file>; opened by main
+    private static EmployeeStore STORE;
 
     public static void main(String[] args) {
+        try {
+            STORE = EmployeeStore.configured(POOL);
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
         createTable(); // Ensure table exists
 
@@ -16,7 +30,8 @@ public class CRUD{
             System.out.println("2. Read All Employees");
             System.out.println("3. Update Employee Salary");
             System.out.println("4. Delete Employee");
-            System.out.println("5. Exit");
+            System.out.println("5. Bulk Import Employees from CSV");
+            System.out.println("6. Exit");
             System.out.print("Select an option: ");
 
             int choice = scanner.nextInt();
@@ -46,8 +61,18 @@ public class CRUD{
                     deleteEmployee(id);
                 }
                 case 5 -> {
+                    System.out.print("Enter CSV file path: ");
+                    String path = scanner.nextLine().trim();
+                    importEmployees(path, readChunkSize(scanner));
+                }
+                case 6 -> {
                     System.out.println("Exiting...");
                     scanner.close();
+                    try {
+                        STORE.close();
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
                     return;
                 }
                 default -> System.out.println("Invalid option. Try again.");
@@ -56,57 +81,76 @@ public class CRUD{
     }
 
     public static void createTable() {
-        String sql = "CREATE TABLE IF NOT EXISTS employees ("
-                   + "id INT AUTO_INCREMENT PRIMARY KEY, "
-                   + "name VARCHAR(100) NOT NULL, "
-                   + "email VARCHAR(100), "
-                   + "salary DECIMAL(10, 2))";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(sql);
+        try {
+            STORE.createTableIfNotExists(true);
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     public static void insertEmployee(String name, String email, double salary) {
-        String sql = "INSERT INTO employees (name, email, salary) VALUES (?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, name);
-            pstmt.setString(2, email);
-            pstmt.setDouble(3, salary);
-            pstmt.executeUpdate();
+        try {
+            STORE.insert(name, email, salary);
             System.out.println("Employee added.");
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
+    /** Asks until the answer is empty (the default) or a positive whole number. */
+    private static int readChunkSize(Scanner scanner) {
+        while (true) {
+            System.out.print("Rows per commit [" + EmployeeCsvImporter.DEFAULT_CHUNK_SIZE + "]: ");
+            String answer = scanner.nextLine().trim();
+            if (answer.isEmpty()) return EmployeeCsvImporter.DEFAULT_CHUNK_SIZE;
+            try {
+                int chunkSize = Integer.parseInt(answer);
+                if (chunkSize > 0) return chunkSize;
+            } catch (NumberFormatException e) {
+                // asked again below
+            }
+            System.out.println("Please enter a positive whole number, or nothing for the default.");
+        }
+    }
+
+    public static void importEmployees(String path, int chunkSize) {
+        try {
+            EmployeeCsvImporter.Report report = EmployeeCsvImporter.forStore(STORE, POOL, chunkSize)
+                    .importFile(Path.of(path), rows -> System.out.printf("\r  %,d rows read", rows));
+            System.out.println();
+            System.out.println(report);
+            report.getRejections().stream().limit(20).forEach(rejection -> System.out.println("  " + rejection));
+            if (report.getRejected() > 20) System.out.println("  ...");
+        } catch (IOException e) {
+            System.out.println("Could not read " + path + ": " + e.getMessage());
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            STORE.invalidateAll(); // a JDBC import writes around the cache
+        }
+    }
+
+    // Reads the table a page at a time and writes each page through one buffer,
+    // so memory stays flat and the console is not flushed once per row.
     public static void readEmployees() {
-        String sql = "SELECT * FROM employees";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            System.out.println("\n--- Employees ---");
-            while (rs.next()) {
-                System.out.printf("ID: %d | Name: %s | Email: %s | Salary: %.2f%n",
-                        rs.getInt("id"), rs.getString("name"),
-                        rs.getString("email"), rs.getDouble("salary"));
+        PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+        EmployeePager pager = new EmployeePager(STORE);
+        try {
+            out.println("\n--- Employees ---");
+            while (pager.hasMore()) {
+                pager.nextPage((id, name, email, salary) -> out.printf(
+                        "ID: %d | Name: %s | Email: %s | Salary: %.2f%n", id, name, email, salary));
+                out.flush();
             }
         } catch (SQLException e) {
+            out.flush();
             e.printStackTrace();
         }
     }
 
     public static void updateEmployeeSalary(int id, double newSalary) {
-        String sql = "UPDATE employees SET salary = ? WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setDouble(1, newSalary);
-            pstmt.setInt(2, id);
-            int rows = pstmt.executeUpdate();
-            if (rows > 0) {
+        try {
+            if (STORE.updateSalary(id, newSalary)) {
                 System.out.println("Salary updated.");
             } else {
                 System.out.println("Employee not found.");
@@ -117,12 +161,8 @@ public class CRUD{
     }
 
     public static void deleteEmployee(int id) {
-        String sql = "DELETE FROM employees WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            int rows = pstmt.executeUpdate();
-            if (rows > 0) {
+        try {
+            if (STORE.delete(id)) {
                 System.out.println("Employee deleted.");
             } else {
                 System.out.println("Employee not found.");
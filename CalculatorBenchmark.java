@@ -0,0 +1,702 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Command-line throughput checks for the calculator engine.
+ *
+ * Usage: java CalculatorBenchmark [section...]
+ * With no arguments every section is run.
+ */
+public class CalculatorBenchmark {
+    private static final String[] EXPRESSIONS = {
+            "1+2*3",
+            "2(3+4)(5-1)",
+            "((12+7)*3-(8/2))%7",
+            "-(-(4*5)+6)/3+100*(2+3*(4-1))"
+    };
+    private static final long RUN_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        String[] sections = args.length == 0 ? new String[] {"implementations", "threads", "compiled", "bytecode", "exact", "columns", "server", "incremental", "streaming", "parallel", "metrics"} : args;
+        for (String section : sections) {
+            switch (section) {
+                case "implementations" -> implementations();
+                case "threads" -> threads();
+                case "compiled" -> compiled();
+                case "bytecode" -> bytecode();
+                case "exact" -> exact();
+                case "columns" -> columns();
+                case "server" -> server();
+                case "incremental" -> incremental();
+                case "streaming" -> streaming();
+                case "parallel" -> parallel();
+                case "metrics" -> metrics();
+                default -> System.out.println("Unknown section: " + section);
+            }
+        }
+    }
+
+    /**
+     * Compares the calculator implementations on the same inputs: a quick
+     * check with warm-up, then measured iterations reporting ns/op and bytes
+     * allocated per op (from the per-thread allocation counter). For numbers
+     * to decide on, use the JMH suite, jmh/CalculatorBenchmarks.java, with
+     * -prof gc. Calculator in MainLauncher delegates to
+     * ExpressionEngine, so the "calculator" row covers both.
+     */
+    private static void implementations() {
+        String[] names = {"calculator", "CalculatorWithQueue", "calculatorwithLL", "calaculatorwithArrayList"};
+        String[][] cases = {
+                {"short", "1+2*3"},
+                {"long", longExpression(200)},
+                {"nested", nestedExpression(200)},
+                {"implicit", implicitExpression(100)}
+        };
+        ExpressionEngine engine = new ExpressionEngine();
+        System.out.println("=== Implementations (ns/op, B/op) ===");
+        System.out.printf("%-26s %-9s %-5s %12s %12s%n", "implementation", "case", "mode", "ns/op", "B/op");
+        for (String[] c : cases) {
+            for (boolean floatMode : new boolean[] {false, true}) {
+                for (String name : names) {
+                    ToDoubleFunction<String> impl = implementation(name, engine, floatMode);
+                    double[] result = measure(impl, c[1]);
+                    System.out.printf("%-26s %-9s %-5s %12.1f %12.0f%n",
+                            name, c[0], floatMode ? "float" : "int", result[0], result[1]);
+                }
+            }
+        }
+    }
+
+    private static ToDoubleFunction<String> implementation(String name, ExpressionEngine engine, boolean floatMode) {
+        switch (name) {
+            case "calculator":
+                return floatMode ? engine::evaluateFloat : engine::evaluateInt;
+            case "CalculatorWithQueue":
+                return floatMode ? CalculatorWithQueue::evaluateFloat : CalculatorWithQueue::evaluateInt;
+            case "calculatorwithLL":
+                return floatMode ? calculatorwithLL::evaluateFloat : calculatorwithLL::evaluateInt;
+            default:
+                return floatMode ? calaculatorwithArrayList::evaluateFloat : calaculatorwithArrayList::evaluateInt;
+        }
+    }
+
+    /** Returns {ns/op, bytes/op}: one warm-up and three measured iterations of RUN_MILLIS / 4. */
+    private static double[] measure(ToDoubleFunction<String> impl, String expression) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long iterationNanos = RUN_MILLIS * 1_000_000L / 4;
+        double best = Double.MAX_VALUE;
+        double bytesPerOp = 0;
+        double acc = 0;
+        for (int iteration = 0; iteration < 4; iteration++) {
+            long ops = 0;
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long begin = System.nanoTime();
+            long deadline = begin + iterationNanos;
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < 100; i++) {
+                    acc += impl.applyAsDouble(expression);
+                }
+                ops += 100;
+            }
+            long elapsed = System.nanoTime() - begin;
+            long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            if (iteration > 0) {
+                best = Math.min(best, (double) elapsed / ops);
+                bytesPerOp = (double) bytes / ops;
+            }
+        }
+        if (acc == 42) System.out.println(); // keep acc live
+        return new double[] {best, bytesPerOp};
+    }
+
+    private static String longExpression(int terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= terms; i++) {
+            if (i > 1) sb.append(i % 3 == 0 ? '-' : '+');
+            sb.append(i).append('*').append(i % 7 + 1).append('/').append(i % 5 + 1);
+        }
+        return sb.toString();
+    }
+
+    private static String nestedExpression(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < depth; i++) sb.append(')');
+        return sb.toString();
+    }
+
+    private static String implicitExpression(int factors) {
+        StringBuilder sb = new StringBuilder("2");
+        for (int i = 0; i < factors; i++) {
+            sb.append('(').append(i % 3 + 1).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs one shared ExpressionEngine from 1..2N threads. On N cores the
+     * ops/sec column should grow close to linearly up to N threads.
+     */
+    private static void threads() throws InterruptedException {
+        ExpressionEngine engine = new ExpressionEngine();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("=== Shared engine throughput (" + cores + " cores) ===");
+
+        runThreads(engine, 1); // warm-up
+        double single = 0;
+        for (int threads = 1; threads <= cores * 2; threads *= 2) {
+            double opsPerSec = runThreads(engine, threads);
+            if (threads == 1) single = opsPerSec;
+            System.out.printf("threads: %2d | ops/sec: %,14.0f | scaling: %.2fx%n",
+                    threads, opsPerSec, opsPerSec / single);
+        }
+    }
+
+    private static double runThreads(ExpressionEngine engine, int threads) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long[] sink = new long[threads];
+        long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000L;
+
+        for (int t = 0; t < threads; t++) {
+            final int slot = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long count = 0;
+                    long acc = 0;
+                    while (System.nanoTime() < deadline) {
+                        for (String expr : EXPRESSIONS) {
+                            acc += engine.evaluateInt(expr);
+                            acc += (long) engine.evaluateFloat(expr);
+                        }
+                        count += EXPRESSIONS.length * 2;
+                    }
+                    ops.add(count);
+                    sink[slot] = acc;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return ops.sum() / seconds;
+    }
+
+    /**
+     * Parse-per-call versus compile-once evaluation of the same formula with
+     * changing inputs.
+     */
+    private static void compiled() {
+        ExpressionEngine engine = new ExpressionEngine();
+        CompiledExpression formula = engine.compile("rate*(base+bonus)", true, "rate", "base", "bonus");
+        double[] vars = new double[3];
+        System.out.println("=== Parse per call vs compiled tree ===");
+
+        for (int round = 0; round < 2; round++) {
+            long n = 0;
+            double acc = 0;
+            long begin = System.nanoTime();
+            long deadline = begin + RUN_MILLIS * 1_000_000L;
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < 1000; i++) {
+                    acc += engine.evaluateFloat("3*(" + i + "+7)");
+                }
+                n += 1000;
+            }
+            double parsed = n / ((System.nanoTime() - begin) / 1e9);
+
+            n = 0;
+            begin = System.nanoTime();
+            deadline = begin + RUN_MILLIS * 1_000_000L;
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < 1000; i++) {
+                    vars[0] = 3;
+                    vars[1] = i;
+                    vars[2] = 7;
+                    acc += formula.evaluateFloat(vars);
+                }
+                n += 1000;
+            }
+            double tree = n / ((System.nanoTime() - begin) / 1e9);
+            if (round == 1) {
+                System.out.printf("parse per call: %,14.0f ops/sec%n", parsed);
+                System.out.printf("compiled tree:  %,14.0f ops/sec (%.1fx)%n", tree, tree / parsed);
+            }
+            if (acc == 42) System.out.println(); // keep acc live
+        }
+    }
+
+    /** Tree interpretation versus the generated hidden class, int and float. */
+    private static void bytecode() {
+        ExpressionEngine engine = new ExpressionEngine();
+        String formula = "(a+b)*(a-b)/3 + c%7 - 2(a+c)(b+1) + -(c*c)";
+        CompiledExpression intTree = engine.compile(formula, false, "a", "b", "c");
+        CompiledExpression floatTree = engine.compile(formula, true, "a", "b", "c");
+        ExpressionBytecodeCompiler.IntEvaluator intCode = ExpressionBytecodeCompiler.compileInt(intTree);
+        ExpressionBytecodeCompiler.FloatEvaluator floatCode = ExpressionBytecodeCompiler.compileFloat(floatTree);
+        int[] ints = new int[3];
+        double[] doubles = new double[3];
+        System.out.println("=== Tree interpretation vs bytecode ===");
+
+        for (int round = 0; round < 2; round++) {
+            long acc = 0;
+            double treeInt = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    ints[0] = i; ints[1] = i >> 1; ints[2] = i * 3;
+                    sum += intTree.evaluateInt(ints);
+                }
+                return sum;
+            });
+            double codeInt = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    ints[0] = i; ints[1] = i >> 1; ints[2] = i * 3;
+                    sum += intCode.evaluate(ints);
+                }
+                return sum;
+            });
+            double treeFloat = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    doubles[0] = i; doubles[1] = i * 0.5; doubles[2] = i * 3;
+                    sum += (long) floatTree.evaluateFloat(doubles);
+                }
+                return sum;
+            });
+            double codeFloat = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    doubles[0] = i; doubles[1] = i * 0.5; doubles[2] = i * 3;
+                    sum += (long) floatCode.evaluate(doubles);
+                }
+                return sum;
+            });
+            if (round == 1) {
+                System.out.printf("int   tree: %,14.0f ops/sec | bytecode: %,14.0f ops/sec (%.1fx)%n",
+                        treeInt, codeInt, codeInt / treeInt);
+                System.out.printf("float tree: %,14.0f ops/sec | bytecode: %,14.0f ops/sec (%.1fx)%n",
+                        treeFloat, codeFloat, codeFloat / treeFloat);
+            }
+        }
+    }
+
+    /**
+     * Exact mode: the long fast path against the wrapping int tree, and the
+     * promotion path when one subtree overflows a long.
+     */
+    private static void exact() {
+        ExpressionEngine engine = new ExpressionEngine();
+        String formula = "(a+b)*(a-b)/3 + c%7 - 2(a+c)(b+1)";
+        CompiledExpression intTree = engine.compile(formula, false, "a", "b", "c");
+        ExactEvaluator exact = engine.compileExact(formula, false, "a", "b", "c");
+        ExactEvaluator overflowing = engine.compileExact("a*a*a*a + b - c", false, "a", "b", "c");
+        int[] ints = new int[3];
+        long[] longs = new long[3];
+        System.out.println("=== Exact arithmetic ===");
+
+        for (int round = 0; round < 2; round++) {
+            double wrapping = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    ints[0] = i; ints[1] = i >> 1; ints[2] = i * 3;
+                    sum += intTree.evaluateInt(ints);
+                }
+                return sum;
+            });
+            double fast = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    longs[0] = i; longs[1] = i >> 1; longs[2] = i * 3;
+                    sum += exact.evaluate(longs).longValue();
+                }
+                return sum;
+            });
+            double promoted = rate(() -> {
+                long sum = 0;
+                for (int i = 1; i <= 1000; i++) {
+                    longs[0] = 1_000_000L + i; longs[1] = i; longs[2] = 7;
+                    sum += overflowing.evaluate(longs).longValue();
+                }
+                return sum;
+            });
+            if (round == 1) {
+                System.out.printf("int tree (wraps):      %,14.0f ops/sec%n", wrapping);
+                System.out.printf("exact, long path:      %,14.0f ops/sec (%.2fx of int)%n", fast, fast / wrapping);
+                System.out.printf("exact, BigInteger path:%,14.0f ops/sec%n", promoted);
+            }
+        }
+    }
+
+    /** Runs {@code batch} (1000 operations per call) for RUN_MILLIS and returns ops/sec. */
+    /**
+     * One formula over a million rows: parsing a formatted string per row,
+     * the compiled tree and the generated bytecode per row, and the
+     * column evaluator over whole arrays.
+     */
+    private static void columns() {
+        ExpressionEngine engine = new ExpressionEngine();
+        String formula = "(a+b)*(a-b)/3 + c%7 - 2(a+c)(b+1)";
+        CompiledExpression floatTree = engine.compile(formula, true, "a", "b", "c");
+        CompiledExpression intTree = engine.compile(formula, false, "a", "b", "c");
+        ExpressionBytecodeCompiler.FloatEvaluator floatCode = ExpressionBytecodeCompiler.compileFloat(floatTree);
+        ExpressionBytecodeCompiler.IntEvaluator intCode = ExpressionBytecodeCompiler.compileInt(intTree);
+        ColumnEvaluator floatColumns = new ColumnEvaluator(floatTree);
+        ColumnEvaluator intColumns = new ColumnEvaluator(intTree);
+
+        int rows = 1 << 20;
+        double[][] doubles = new double[3][rows];
+        int[][] ints = new int[3][rows];
+        for (int i = 0; i < rows; i++) {
+            ints[0][i] = i % 1000 + 1; ints[1][i] = i % 77 + 1; ints[2][i] = i % 500;
+            doubles[0][i] = ints[0][i] * 1.5; doubles[1][i] = ints[1][i]; doubles[2][i] = ints[2][i] + 0.25;
+        }
+        String[] texts = new String[1 << 12];
+        for (int i = 0; i < texts.length; i++) {
+            texts[i] = "(" + doubles[0][i] + "+" + doubles[1][i] + ")*(" + doubles[0][i] + "-" + doubles[1][i] + ")/3 + "
+                    + doubles[2][i] + "%7 - 2(" + doubles[0][i] + "+" + doubles[2][i] + ")(" + doubles[1][i] + "+1)";
+        }
+        double[] floatOut = new double[rows];
+        int[] intOut = new int[rows];
+        double[] row = new double[3];
+        int[] intRow = new int[3];
+        System.out.println("=== Row by row vs columns (" + rows + " rows) ===");
+
+        for (int round = 0; round < 2; round++) {
+            double parsed = rowRate(texts.length, () -> {
+                for (int i = 0; i < texts.length; i++) floatOut[i] = engine.evaluateFloat(texts[i]);
+            });
+            double tree = rowRate(rows, () -> {
+                for (int i = 0; i < rows; i++) {
+                    row[0] = doubles[0][i]; row[1] = doubles[1][i]; row[2] = doubles[2][i];
+                    floatOut[i] = floatTree.evaluateFloat(row);
+                }
+            });
+            double code = rowRate(rows, () -> {
+                for (int i = 0; i < rows; i++) {
+                    row[0] = doubles[0][i]; row[1] = doubles[1][i]; row[2] = doubles[2][i];
+                    floatOut[i] = floatCode.evaluate(row);
+                }
+            });
+            double columns = rowRate(rows, () -> floatColumns.evaluateFloat(doubles, floatOut));
+            double intTreeRate = rowRate(rows, () -> {
+                for (int i = 0; i < rows; i++) {
+                    intRow[0] = ints[0][i]; intRow[1] = ints[1][i]; intRow[2] = ints[2][i];
+                    intOut[i] = intTree.evaluateInt(intRow);
+                }
+            });
+            double intCodeRate = rowRate(rows, () -> {
+                for (int i = 0; i < rows; i++) {
+                    intRow[0] = ints[0][i]; intRow[1] = ints[1][i]; intRow[2] = ints[2][i];
+                    intOut[i] = intCode.evaluate(intRow);
+                }
+            });
+            double intColumnsRate = rowRate(rows, () -> intColumns.evaluateInt(ints, intOut));
+            if (round == 1) {
+                System.out.printf("float parse per row: %,14.0f rows/sec%n", parsed);
+                System.out.printf("float tree per row:  %,14.0f rows/sec%n", tree);
+                System.out.printf("float bytecode:      %,14.0f rows/sec%n", code);
+                System.out.printf("float columns:       %,14.0f rows/sec (%.1fx tree)%n", columns, columns / tree);
+                System.out.printf("int   tree per row:  %,14.0f rows/sec%n", intTreeRate);
+                System.out.printf("int   bytecode:      %,14.0f rows/sec%n", intCodeRate);
+                System.out.printf("int   columns:       %,14.0f rows/sec (%.1fx tree)%n", intColumnsRate, intColumnsRate / intTreeRate);
+            }
+        }
+    }
+
+    /**
+     * Loopback round trips to CalculatorServer: one request at a time,
+     * pipelined bursts, and BATCH requests, plus the server-side latency
+     * percentiles.
+     */
+    private static void server() throws java.io.IOException {
+        int burst = 1000;
+        String[] requests = new String[burst];
+        for (int i = 0; i < burst; i++) {
+            requests[i] = "INT " + EXPRESSIONS[i % EXPRESSIONS.length] + "+" + i;
+        }
+        System.out.println("=== Calculator service on loopback ===");
+
+        try (CalculatorServer server = new CalculatorServer(0);
+             java.net.Socket socket = new java.net.Socket(java.net.InetAddress.getLoopbackAddress(), server.getPort())) {
+            socket.setTcpNoDelay(true);
+            java.io.BufferedReader in = new java.io.BufferedReader(new java.io.InputStreamReader(
+                    socket.getInputStream(), java.nio.charset.StandardCharsets.UTF_8));
+            java.io.Writer out = new java.io.BufferedWriter(new java.io.OutputStreamWriter(
+                    socket.getOutputStream(), java.nio.charset.StandardCharsets.UTF_8));
+
+            for (int round = 0; round < 2; round++) {
+                server.getLatency().reset();
+                double single = rate(() -> {
+                    long sum = 0;
+                    try {
+                        for (String request : requests) {
+                            out.write(request);
+                            out.write('\n');
+                            out.flush();
+                            sum += in.readLine().length();
+                        }
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                    return sum;
+                });
+                String singleLatency = server.getLatency().summary();
+                double pipelined = rate(() -> {
+                    long sum = 0;
+                    try {
+                        for (String request : requests) {
+                            out.write(request);
+                            out.write('\n');
+                        }
+                        out.flush();
+                        for (int i = 0; i < burst; i++) {
+                            sum += in.readLine().length();
+                        }
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                    return sum;
+                });
+                double batched = rate(() -> {
+                    long sum = 0;
+                    try {
+                        out.write("BATCH INT " + burst + "\n");
+                        for (String request : requests) {
+                            out.write(request, 4, request.length() - 4);
+                            out.write('\n');
+                        }
+                        out.flush();
+                        for (int i = 0; i < burst; i++) {
+                            sum += in.readLine().length();
+                        }
+                    } catch (java.io.IOException e) {
+                        throw new java.io.UncheckedIOException(e);
+                    }
+                    return sum;
+                });
+                if (round == 1) {
+                    System.out.printf("one at a time: %,14.0f requests/sec%n", single);
+                    System.out.printf("pipelined:     %,14.0f requests/sec (%.1fx)%n", pipelined, pipelined / single);
+                    System.out.printf("BATCH:         %,14.0f expressions/sec (%.1fx)%n", batched, batched / single);
+                    System.out.println("server latency, one at a time: " + singleLatency);
+                }
+            }
+            out.write("QUIT\n");
+            out.flush();
+        }
+    }
+
+    /**
+     * Live editing of a long expression: one-character edits followed by an
+     * evaluation, incrementally versus re-evaluating the whole text.
+     */
+    private static void incremental() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            if (i > 0) sb.append(" + ");
+            sb.append('(').append(i % 90 + 10).append(".5*3 - ").append(i % 7 + 1).append(")");
+        }
+        String start = sb.toString();
+        ExpressionEngine engine = new ExpressionEngine();
+        IncrementalExpression incremental = new IncrementalExpression(start, true);
+        StringBuilder text = new StringBuilder(start);
+        // offsets of the first digit of every group: the edits overwrite it with another digit
+        int[] digits = new int[1000];
+        for (int i = 0, found = 0; found < digits.length; i++) {
+            if (start.charAt(i) == '(') digits[found++] = i + 1;
+        }
+        System.out.println("=== Incremental re-parse (" + start.length() + " chars) ===");
+
+        for (int round = 0; round < 2; round++) {
+            double full = rate(() -> {
+                long sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    int at = digits[(i * 7919) % digits.length];
+                    text.setCharAt(at, (char) ('1' + i % 9));
+                    sum += (long) engine.evaluateFloat(text.toString());
+                }
+                return sum;
+            });
+            double edited = rate(() -> {
+                long sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    int at = digits[(i * 7919) % digits.length];
+                    incremental.edit(at, at + 1, String.valueOf((char) ('1' + i % 9)));
+                    sum += (long) incremental.evaluateFloat();
+                }
+                return sum;
+            });
+            if (round == 1) {
+                System.out.printf("full re-parse: %,12.0f edits/sec%n", full);
+                System.out.printf("incremental:   %,12.0f edits/sec (%.1fx, %d chars re-tokenized per edit)%n",
+                        edited, edited / full, incremental.getLastReparsedChars());
+            }
+        }
+    }
+
+    /** Repeats {@code pass}, which handles {@code rows} rows, for RUN_MILLIS; returns rows per second. */
+    private static double rowRate(int rows, Runnable pass) {
+        long n = 0;
+        long begin = System.nanoTime();
+        long deadline = begin + RUN_MILLIS * 1_000_000L;
+        while (System.nanoTime() < deadline) {
+            pass.run();
+            n += rows;
+        }
+        return n / ((System.nanoTime() - begin) / 1e9);
+    }
+
+    private static double rate(java.util.function.LongSupplier batch) {
+        long n = 0;
+        long acc = 0;
+        long begin = System.nanoTime();
+        long deadline = begin + RUN_MILLIS * 1_000_000L;
+        while (System.nanoTime() < deadline) {
+            acc += batch.getAsLong();
+            n += 1000;
+        }
+        double opsPerSec = n / ((System.nanoTime() - begin) / 1e9);
+        if (acc == 42) System.out.println(); // keep acc live
+        return opsPerSec;
+    }
+
+    private static void streaming() throws java.io.IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; sb.length() < 8_000_000; i++) {
+            if (i > 0) sb.append(" + ");
+            sb.append(i % 90 + 10).append(".25 (").append(i % 7 + 1).append(" - 0.5)");
+        }
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("expression", ".txt");
+        file.toFile().deleteOnExit();
+        java.nio.file.Files.writeString(file, sb);
+        ExpressionEngine engine = new ExpressionEngine();
+        System.out.printf("=== Streaming a %,d char expression from a file ===%n", sb.length());
+
+        streamRun("readString + String", () -> engine.evaluateFloat(java.nio.file.Files.readString(file)));
+        streamRun("Reader", () -> {
+            try (java.io.Reader reader = java.nio.file.Files.newBufferedReader(file)) {
+                return engine.evaluateFloat(reader);
+            }
+        });
+        streamRun("mapped Path", () -> engine.evaluateFloat(file));
+        java.nio.file.Files.delete(file);
+    }
+
+    private interface FileEvaluation {
+        double evaluate() throws java.io.IOException;
+    }
+
+    private static void streamRun(String name, FileEvaluation evaluation) throws java.io.IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        double best = Double.MAX_VALUE;
+        long bytes = 0;
+        double acc = 0;
+        for (int iteration = 0; iteration < 8; iteration++) {
+            long bytesBefore = threads.getThreadAllocatedBytes(thread);
+            long begin = System.nanoTime();
+            acc += evaluation.evaluate();
+            long elapsed = System.nanoTime() - begin;
+            if (iteration >= 3) {
+                best = Math.min(best, elapsed / 1e6);
+                bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+            }
+        }
+        if (acc == 42) System.out.println(); // keep acc live
+        System.out.printf("%-20s %8.1f ms %,14d bytes allocated%n", name, best, bytes);
+    }
+
+    private static void parallel() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            if (i > 0) sb.append(" + ");
+            sb.append("(x*").append(i % 90 + 10).append(".5 - y/").append(i % 7 + 1).append(")*(x - ").append(i % 11).append(")");
+        }
+        ExpressionEngine engine = new ExpressionEngine();
+        CompiledExpression large = engine.compile(sb.toString(), true, "x", "y");
+        CompiledExpression small = engine.compile("x*3.5 + y/2 - 1", true, "x", "y");
+        int threads = Runtime.getRuntime().availableProcessors();
+        java.util.concurrent.ForkJoinPool single = new java.util.concurrent.ForkJoinPool(1);
+        ParallelEvaluator oneThread = new ParallelEvaluator(large, ParallelEvaluator.DEFAULT_THRESHOLD, single);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(threads);
+        ParallelEvaluator allThreads = new ParallelEvaluator(large, ParallelEvaluator.DEFAULT_THRESHOLD, pool);
+        System.out.println("=== Parallel evaluation (" + large.getSource().length() + " chars, "
+                + threads + " CPUs) ===");
+
+        for (int round = 0; round < 2; round++) {
+            double sequential = rate(() -> {
+                long sum = 0;
+                for (int i = 0; i < 1000; i += 20) sum += (long) oneThread.evaluateFloat(i, 2.5);
+                return sum;
+            }) / 20;
+            double parallel = rate(() -> {
+                long sum = 0;
+                for (int i = 0; i < 1000; i += 20) sum += (long) allThreads.evaluateFloat(i, 2.5);
+                return sum;
+            }) / 20;
+            if (round == 1) {
+                System.out.printf("1 thread:     %,10.0f evaluations/sec%n", sequential);
+                System.out.printf("%2d threads:   %,10.0f evaluations/sec (%.1fx)%n", threads, parallel, parallel / sequential);
+            }
+        }
+        single.shutdown();
+        pool.shutdown();
+
+        ParallelEvaluator fallback = new ParallelEvaluator(small);
+        double[] compiledCost = measure(ignored -> small.evaluateFloat(1.5, 2.5), "");
+        double[] fallbackCost = measure(ignored -> fallback.evaluateFloat(1.5, 2.5), "");
+        System.out.printf("small tree:   compiled %.1f ns/op, parallel evaluator %.1f ns/op (parallel=%b)%n",
+                compiledCost[0], fallbackCost[0], fallback.isParallel());
+    }
+
+    private static void metrics() {
+        String[][] cases = {
+                {"short", "1+2*3"},
+                {"long", longExpression(200)},
+                {"nested", nestedExpression(200)}
+        };
+        CalculatorMetrics sampled = new CalculatorMetrics();
+        CalculatorMetrics every = new CalculatorMetrics(1);
+        ExpressionEngine[] engines = {new ExpressionEngine(), new ExpressionEngine(sampled), new ExpressionEngine(every)};
+        System.out.println("=== Metrics overhead (float, ns/op, best of 20 interleaved rounds) ===");
+        System.out.printf("%-9s %12s %12s %9s %12s %9s%n", "case", "off", "1 in " + sampled.getSamplePeriod(),
+                "overhead", "every call", "overhead");
+        for (String[] c : cases) {
+            // short interleaved rounds, so drift in machine speed hits all three alike
+            int calls = (int) Math.max(1, 20_000_000 / (c[1].length() * 20L));
+            double[] best = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+            double acc = 0;
+            for (int round = 0; round < 20; round++) {
+                for (int e = 0; e < engines.length; e++) {
+                    long begin = System.nanoTime();
+                    for (int i = 0; i < calls; i++) {
+                        acc += engines[e].evaluateFloat(c[1]);
+                    }
+                    best[e] = Math.min(best[e], (double) (System.nanoTime() - begin) / calls);
+                }
+            }
+            if (acc == 42) System.out.println(); // keep acc live
+            System.out.printf("%-9s %12.1f %12.1f %8.1f%% %12.1f %8.1f%%%n", c[0], best[0],
+                    best[1], (best[1] / best[0] - 1) * 100, best[2], (best[2] / best[0] - 1) * 100);
+        }
+        try {
+            engines[1].evaluateFloat("1/0");
+        } catch (ArithmeticException expected) {
+            // counted under its message
+        }
+        System.out.print(sampled.dump());
+    }
+}
@@ -0,0 +1,201 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Where calculator time goes. Pass an instance to
+ * {@link ExpressionEngine#ExpressionEngine(CalculatorMetrics)} and the
+ * engine records, per evaluation:
+ * <ul>
+ *   <li>normalize time: stripping spaces and inserting the implicit '*',
+ *       which is the whole tokenizing step of this grammar;</li>
+ *   <li>evaluate time: parsing and evaluating, which are one pass (for
+ *       streamed input, normalizing too; for a cache hit, the lookup);</li>
+ *   <li>compile time for {@link ExpressionEngine#compile} and
+ *       {@link ExpressionEngine#compileExact};</li>
+ *   <li>token count and parenthesis nesting depth, except for streamed input;</li>
+ *   <li>every error, counted by message with the position removed.</li>
+ * </ul>
+ * Timings go into lock-free {@link LatencyHistogram}s. To keep the cost to
+ * a few percent even for expressions that take well under a microsecond,
+ * only one evaluation in {@link #getSamplePeriod} is timed, chosen at
+ * random per thread; errors and compiles are always recorded.
+ *
+ * Instances are thread-safe. {@link #register} publishes one as an MXBean
+ * and {@link #dump} gives the same report as text.
+ */
+public final class CalculatorMetrics implements CalculatorMetricsMXBean {
+    public static final int DEFAULT_SAMPLE_PERIOD = 64;
+
+    /** Distinct error messages kept; messages can quote input, so the rest share one entry. */
+    private static final int MAX_ERROR_KINDS = 64;
+    private static final Pattern POSITION = Pattern.compile(" at position \\d+");
+
+    private final int sampleMask;
+    private final LatencyHistogram normalize = new LatencyHistogram();
+    private final LatencyHistogram evaluate = new LatencyHistogram();
+    private final LatencyHistogram compile = new LatencyHistogram();
+    private final LatencyHistogram tokens = new LatencyHistogram();
+    private final LatencyHistogram depth = new LatencyHistogram();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    public CalculatorMetrics() {
+        this(DEFAULT_SAMPLE_PERIOD);
+    }
+
+    /** @param samplePeriod a power of two; 1 times every evaluation */
+    public CalculatorMetrics(int samplePeriod) {
+        if (samplePeriod < 1 || Integer.bitCount(samplePeriod) != 1) {
+            throw new IllegalArgumentException("Sample period must be a power of two: " + samplePeriod);
+        }
+        this.sampleMask = samplePeriod - 1;
+    }
+
+    /** Publishes these metrics as {@code calculator:type=CalculatorMetrics,name=<name>}. */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("calculator:type=CalculatorMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics as " + name, e);
+        }
+    }
+
+    // ==== Recording, called by ExpressionEngine ====
+
+    boolean sample() {
+        return (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    void recordEvaluation(long normalizeNanos, long evaluateNanos, String normalized) {
+        normalize.record(normalizeNanos);
+        evaluate.record(evaluateNanos);
+        recordShape(normalized);
+    }
+
+    /** An evaluation of a Reader, CharSequence or file, normalized while it was parsed. */
+    void recordStreamEvaluation(long evaluateNanos) {
+        evaluate.record(evaluateNanos);
+    }
+
+    void recordCompile(long nanos) {
+        compile.record(nanos);
+    }
+
+    void recordError(RuntimeException e) {
+        String message = e.getMessage() == null ? "" : POSITION.matcher(e.getMessage()).replaceAll("");
+        String kind = e.getClass().getSimpleName() + ": " + message;
+        if (!errors.containsKey(kind) && errors.size() >= MAX_ERROR_KINDS) kind = "other";
+        errors.computeIfAbsent(kind, key -> new LongAdder()).increment();
+    }
+
+    /** Counts tokens and the deepest '(' nesting of a normalized expression. */
+    private void recordShape(String normalized) {
+        int count = 0;
+        int level = 0;
+        int maxLevel = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            boolean numberPart = Character.isDigit(c) || c == '.';
+            if (!numberPart || !inNumber) count++;
+            inNumber = numberPart;
+            if (c == '(' && ++level > maxLevel) maxLevel = level;
+            else if (c == ')') level--;
+        }
+        tokens.record(count);
+        depth.record(maxLevel);
+    }
+
+    // ==== Reporting ====
+
+    @Override
+    public long getEvaluations() {
+        return evaluate.getCount() * (sampleMask + 1);
+    }
+
+    @Override
+    public int getSamplePeriod() {
+        return sampleMask + 1;
+    }
+
+    @Override
+    public double getNormalizeP50Micros() {
+        return normalize.percentile(50) / 1e3;
+    }
+
+    @Override
+    public double getNormalizeP99Micros() {
+        return normalize.percentile(99) / 1e3;
+    }
+
+    @Override
+    public double getEvaluateP50Micros() {
+        return evaluate.percentile(50) / 1e3;
+    }
+
+    @Override
+    public double getEvaluateP99Micros() {
+        return evaluate.percentile(99) / 1e3;
+    }
+
+    @Override
+    public double getCompileP99Micros() {
+        return compile.percentile(99) / 1e3;
+    }
+
+    @Override
+    public long getTokensP99() {
+        return tokens.percentile(99);
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return depth.getMax();
+    }
+
+    @Override
+    public Map<String, Long> getErrors() {
+        Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((message, count) -> counts.put(message, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("evaluations ~%d (1 in %d timed)%n", getEvaluations(), getSamplePeriod()));
+        sb.append("normalize ").append(normalize.summary()).append(System.lineSeparator());
+        sb.append("evaluate  ").append(evaluate.summary()).append(System.lineSeparator());
+        sb.append("compile   ").append(compile.summary()).append(System.lineSeparator());
+        sb.append(String.format("tokens    p50=%d p99=%d max=%d%n",
+                tokens.percentile(50), tokens.percentile(99), tokens.getMax()));
+        sb.append(String.format("depth     p50=%d p99=%d max=%d%n",
+                depth.percentile(50), depth.percentile(99), depth.getMax()));
+        getErrors().forEach((message, count) ->
+                sb.append("error     ").append(count).append(" x ").append(message).append(System.lineSeparator()));
+        return sb.toString();
+    }
+
+    @Override
+    public void reset() {
+        normalize.reset();
+        evaluate.reset();
+        compile.reset();
+        tokens.reset();
+        depth.reset();
+        errors.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "CalculatorMetrics[" + evaluate.summary() + "]";
+    }
+}
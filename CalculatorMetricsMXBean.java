@@ -0,0 +1,34 @@
+import java.util.Map;
+
+/**
+ * JMX view of {@link CalculatorMetrics}. Times are in microseconds; the
+ * evaluation count is estimated from the sampled evaluations.
+ */
+public interface CalculatorMetricsMXBean {
+
+    long getEvaluations();
+
+    int getSamplePeriod();
+
+    double getNormalizeP50Micros();
+
+    double getNormalizeP99Micros();
+
+    double getEvaluateP50Micros();
+
+    double getEvaluateP99Micros();
+
+    double getCompileP99Micros();
+
+    long getTokensP99();
+
+    long getMaxDepth();
+
+    /** Error counts by message, positions removed ("RuntimeException: Expected number"). */
+    Map<String, Long> getErrors();
+
+    /** Multi-line report of everything above. */
+    String dump();
+
+    void reset();
+}
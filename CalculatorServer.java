@@ -0,0 +1,325 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived calculator service on a loopback TCP port, so a pipeline can
+ * evaluate expressions without starting a JVM per call.
+ *
+ * Usage: java CalculatorServer [port]   (default 7070, 0 picks a free port)
+ *
+ * The protocol is line based, UTF-8, one request per line:
+ * <pre>
+ *   INT &lt;expression&gt;          -&gt; OK &lt;result&gt;  or  ERR &lt;message&gt;
+ *   FLOAT &lt;expression&gt;        -&gt; OK &lt;result&gt;  or  ERR &lt;message&gt;
+ *   BATCH INT|FLOAT &lt;n&gt;       followed by n expression lines -&gt; n result lines
+ *   STATS                     -&gt; OK count=... p50=...us p99=...us ...
+ *   QUIT                      closes the connection
+ * </pre>
+ * Error messages are the engine's ("Division by zero", ...). Requests may
+ * be pipelined: a client can send any number of lines before reading, and
+ * replies come back in order. Replies are flushed only when no further
+ * request is already buffered, so a pipelined burst goes out in few writes.
+ *
+ * Lines end with '\n' or "\r\n". A line longer than
+ * {@value #MAX_LINE_LENGTH} characters is answered with
+ * {@code ERR line too long} and the connection is closed, so a client
+ * cannot make the server buffer an unbounded line.
+ *
+ * Each connection is served on its own virtual thread when the JVM has them
+ * (Java 21+), otherwise on a pooled platform thread. Only the loopback
+ * interface is bound. When started from {@link #main}, the engine's
+ * {@link CalculatorMetrics} are published over JMX.
+ */
+public class CalculatorServer implements Closeable {
+    public static final int DEFAULT_PORT = 7070;
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Longest request line, in characters, without its line terminator. */
+    static final int MAX_LINE_LENGTH = 1 << 16;
+    private static final long MIN_ACCEPT_BACKOFF_MS = 10;
+    private static final long MAX_ACCEPT_BACKOFF_MS = 1000;
+
+    private final CalculatorMetrics metrics = new CalculatorMetrics();
+    private final ExpressionEngine engine = new ExpressionEngine(metrics);
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /** Binds to {@code port} on the loopback address and starts accepting. */
+    public CalculatorServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(this::acceptLoop, "calculator-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        CalculatorServer server = new CalculatorServer(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.metrics.register("server-" + server.getPort());
+        System.out.println("Calculator service listening on " + server.serverSocket.getLocalSocketAddress()
+                + (usesVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+        server.acceptor.join();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /** Normalize and evaluate timings and error counts of the engine serving requests. */
+    public CalculatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Request latency as measured by the server, from reading a request to writing its reply. */
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+        for (Socket socket : open) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // the connection thread sees the failure and exits
+            }
+        }
+        connections.shutdown();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts until {@link #close}. A failing accept (out of file
+     * descriptors, say) is retried after a pause that doubles with every
+     * consecutive failure up to {@value #MAX_ACCEPT_BACKOFF_MS} ms, so a
+     * persistent error neither spins nor floods stderr; only the first
+     * failure of a run is reported.
+     */
+    private void acceptLoop() {
+        long backoff = 0;
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed) return;
+                if (backoff == 0) System.err.println("Accept failed: " + e.getMessage());
+                backoff = Math.min(Math.max(backoff * 2, MIN_ACCEPT_BACKOFF_MS), MAX_ACCEPT_BACKOFF_MS);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            backoff = 0;
+            open.add(socket);
+            try {
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serve(socket));
+            } catch (IOException | RejectedExecutionException e) {
+                // the client hung up already, or close() shut the executor down meanwhile
+                open.remove(socket);
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+                    // nothing was sent on it
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             Reader reader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            LineReader in = new LineReader(reader);
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    long start = System.nanoTime();
+                    if (line.equals("QUIT")) break;
+                    handle(line, in, out);
+                    latency.record(System.nanoTime() - start);
+                    if (!in.ready()) out.flush(); // more pipelined requests buffered: answer them first
+                }
+            } catch (LineTooLongException e) {
+                reply(out, "ERR line too long"); // the rest of the line is never read: hang up
+            }
+            out.flush();
+        } catch (SocketException e) {
+            // client went away or the server is closing
+        } catch (IOException e) {
+            if (!closed) System.err.println("Connection failed: " + e.getMessage());
+        } finally {
+            open.remove(socket);
+        }
+    }
+
+    private void handle(String line, LineReader in, Writer out) throws IOException {
+        int space = line.indexOf(' ');
+        String command = space < 0 ? line : line.substring(0, space);
+        String argument = space < 0 ? "" : line.substring(space + 1);
+        switch (command) {
+            case "INT" -> reply(out, evaluate(argument, false));
+            case "FLOAT" -> reply(out, evaluate(argument, true));
+            case "BATCH" -> batch(argument, in, out);
+            case "STATS" -> reply(out, "OK " + latency.summary());
+            default -> reply(out, "ERR Unknown command: " + command);
+        }
+    }
+
+    private void batch(String argument, LineReader in, Writer out) throws IOException {
+        String[] parts = argument.split(" ");
+        int count;
+        try {
+            count = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+        } catch (NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0 || !(parts[0].equals("INT") || parts[0].equals("FLOAT"))) {
+            reply(out, "ERR Usage: BATCH INT|FLOAT <count>");
+            return;
+        }
+        boolean floatMode = parts[0].equals("FLOAT");
+        for (int i = 0; i < count; i++) {
+            String expression = in.readLine();
+            if (expression == null) return;
+            reply(out, evaluate(expression, floatMode));
+        }
+    }
+
+    private String evaluate(String expression, boolean floatMode) {
+        try {
+            return floatMode ? "OK " + engine.evaluateFloat(expression) : "OK " + engine.evaluateInt(expression);
+        } catch (RuntimeException e) {
+            return "ERR " + e.getMessage();
+        }
+    }
+
+    private static void reply(Writer out, String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+    }
+
+    /** Thrown by {@link LineReader#readLine} for a line over {@link #MAX_LINE_LENGTH} characters. */
+    private static final class LineTooLongException extends IOException {
+        LineTooLongException() {
+            super("Line longer than " + MAX_LINE_LENGTH + " characters");
+        }
+    }
+
+    /**
+     * A buffered line reader like BufferedReader, except that it gives up
+     * on a line once it exceeds {@link #MAX_LINE_LENGTH} instead of
+     * growing it without bound. Only '\n' ends a line; a '\r' before it is
+     * dropped.
+     */
+    private static final class LineReader {
+        private final Reader in;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        /** The next line without its terminator, or null at end of stream. */
+        String readLine() throws IOException {
+            StringBuilder partial = null; // the line so far, when it spans buffer refills
+            while (true) {
+                for (int i = position; i < limit; i++) {
+                    if (buffer[i] != '\n') continue;
+                    int end = i > position && buffer[i - 1] == '\r' ? i - 1 : i;
+                    String line;
+                    if (partial == null) {
+                        line = new String(buffer, position, end - position);
+                    } else {
+                        partial.append(buffer, position, i - position);
+                        if (partial.length() > 0 && partial.charAt(partial.length() - 1) == '\r') {
+                            partial.setLength(partial.length() - 1);
+                        }
+                        line = partial.toString();
+                    }
+                    position = i + 1;
+                    if (line.length() > MAX_LINE_LENGTH) throw new LineTooLongException();
+                    return line;
+                }
+                if (position < limit) {
+                    if (partial == null) partial = new StringBuilder();
+                    partial.append(buffer, position, limit - position);
+                    position = limit;
+                    if (partial.length() > MAX_LINE_LENGTH + 1) throw new LineTooLongException(); // + 1 for a '\r'
+                }
+                int read = in.read(buffer, 0, buffer.length);
+                if (read < 0) {
+                    if (partial == null) return null;
+                    if (partial.length() > MAX_LINE_LENGTH) throw new LineTooLongException();
+                    return partial.toString(); // last line without a terminator
+                }
+                position = 0;
+                limit = read;
+            }
+        }
+
+        /** True when a read would not block: more input is buffered here or in the stream. */
+        boolean ready() throws IOException {
+            return position < limit || in.ready();
+        }
+    }
+
+    /** One virtual thread per connection on Java 21+, otherwise a cached pool of daemon threads. */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "calculator-server-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static boolean usesVirtualThreads() {
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
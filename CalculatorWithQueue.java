@@ -3,6 +3,14 @@ import java.util.*;
 public class CalculatorWithQueue {
     private static boolean isFloatMode;
 
+    // Parse cursor over a packed token buffer; polling a token just advances pos.
+    private final TokenBuffer tokens;
+    private int pos;
+
+    private CalculatorWithQueue(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
 
@@ -12,17 +20,14 @@ public class CalculatorWithQueue {
         isFloatMode = (mode == 2);
 
         System.out.println("Enter a mathematical expression:");
-        String rawInput = scanner.nextLine().replaceAll(" ", "");
-        String processedInput = insertImplicitMultiplication(rawInput);
-
-        Queue<String> tokens = tokenize(processedInput);
+        String rawInput = scanner.nextLine();
 
         try {
             if (isFloatMode) {
-                double result = parseExpressionFloat(new LinkedList<>(tokens));
+                double result = evaluateFloat(rawInput);
                 System.out.println("Result: " + result);
             } else {
-                int result = parseExpressionInt(new LinkedList<>(tokens));
+                int result = evaluateInt(rawInput);
                 System.out.println("Result: " + result);
             }
         } catch (RuntimeException e) {
@@ -32,55 +37,34 @@ public class CalculatorWithQueue {
         scanner.close();
     }
 
-    private static String insertImplicitMultiplication(String expr) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < expr.length(); i++) {
-            char current = expr.charAt(i);
-            sb.append(current);
-            if (i < expr.length() - 1) {
-                char next = expr.charAt(i + 1);
-                if ((Character.isDigit(current) || current == ')') && next == '(') {
-                    sb.append('*');
-                }
-            }
-        }
-        return sb.toString();
+    static int evaluateInt(String expression) {
+        return new CalculatorWithQueue(TokenBuffer.tokenize(expression)).parseExpressionInt();
     }
 
-    private static Queue<String> tokenize(String expr) {
-        Queue<String> tokens = new LinkedList<>();
-        int i = 0;
-        while (i < expr.length()) {
-            char c = expr.charAt(i);
-
-            if (Character.isDigit(c) || c == '.') {
-                StringBuilder num = new StringBuilder();
-                boolean dotSeen = false;
-                while (i < expr.length() && (Character.isDigit(expr.charAt(i)) || (!dotSeen && expr.charAt(i) == '.'))) {
-                    if (expr.charAt(i) == '.') dotSeen = true;
-                    num.append(expr.charAt(i++));
-                }
-                tokens.add(num.toString());
-            } else {
-                tokens.add(String.valueOf(c));
-                i++;
-            }
-        }
-        return tokens;
+    static double evaluateFloat(String expression) {
+        return new CalculatorWithQueue(TokenBuffer.tokenize(expression)).parseExpressionFloat();
+    }
+
+    private boolean isEmpty() {
+        return pos >= tokens.size();
+    }
+
+    private int peek() {
+        return tokens.kind(pos);
     }
 
     // ==== Integer parsing with Queue ====
 
-    private static int parseExpressionInt(Queue<String> tokens) {
-        int value = parseTermInt(tokens);
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("+")) {
-                tokens.poll();
-                value += parseTermInt(tokens);
-            } else if (op.equals("-")) {
-                tokens.poll();
-                value -= parseTermInt(tokens);
+    private int parseExpressionInt() {
+        int value = parseTermInt();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
+                value += parseTermInt();
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
+                value -= parseTermInt();
             } else {
                 break;
             }
@@ -88,21 +72,21 @@ public class CalculatorWithQueue {
         return value;
     }
 
-    private static int parseTermInt(Queue<String> tokens) {
-        int value = parseFactorInt(tokens);
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("*")) {
-                tokens.poll();
-                value *= parseFactorInt(tokens);
-            } else if (op.equals("/")) {
-                tokens.poll();
-                int divisor = parseFactorInt(tokens);
+    private int parseTermInt() {
+        int value = parseFactorInt();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
+                value *= parseFactorInt();
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
+                int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                tokens.poll();
-                int divisor = parseFactorInt(tokens);
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
+                int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
             } else {
@@ -112,35 +96,35 @@ public class CalculatorWithQueue {
         return value;
     }
 
-    private static int parseFactorInt(Queue<String> tokens) {
-        if (tokens.isEmpty()) throw new RuntimeException("Unexpected end of expression");
-        String token = tokens.poll();
+    private int parseFactorInt() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
+        int token = pos++;
 
-        if (token.equals("-")) {
-            return -parseFactorInt(tokens);
-        } else if (token.equals("(")) {
-            int value = parseExpressionInt(tokens);
-            if (tokens.isEmpty() || !tokens.poll().equals(")")) {
+        if (tokens.kind(token) == TokenBuffer.MINUS) {
+            return -parseFactorInt();
+        } else if (tokens.kind(token) == TokenBuffer.LPAREN) {
+            int value = parseExpressionInt();
+            if (isEmpty() || tokens.kind(pos++) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
             return value;
         } else {
-            return Integer.parseInt(token);
+            return tokens.intValue(token);
         }
     }
 
     // ==== Float parsing with Queue ====
 
-    private static double parseExpressionFloat(Queue<String> tokens) {
-        double value = parseTermFloat(tokens);
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("+")) {
-                tokens.poll();
-                value += parseTermFloat(tokens);
-            } else if (op.equals("-")) {
-                tokens.poll();
-                value -= parseTermFloat(tokens);
+    private double parseExpressionFloat() {
+        double value = parseTermFloat();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
+                value += parseTermFloat();
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
+                value -= parseTermFloat();
             } else {
                 break;
             }
@@ -148,21 +132,21 @@ public class CalculatorWithQueue {
         return value;
     }
 
-    private static double parseTermFloat(Queue<String> tokens) {
-        double value = parseFactorFloat(tokens);
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("*")) {
-                tokens.poll();
-                value *= parseFactorFloat(tokens);
-            } else if (op.equals("/")) {
-                tokens.poll();
-                double divisor = parseFactorFloat(tokens);
+    private double parseTermFloat() {
+        double value = parseFactorFloat();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
+                value *= parseFactorFloat();
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
+                double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                tokens.poll();
-                double divisor = parseFactorFloat(tokens);
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
+                double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
             } else {
@@ -172,20 +156,20 @@ public class CalculatorWithQueue {
         return value;
     }
 
-    private static double parseFactorFloat(Queue<String> tokens) {
-        if (tokens.isEmpty()) throw new RuntimeException("Unexpected end of expression");
-        String token = tokens.poll();
+    private double parseFactorFloat() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
+        int token = pos++;
 
-        if (token.equals("-")) {
-            return -parseFactorFloat(tokens);
-        } else if (token.equals("(")) {
-            double value = parseExpressionFloat(tokens);
-            if (tokens.isEmpty() || !tokens.poll().equals(")")) {
+        if (tokens.kind(token) == TokenBuffer.MINUS) {
+            return -parseFactorFloat();
+        } else if (tokens.kind(token) == TokenBuffer.LPAREN) {
+            double value = parseExpressionFloat();
+            if (isEmpty() || tokens.kind(pos++) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
             return value;
         } else {
-            return Double.parseDouble(token);
+            return tokens.floatValue(token);
         }
     }
 }
@@ -0,0 +1,352 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates one {@link CompiledExpression} over whole columns of values,
+ * one input array per declared variable, writing one result per row.
+ *
+ * The tree is flattened once into a short list of array instructions
+ * ({@code t2 = a + t1}, ...). Rows are processed in blocks of
+ * {@value #BLOCK}; each instruction is a single tight loop over primitive
+ * arrays, which HotSpot's C2 compiles to SIMD code for + - * and float
+ * division. Temporary blocks are reused once their value is dead, so a
+ * whole block stays in cache.
+ *
+ * Results are the same as calling {@link CompiledExpression#evaluateInt} or
+ * {@link CompiledExpression#evaluateFloat} row by row. A block that has a
+ * zero divisor anywhere is re-run row by row through the tree, so the
+ * exception ("Division by zero" / "Modulo by zero") is the one the first
+ * failing row throws; rows before it are already written to the output.
+ *
+ * Instances are immutable; scratch blocks are allocated per call, so an
+ * evaluator can be shared between threads.
+ */
+public final class ColumnEvaluator {
+    static final int BLOCK = 512;
+
+    private static final char NEGATE = 'n';
+
+    private final CompiledExpression expression;
+    private final int variableCount;
+    // instruction i: registers[target[i]] = ref(left[i]) op[i] ref(right[i]);
+    // a ref >= 0 is a register, a ref < 0 is input column -(ref + 1)
+    private final char[] op;
+    private final int[] target;
+    private final int[] left;
+    private final int[] right;
+    private final int registerCount;
+    private final int[] constantRegisters;
+    private final ExpressionNode.Constant[] constants;
+    private final int result;
+
+    public ColumnEvaluator(CompiledExpression expression) {
+        this.expression = expression;
+        this.variableCount = expression.getVariables().length;
+        ProgramBuilder builder = new ProgramBuilder();
+        builder.count(expression.root());
+        this.result = builder.emit(expression.root());
+
+        int size = builder.instructions.size();
+        op = new char[size];
+        target = new int[size];
+        left = new int[size];
+        right = new int[size];
+        for (int i = 0; i < size; i++) {
+            int[] instruction = builder.instructions.get(i);
+            op[i] = (char) instruction[0];
+            target[i] = instruction[1];
+            left[i] = instruction[2];
+            right[i] = instruction[3];
+        }
+        registerCount = builder.registerCount;
+        constantRegisters = builder.constantRegisters.stream().mapToInt(Integer::intValue).toArray();
+        constants = builder.constants.toArray(new ExpressionNode.Constant[0]);
+    }
+
+    /** Evaluates every row: {@code out[row] = f(columns[0][row], columns[1][row], ...)}. */
+    public void evaluateFloat(double[][] columns, double[] out) {
+        if (!expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in integer mode");
+        int rows = out.length;
+        checkColumns(columns.length);
+        for (double[] column : columns) checkRows(column.length, rows);
+
+        double[][] registers = new double[registerCount][];
+        for (int r = 0; r < registerCount; r++) {
+            registers[r] = new double[BLOCK];
+        }
+        for (int c = 0; c < constantRegisters.length; c++) {
+            Arrays.fill(registers[constantRegisters[c]], constants[c].floatValue);
+        }
+
+        for (int start = 0; start < rows; start += BLOCK) {
+            int n = Math.min(BLOCK, rows - start);
+            if (!runFloat(columns, registers, start, n)) {
+                evaluateRowsFloat(columns, out, start, n);
+            } else if (result >= 0) {
+                System.arraycopy(registers[result], 0, out, start, n);
+            } else {
+                System.arraycopy(columns[-result - 1], start, out, start, n);
+            }
+        }
+    }
+
+    /** Integer-mode counterpart of {@link #evaluateFloat}, with the calculator's 32-bit int arithmetic. */
+    public void evaluateInt(int[][] columns, int[] out) {
+        if (expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in float mode");
+        int rows = out.length;
+        checkColumns(columns.length);
+        for (int[] column : columns) checkRows(column.length, rows);
+
+        int[][] registers = new int[registerCount][];
+        for (int r = 0; r < registerCount; r++) {
+            registers[r] = new int[BLOCK];
+        }
+        for (int c = 0; c < constantRegisters.length; c++) {
+            Arrays.fill(registers[constantRegisters[c]], constants[c].intValue);
+        }
+
+        for (int start = 0; start < rows; start += BLOCK) {
+            int n = Math.min(BLOCK, rows - start);
+            if (!runInt(columns, registers, start, n)) {
+                evaluateRowsInt(columns, out, start, n);
+            } else if (result >= 0) {
+                System.arraycopy(registers[result], 0, out, start, n);
+            } else {
+                System.arraycopy(columns[-result - 1], start, out, start, n);
+            }
+        }
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    private void checkColumns(int count) {
+        if (count != variableCount) {
+            throw new IllegalArgumentException("Expected " + variableCount + " columns but got " + count);
+        }
+    }
+
+    private static void checkRows(int length, int rows) {
+        if (length < rows) {
+            throw new IllegalArgumentException("Column has " + length + " rows but the output has " + rows);
+        }
+    }
+
+    // ==== Float blocks ====
+
+    /** Runs the program on rows [start, start + n); false if a divisor was zero. */
+    private boolean runFloat(double[][] columns, double[][] registers, int start, int n) {
+        for (int i = 0; i < op.length; i++) {
+            double[] z = registers[target[i]];
+            double[] x = left[i] >= 0 ? registers[left[i]] : columns[-left[i] - 1];
+            int xo = left[i] >= 0 ? 0 : start;
+            if (op[i] == NEGATE) {
+                negate(x, xo, z, n);
+                continue;
+            }
+            double[] y = right[i] >= 0 ? registers[right[i]] : columns[-right[i] - 1];
+            int yo = right[i] >= 0 ? 0 : start;
+            switch (op[i]) {
+                case '+': add(x, xo, y, yo, z, n); break;
+                case '-': subtract(x, xo, y, yo, z, n); break;
+                case '*': multiply(x, xo, y, yo, z, n); break;
+                case '/':
+                    if (containsZero(y, yo, n)) return false;
+                    divide(x, xo, y, yo, z, n);
+                    break;
+                default:
+                    if (containsZero(y, yo, n)) return false;
+                    remainder(x, xo, y, yo, z, n);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void evaluateRowsFloat(double[][] columns, double[] out, int start, int n) {
+        ExpressionNode root = expression.root();
+        double[] row = new double[variableCount];
+        for (int i = start; i < start + n; i++) {
+            for (int v = 0; v < variableCount; v++) row[v] = columns[v][i];
+            out[i] = root.evalFloat(row);
+        }
+    }
+
+    private static void add(double[] x, int xo, double[] y, int yo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] + y[yo + i];
+    }
+
+    private static void subtract(double[] x, int xo, double[] y, int yo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] - y[yo + i];
+    }
+
+    private static void multiply(double[] x, int xo, double[] y, int yo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] * y[yo + i];
+    }
+
+    private static void divide(double[] x, int xo, double[] y, int yo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] / y[yo + i];
+    }
+
+    private static void remainder(double[] x, int xo, double[] y, int yo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] % y[yo + i];
+    }
+
+    private static void negate(double[] x, int xo, double[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = -x[xo + i];
+    }
+
+    private static boolean containsZero(double[] y, int yo, int n) {
+        for (int i = 0; i < n; i++) {
+            if (y[yo + i] == 0.0) return true;
+        }
+        return false;
+    }
+
+    // ==== Int blocks ====
+
+    private boolean runInt(int[][] columns, int[][] registers, int start, int n) {
+        for (int i = 0; i < op.length; i++) {
+            int[] z = registers[target[i]];
+            int[] x = left[i] >= 0 ? registers[left[i]] : columns[-left[i] - 1];
+            int xo = left[i] >= 0 ? 0 : start;
+            if (op[i] == NEGATE) {
+                negate(x, xo, z, n);
+                continue;
+            }
+            int[] y = right[i] >= 0 ? registers[right[i]] : columns[-right[i] - 1];
+            int yo = right[i] >= 0 ? 0 : start;
+            switch (op[i]) {
+                case '+': add(x, xo, y, yo, z, n); break;
+                case '-': subtract(x, xo, y, yo, z, n); break;
+                case '*': multiply(x, xo, y, yo, z, n); break;
+                case '/':
+                    if (containsZero(y, yo, n)) return false;
+                    divide(x, xo, y, yo, z, n);
+                    break;
+                default:
+                    if (containsZero(y, yo, n)) return false;
+                    remainder(x, xo, y, yo, z, n);
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void evaluateRowsInt(int[][] columns, int[] out, int start, int n) {
+        ExpressionNode root = expression.root();
+        int[] row = new int[variableCount];
+        for (int i = start; i < start + n; i++) {
+            for (int v = 0; v < variableCount; v++) row[v] = columns[v][i];
+            out[i] = root.evalInt(row);
+        }
+    }
+
+    private static void add(int[] x, int xo, int[] y, int yo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] + y[yo + i];
+    }
+
+    private static void subtract(int[] x, int xo, int[] y, int yo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] - y[yo + i];
+    }
+
+    private static void multiply(int[] x, int xo, int[] y, int yo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] * y[yo + i];
+    }
+
+    private static void divide(int[] x, int xo, int[] y, int yo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] / y[yo + i];
+    }
+
+    private static void remainder(int[] x, int xo, int[] y, int yo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = x[xo + i] % y[yo + i];
+    }
+
+    private static void negate(int[] x, int xo, int[] z, int n) {
+        for (int i = 0; i < n; i++) z[i] = -x[xo + i];
+    }
+
+    private static boolean containsZero(int[] y, int yo, int n) {
+        for (int i = 0; i < n; i++) {
+            if (y[yo + i] == 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Flattens the tree (or DAG, after ExpressionOptimizer) in post-order.
+     * A register is released when the last instruction reading it has been
+     * emitted, so it can be the target of that same instruction.
+     */
+    private static final class ProgramBuilder {
+        final List<int[]> instructions = new ArrayList<>();
+        final List<Integer> constantRegisters = new ArrayList<>();
+        final List<ExpressionNode.Constant> constants = new ArrayList<>();
+        final Map<ExpressionNode, Integer> uses = new IdentityHashMap<>();
+        final Map<ExpressionNode, Integer> refs = new IdentityHashMap<>();
+        final ArrayDeque<Integer> free = new ArrayDeque<>();
+        int registerCount;
+
+        void count(ExpressionNode node) {
+            if (uses.merge(node, 1, Integer::sum) > 1) return;
+            if (node instanceof ExpressionNode.Negate) {
+                count(((ExpressionNode.Negate) node).operand);
+            } else if (node instanceof ExpressionNode.Binary) {
+                ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+                count(binary.left);
+                count(binary.right);
+            }
+        }
+
+        int emit(ExpressionNode node) {
+            Integer existing = refs.get(node);
+            if (existing != null) return existing;
+
+            int ref;
+            if (node instanceof ExpressionNode.Variable) {
+                ref = -((ExpressionNode.Variable) node).slot - 1;
+            } else if (node instanceof ExpressionNode.Constant) {
+                ref = registerCount++; // filled once per call, never reused
+                constantRegisters.add(ref);
+                constants.add((ExpressionNode.Constant) node);
+            } else if (node instanceof ExpressionNode.Negate) {
+                ExpressionNode operand = ((ExpressionNode.Negate) node).operand;
+                int x = emit(operand);
+                release(operand, x);
+                ref = allocate();
+                instructions.add(new int[] {NEGATE, ref, x, 0});
+            } else {
+                ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+                int x = emit(binary.left);
+                int y = emit(binary.right);
+                release(binary.left, x);
+                release(binary.right, y);
+                ref = allocate();
+                instructions.add(new int[] {binary.op, ref, x, y});
+            }
+            refs.put(node, ref);
+            return ref;
+        }
+
+        private void release(ExpressionNode node, int ref) {
+            if (uses.merge(node, -1, Integer::sum) == 0 && ref >= 0
+                    && !(node instanceof ExpressionNode.Constant)) {
+                free.push(ref);
+            }
+        }
+
+        private int allocate() {
+            return free.isEmpty() ? registerCount++ : free.pop();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/**
+ * An expression parsed once by {@link ExpressionEngine#compile} into an
+ * immutable tree. Values for the declared variables are passed positionally,
+ * in the order they were declared at compile time.
+ *
+ * Instances are immutable and can be evaluated from any number of threads.
+ */
+public final class CompiledExpression {
+    private final String source;
+    private final boolean floatMode;
+    private final String[] variables;
+    private final ExpressionNode root;
+
+    CompiledExpression(String source, boolean floatMode, String[] variables, ExpressionNode root) {
+        this.source = source;
+        this.floatMode = floatMode;
+        this.variables = variables;
+        this.root = root;
+    }
+
+    public int evaluateInt(int... values) {
+        if (floatMode) throw new IllegalStateException("Expression was compiled in float mode");
+        checkArity(values.length);
+        return root.evalInt(values);
+    }
+
+    public double evaluateFloat(double... values) {
+        if (!floatMode) throw new IllegalStateException("Expression was compiled in integer mode");
+        checkArity(values.length);
+        return root.evalFloat(values);
+    }
+
+    /** Returns the position of {@code name} in the value arrays, or -1 if it is not declared. */
+    public int variableIndex(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    public String[] getVariables() {
+        return variables.clone();
+    }
+
+    public boolean isFloatMode() {
+        return floatMode;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    ExpressionNode root() {
+        return root;
+    }
+
+    private void checkArity(int count) {
+        if (count != variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " values for "
+                    + Arrays.toString(variables) + " but got " + count);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,575 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded pool of JDBC connections to one database, so a single-row query
+ * does not pay for a new MySQL handshake each time.
+ *
+ * {@link #getConnection} hands out a wrapper whose {@code close()} returns
+ * the physical connection to the pool, so existing try-with-resources code
+ * works unchanged. At most {@code maxSize} connections are in use at once;
+ * a caller that finds them all taken waits up to {@code maxWaitMillis} and
+ * then gets an {@link SQLTransientConnectionException}.
+ *
+ * A connection that sat idle for more than half a second is checked with
+ * {@link Connection#isValid} before it is handed out, and one idle for
+ * longer than {@code idleTimeoutMillis} is closed by a background thread.
+ * On return, an open transaction is rolled back and auto-commit restored,
+ * and so are the read-only flag, isolation level and catalog the connection
+ * was opened with, if the borrower changed them; a connection that fails
+ * any of this is discarded instead of reused.
+ *
+ * Each physical connection keeps up to {@code statementCacheSize} prepared
+ * statements, least recently used evicted first. {@code prepareStatement(sql)}
+ * on a pooled connection returns the cached statement for that SQL when
+ * there is one, and closing it clears its parameters and batch, and puts
+ * back any fetch size, row limit or query timeout the borrower set, instead
+ * of closing it, so the same query run once per borrow is parsed once per
+ * connection. The other {@code prepareStatement} overloads are not cached.
+ *
+ * Use {@link #shared} to get the one pool per database that every CRUD
+ * path in the application shares. Instances are thread-safe.
+ */
+public final class ConnectionPool implements AutoCloseable {
+    public static final int DEFAULT_MAX_SIZE = 8;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 32;
+
+    private static final long VALIDATE_AFTER_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private static final Map<String, ConnectionPool> SHARED = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "connection-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> SHARED.values().forEach(ConnectionPool::close), "connection-pool-shutdown"));
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutNanos;
+    private final int statementCacheSize;
+    private final Semaphore permits;
+    /** Idle physical connections, most recently returned first; guarded by itself. */
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>();
+    private final ScheduledFuture<?> eviction;
+    private volatile boolean closed;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, long maxWaitMillis, long idleTimeoutMillis) {
+        this(url, user, password, maxSize, maxWaitMillis, idleTimeoutMillis, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /** @param statementCacheSize prepared statements kept per connection; 0 disables the cache */
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, long maxWaitMillis, long idleTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        if (idleTimeoutMillis < 1) throw new IllegalArgumentException("Idle timeout must be positive: " + idleTimeoutMillis);
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Statement cache size must not be negative: " + statementCacheSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        long period = Math.max(1, idleTimeoutMillis / 2);
+        this.eviction = EVICTOR.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /** The pool for this database and account, created with the default limits on first use. */
+    public static ConnectionPool shared(String url, String user, String password) {
+        return SHARED.computeIfAbsent(url + '\n' + user + '\n' + password,
+                key -> new ConnectionPool(url, user, password,
+                        DEFAULT_MAX_SIZE, DEFAULT_MAX_WAIT_MILLIS, DEFAULT_IDLE_TIMEOUT_MILLIS));
+    }
+
+    /** Borrows a connection; closing it gives it back. */
+    public Connection getConnection() throws SQLException {
+        if (closed) throw new SQLException("Connection pool for " + url + " is closed");
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + maxWaitMillis
+                        + " ms waiting for a connection to " + url + " (all " + maxSize + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection to " + url, e);
+        }
+        try {
+            Physical physical = takeIdle();
+            if (physical == null) {
+                physical = open();
+                created.increment();
+            }
+            waitTime.record(System.nanoTime() - start);
+            borrowed.increment();
+            active.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new Handle(physical));
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Physical open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, user, password);
+        try {
+            return new Physical(connection);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        eviction.cancel(false);
+        SHARED.values().remove(this);
+        closeIdle();
+    }
+
+    // ==== Statistics ====
+
+    public int getActiveCount() {
+        return active.get();
+    }
+
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCreatedCount() {
+        return created.sum();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.sum();
+    }
+
+    public long getBorrowCount() {
+        return borrowed.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    public long getValidationFailureCount() {
+        return validationFailures.sum();
+    }
+
+    /** prepareStatement(sql) calls answered from a connection's statement cache. */
+    public long getStatementCacheHits() {
+        return statementHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementMisses.sum();
+    }
+
+    /** Time spent in {@link #getConnection}, including waiting and connecting. */
+    LatencyHistogram getWaitTime() {
+        return waitTime;
+    }
+
+    /** One-line summary, e.g. for a log. */
+    public String statistics() {
+        return String.format("active=%d idle=%d max=%d created=%d destroyed=%d borrowed=%d timeouts=%d invalid=%d"
+                        + " statements hit=%d miss=%d wait p50=%.1fus p99=%.1fus max=%.1fus",
+                getActiveCount(), getIdleCount(), maxSize, getCreatedCount(), getDestroyedCount(),
+                getBorrowCount(), getTimeoutCount(), getValidationFailureCount(),
+                getStatementCacheHits(), getStatementCacheMisses(),
+                waitTime.percentile(50) / 1e3, waitTime.percentile(99) / 1e3, waitTime.getMax() / 1e3);
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[" + url + ", " + statistics() + "]";
+    }
+
+    // ==== Internals ====
+
+    private Physical takeIdle() {
+        while (true) {
+            Idle candidate;
+            synchronized (idle) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) return null;
+            if (System.nanoTime() - candidate.since < VALIDATE_AFTER_IDLE_NANOS || isValid(candidate.physical.connection)) {
+                return candidate.physical;
+            }
+            validationFailures.increment();
+            destroy(candidate.physical);
+        }
+    }
+
+    private void release(Physical physical) {
+        physical.releaseStatements();
+        if (!closed && reset(physical)) {
+            synchronized (idle) {
+                idle.addFirst(new Idle(physical, System.nanoTime()));
+            }
+            if (closed) closeIdle(); // lost a race with close()
+        } else {
+            destroy(physical);
+        }
+        active.decrementAndGet();
+        permits.release();
+    }
+
+    /** Undoes what a borrower may have left behind; false if the connection is not fit for reuse. */
+    private static boolean reset(Physical physical) {
+        Connection connection = physical.connection;
+        try {
+            if (connection.isClosed()) return false;
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            if (physical.sessionChanged) {
+                // only when a setter was called: with some drivers each getter is a round trip
+                if (connection.isReadOnly() != physical.readOnly) connection.setReadOnly(physical.readOnly);
+                if (connection.getTransactionIsolation() != physical.isolation) {
+                    connection.setTransactionIsolation(physical.isolation);
+                }
+                if (physical.catalog != null && !physical.catalog.equals(connection.getCatalog())) {
+                    connection.setCatalog(physical.catalog);
+                }
+                physical.sessionChanged = false;
+            }
+            connection.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValid(Connection physical) {
+        try {
+            return physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        List<Physical> expired = new ArrayList<>();
+        synchronized (idle) {
+            // oldest at the end: stop at the first one still fresh
+            for (Iterator<Idle> it = idle.descendingIterator(); it.hasNext(); ) {
+                Idle candidate = it.next();
+                if (now - candidate.since < idleTimeoutNanos) break;
+                it.remove();
+                expired.add(candidate.physical);
+            }
+        }
+        expired.forEach(this::destroy);
+    }
+
+    private void closeIdle() {
+        List<Physical> all = new ArrayList<>();
+        synchronized (idle) {
+            for (Idle candidate : idle) all.add(candidate.physical);
+            idle.clear();
+        }
+        all.forEach(this::destroy);
+    }
+
+    private void destroy(Physical physical) {
+        destroyed.increment();
+        try {
+            physical.connection.close(); // closes its cached statements too
+        } catch (SQLException ignored) {
+            // already broken; nothing left to release
+        }
+    }
+
+    private static final class Idle {
+        final Physical physical;
+        final long since;
+
+        Idle(Physical physical, long since) {
+            this.physical = physical;
+            this.since = since;
+        }
+    }
+
+    /** A physical connection, the session settings it was opened with, and its statement cache. */
+    private final class Physical {
+        final Connection connection;
+        final boolean readOnly;
+        final int isolation;
+        final String catalog;
+        /** Set when a borrower called a setter for one of the settings above. */
+        volatile boolean sessionChanged;
+        /** Least recently used first; only touched by the borrower and by release. */
+        private final LinkedHashMap<String, Cached> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+        Physical(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.readOnly = connection.isReadOnly();
+            this.isolation = connection.getTransactionIsolation();
+            this.catalog = connection.getCatalog();
+        }
+
+        synchronized PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+            Cached cached = statements.get(sql);
+            if (cached != null && cached.lease != null) {
+                // already handed out in this borrow (nested use of the same SQL): give an uncached one
+                statementMisses.increment();
+                return connection.prepareStatement(sql);
+            }
+            if (cached != null) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                PreparedStatement statement = connection.prepareStatement(sql);
+                try {
+                    cached = new Cached(statement);
+                } catch (SQLException e) {
+                    closeQuietly(statement);
+                    throw e;
+                }
+                statements.put(sql, cached);
+                evictStatements();
+            }
+            cached.lease = new Lease(this, cached, owner);
+            return (PreparedStatement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, cached.lease);
+        }
+
+        private void evictStatements() {
+            Iterator<Cached> it = statements.values().iterator();
+            while (statements.size() > statementCacheSize && it.hasNext()) {
+                Cached eldest = it.next();
+                it.remove();
+                eldest.evicted = true;
+                if (eldest.lease == null) closeQuietly(eldest.statement);
+            }
+        }
+
+        synchronized void giveBack(Cached cached) {
+            cached.lease = null;
+            if (cached.evicted) {
+                closeQuietly(cached.statement);
+                return;
+            }
+            try {
+                PreparedStatement statement = cached.statement;
+                statement.clearParameters();
+                statement.clearBatch();
+                statement.clearWarnings();
+                if (cached.settingsChanged) {
+                    statement.setMaxRows(cached.maxRows); // first: a fetch size above the row limit is refused
+                    statement.setFetchSize(cached.fetchSize);
+                    statement.setQueryTimeout(cached.queryTimeout);
+                    cached.settingsChanged = false;
+                }
+            } catch (SQLException e) {
+                statements.values().remove(cached);
+                closeQuietly(cached.statement);
+            }
+        }
+
+        /** Takes back statements the borrower did not close. */
+        synchronized void releaseStatements() {
+            for (Cached cached : new ArrayList<>(statements.values())) {
+                Lease lease = cached.lease;
+                if (lease != null) {
+                    lease.returned = true;
+                    giveBack(cached);
+                }
+            }
+        }
+
+        private void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException ignored) {
+                // the connection is probably gone as well; it will be discarded
+            }
+        }
+    }
+
+    private static final class Cached {
+        final PreparedStatement statement;
+        /** As prepared, restored when a borrower changed them. */
+        final int fetchSize;
+        final int maxRows;
+        final int queryTimeout;
+        Lease lease;
+        boolean evicted;
+        volatile boolean settingsChanged;
+
+        Cached(PreparedStatement statement) throws SQLException {
+            this.statement = statement;
+            this.fetchSize = statement.getFetchSize();
+            this.maxRows = statement.getMaxRows();
+            this.queryTimeout = statement.getQueryTimeout();
+        }
+    }
+
+    /** The borrower's view of a cached statement: close() puts it back in the cache. */
+    private static final class Lease implements InvocationHandler {
+        private final Physical physical;
+        private final Cached cached;
+        private final Connection owner;
+        volatile boolean returned;
+
+        Lease(Physical physical, Cached cached, Connection owner) {
+            this.physical = physical;
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (method.getParameterCount() == 0) {
+                        synchronized (physical) {
+                            if (!returned) {
+                                returned = true;
+                                physical.giveBack(cached);
+                            }
+                        }
+                        return null;
+                    }
+                    break;
+                case "isClosed":
+                    if (returned) return true;
+                    break;
+                case "setFetchSize":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setQueryTimeout":
+                    cached.settingsChanged = true;
+                    break;
+                case "getConnection":
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.statement + "]";
+                default:
+                    break;
+            }
+            if (returned) throw new SQLException("Statement has been closed");
+            try {
+                return method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /** The borrower's view of a physical connection: close() returns it, and it is unusable afterwards. */
+    private final class Handle implements InvocationHandler {
+        private Physical physical;
+
+        Handle(Physical physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Physical target;
+            synchronized (this) {
+                target = physical;
+                if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                    physical = null;
+                    if (target != null) release(target);
+                    return null;
+                }
+            }
+            switch (method.getName()) {
+                case "isClosed":
+                    if (target == null) return true;
+                    break;
+                case "setReadOnly":
+                case "setTransactionIsolation":
+                case "setCatalog":
+                    if (target != null) target.sessionChanged = true;
+                    break;
+                case "prepareStatement":
+                    if (target != null && statementCacheSize > 0 && method.getParameterCount() == 1) {
+                        return target.prepare((String) args[0], (Connection) proxy);
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + (target == null ? "returned" : target.connection) + "]";
+                default:
+                    break;
+            }
+            if (target == null) throw new SQLException("Connection has been returned to the pool");
+            try {
+                return method.invoke(target.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,439 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-through cache of employee rows in front of another {@link EmployeeStore},
+ * in practice an {@link EmployeeRepository}.
+ *
+ * Two things are cached. Single rows by id, including "no such id", in an
+ * LRU map of at most {@code maxEntries}; these serve {@link #findById} and
+ * {@link #exists}. And the whole table as one id-sorted array, loaded the
+ * first time a listing is asked for, as long as the table has at most
+ * {@code maxEntries} rows; while it is loaded, {@link #readPage} and point
+ * lookups are answered from it without touching the database. A larger
+ * table is listed straight from the database, page by page as before.
+ *
+ * Writes go to the database first and then update the cached copy, so the
+ * application's own changes are visible immediately; an insert with a
+ * generated id drops the listing since the new id is unknown. Changes made
+ * by other writers (another client, a bulk import) are picked up when an
+ * entry or the listing is older than {@code ttlMillis}, or at once after
+ * {@link #invalidateAll}.
+ *
+ * Hits, misses, loads and evictions are counted; see {@link #statistics}.
+ * Instances are thread-safe.
+ */
+public final class EmployeeCache implements EmployeeStore {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 30_000;
+
+    private final EmployeeStore store;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    /** Point lookups, least recently used first; guarded by itself. */
+    private final LinkedHashMap<Integer, Row> byId;
+    /** The whole table sorted by id, or null; replaced, never modified in place. Guarded by byId for writes. */
+    private volatile Listing listing;
+    /** Bumped by every write; a load that raced with one is not kept. Guarded by byId. */
+    private long generation;
+    /** Set when the table was found to have more than maxEntries rows, at tooLargeAt. */
+    private volatile boolean tooLarge;
+    private volatile long tooLargeAt;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public EmployeeCache(EmployeeStore store) {
+        this(store, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public EmployeeCache(EmployeeStore store, int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+        if (ttlMillis < 1) throw new IllegalArgumentException("TTL must be positive: " + ttlMillis);
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Row> eldest) {
+                if (size() <= EmployeeCache.this.maxEntries) return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /** The store behind the cache. */
+    public EmployeeStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void createTableIfNotExists(boolean generatedIds) throws SQLException {
+        store.createTableIfNotExists(generatedIds);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        store.close();
+    }
+
+    // ==== Reads ====
+
+    @Override
+    public <T> T findById(int id, Mapper<T> mapper) throws SQLException {
+        Row row = lookup(id);
+        return row.present ? mapper.map(row.id, row.name, row.email, row.salary) : null;
+    }
+
+    @Override
+    public boolean exists(int id) throws SQLException {
+        return lookup(id).present;
+    }
+
+    /**
+     * Served from the cached listing when there is a fresh one, loading it
+     * first if the table is small enough; otherwise read from the database.
+     */
+    @Override
+    public int readPage(boolean first, int afterId, int limit, EmployeePager.RowHandler handler)
+            throws SQLException {
+        Listing current = freshListing();
+        if (current == null) {
+            misses.increment();
+            return store.readPage(first, afterId, limit, handler);
+        }
+        hits.increment();
+        Row[] rows = current.rows;
+        int from = first ? 0 : upperBound(rows, afterId);
+        int to = (int) Math.min(rows.length, (long) from + limit);
+        for (int i = from; i < to; i++) {
+            Row row = rows[i];
+            handler.row(row.id, row.name, row.email, row.salary);
+        }
+        return to - from;
+    }
+
+    /**
+     * Filtered and sorted in memory from the cached listing when there is a
+     * fresh one (see {@link #readPage}); otherwise searched in the database.
+     */
+    @Override
+    public int search(EmployeeQuery query, int limit, EmployeePager.RowHandler handler) throws SQLException {
+        if (freshListing() == null) return store.search(query, limit, handler);
+        return EmployeeStore.super.search(query, limit, handler);
+    }
+
+    // ==== Writes ====
+
+    /** The cached listing is dropped since the new id is not known. */
+    @Override
+    public void insert(String name, String email, double salary) throws SQLException {
+        store.insert(name, email, salary);
+        synchronized (byId) {
+            generation++;
+            listing = null;
+        }
+    }
+
+    @Override
+    public void insert(int id, String name, String email, double salary) throws SQLException {
+        try {
+            store.insert(id, name, email, salary);
+        } catch (SQLException e) {
+            throw failed(id, e);
+        }
+        put(new Row(id, name, email, salary, System.nanoTime()));
+    }
+
+    @Override
+    public boolean update(int id, String name, String email, double salary) throws SQLException {
+        boolean updated;
+        try {
+            updated = store.update(id, name, email, salary);
+        } catch (SQLException e) {
+            throw failed(id, e);
+        }
+        put(updated ? new Row(id, name, email, salary, System.nanoTime()) : Row.absent(id, System.nanoTime()));
+        return updated;
+    }
+
+    @Override
+    public boolean updateSalary(int id, double salary) throws SQLException {
+        boolean updated;
+        try {
+            updated = store.updateSalary(id, salary);
+        } catch (SQLException e) {
+            throw failed(id, e);
+        }
+        if (!updated) {
+            put(Row.absent(id, System.nanoTime()));
+            return false;
+        }
+        synchronized (byId) {
+            Row old = cached(id);
+            if (old != null && old.present && System.nanoTime() - old.loadedAt < ttlNanos) {
+                put(new Row(id, old.name, old.email, salary, System.nanoTime()));
+            } else {
+                invalidate(id); // the other columns are not known here
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        boolean deleted;
+        try {
+            deleted = store.delete(id);
+        } catch (SQLException e) {
+            throw failed(id, e);
+        }
+        put(Row.absent(id, System.nanoTime()));
+        return deleted;
+    }
+
+    /** Forgets one id, e.g. after a write whose outcome is uncertain. */
+    public void invalidate(int id) {
+        synchronized (byId) {
+            generation++;
+            byId.remove(id);
+            listing = null;
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        synchronized (byId) {
+            generation++;
+            byId.clear();
+            listing = null;
+            tooLarge = false;
+        }
+    }
+
+    /** A constraint violation (SQLState 23xxx) changed nothing; anything else may have. */
+    private SQLException failed(int id, SQLException e) {
+        String state = e.getSQLState();
+        if (state == null || !state.startsWith("23")) invalidate(id);
+        return e;
+    }
+
+    // ==== Statistics ====
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** Hits over all lookups and page reads, 0 when there were none. */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /** Times the whole table was loaded into the listing. */
+    public long getListingLoadCount() {
+        return loads.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (byId) {
+            return byId.size();
+        }
+    }
+
+    /** One-line summary, e.g. for a log. */
+    public String statistics() {
+        Listing current = listing;
+        return String.format("hits=%d misses=%d ratio=%.1f%% entries=%d/%d evictions=%d listing=%s loads=%d",
+                getHitCount(), getMissCount(), getHitRatio() * 100, size(), maxEntries, getEvictionCount(),
+                current == null ? "none" : current.rows.length + " rows", getListingLoadCount());
+    }
+
+    @Override
+    public String toString() {
+        return "EmployeeCache[" + statistics() + "]";
+    }
+
+    // ==== Internals ====
+
+    private Row lookup(int id) throws SQLException {
+        long now = System.nanoTime();
+        Listing current = listing;
+        if (current != null && now - current.loadedAt < ttlNanos) {
+            hits.increment();
+            int index = indexOf(current.rows, id);
+            return index >= 0 ? current.rows[index] : Row.absent(id, now);
+        }
+        long startGeneration;
+        synchronized (byId) {
+            Row row = byId.get(id);
+            if (row != null && now - row.loadedAt < ttlNanos) {
+                hits.increment();
+                return row;
+            }
+            startGeneration = generation;
+        }
+        misses.increment();
+        Row loaded = store.findById(id, (rid, name, email, salary) -> new Row(rid, name, email, salary, now));
+        Row row = loaded != null ? loaded : Row.absent(id, now);
+        synchronized (byId) {
+            if (generation == startGeneration) byId.put(id, row);
+        }
+        return row;
+    }
+
+    private Row cached(int id) {
+        Listing current = listing;
+        if (current != null) {
+            int index = indexOf(current.rows, id);
+            if (index >= 0) return current.rows[index];
+        }
+        return byId.get(id);
+    }
+
+    /** Puts a row (or an absent marker) in the map and patches the listing, if there is one. */
+    private void put(Row row) {
+        synchronized (byId) {
+            generation++;
+            byId.put(row.id, row);
+            Listing current = listing;
+            if (current == null) return;
+            Row[] rows = current.rows;
+            int index = indexOf(rows, row.id);
+            Row[] patched;
+            if (index >= 0) {
+                if (row.present) {
+                    patched = rows.clone();
+                    patched[index] = row;
+                } else {
+                    patched = new Row[rows.length - 1];
+                    System.arraycopy(rows, 0, patched, 0, index);
+                    System.arraycopy(rows, index + 1, patched, index, rows.length - index - 1);
+                }
+            } else if (row.present) {
+                if (rows.length == maxEntries) { // grown past the bound: list from the database again
+                    listing = null;
+                    return;
+                }
+                int insertAt = -index - 1;
+                patched = new Row[rows.length + 1];
+                System.arraycopy(rows, 0, patched, 0, insertAt);
+                patched[insertAt] = row;
+                System.arraycopy(rows, insertAt, patched, insertAt + 1, rows.length - insertAt);
+            } else {
+                return;
+            }
+            listing = new Listing(patched, current.loadedAt);
+        }
+    }
+
+    /** The cached listing if it is fresh, loading it when the table is small enough; null otherwise. */
+    private Listing freshListing() throws SQLException {
+        long now = System.nanoTime();
+        Listing current = listing;
+        if (current != null && now - current.loadedAt < ttlNanos) return current;
+        if (tooLarge && now - tooLargeAt < ttlNanos) return null;
+        long startGeneration;
+        synchronized (byId) {
+            startGeneration = generation;
+        }
+
+        List<Row> rows = new ArrayList<>();
+        int[] lastId = new int[1];
+        int pageSize = Math.min(maxEntries + 1, EmployeePager.DEFAULT_PAGE_SIZE);
+        boolean first = true;
+        while (true) {
+            int read = store.readPage(first, lastId[0], pageSize, (id, name, email, salary) -> {
+                rows.add(new Row(id, name, email, salary, now));
+                lastId[0] = id;
+            });
+            first = false;
+            if (rows.size() > maxEntries) {
+                tooLargeAt = now;
+                tooLarge = true;
+                return null;
+            }
+            if (read < pageSize) break;
+        }
+        loads.increment();
+        Listing loaded = new Listing(rows.toArray(new Row[0]), now);
+        synchronized (byId) {
+            // a write during the load may be missing from it: serve this once, do not keep it
+            if (generation == startGeneration) listing = loaded;
+        }
+        return loaded;
+    }
+
+    private static int indexOf(Row[] rows, int id) {
+        int low = 0;
+        int high = rows.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = rows[mid].id;
+            if (midId < id) low = mid + 1;
+            else if (midId > id) high = mid - 1;
+            else return mid;
+        }
+        return -(low + 1);
+    }
+
+    /** Index of the first row with an id above {@code id}. */
+    private static int upperBound(Row[] rows, int id) {
+        int index = indexOf(rows, id);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private static final class Row {
+        final int id;
+        final String name;
+        final String email;
+        final double salary;
+        final boolean present;
+        final long loadedAt;
+
+        Row(int id, String name, String email, double salary, long loadedAt) {
+            this(id, name, email, salary, true, loadedAt);
+        }
+
+        private Row(int id, String name, String email, double salary, boolean present, long loadedAt) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.salary = salary;
+            this.present = present;
+            this.loadedAt = loadedAt;
+        }
+
+        static Row absent(int id, long loadedAt) {
+            return new Row(id, null, null, 0.0, false, loadedAt);
+        }
+    }
+
+    private static final class Listing {
+        final Row[] rows;
+        final long loadedAt;
+
+        Listing(Row[] rows, long loadedAt) {
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
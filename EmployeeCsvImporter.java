@@ -0,0 +1,476 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * Bulk import of employees from a CSV file into the {@code employees} table.
+ *
+ * The file is streamed, never loaded whole. Columns are {@code id,name,email,salary}
+ * or {@code name,email,salary} (for the auto-increment schema); a header
+ * line naming them may give them in any order, and a header naming any
+ * other column is refused rather than guessed at. Fields may be quoted, with
+ * {@code ""} for a quote inside. A leading byte order mark is skipped.
+ *
+ * Rows are sent with addBatch/executeBatch and committed every
+ * {@code chunkSize} rows, so a million rows take a few hundred round trips
+ * instead of a million autocommitted INSERTs. Rows with a missing name, a
+ * name or email longer than {@link EmployeeStore#MAX_TEXT_LENGTH}, a bad
+ * number or an email not matching {@link #EMAIL_PATTERN} are rejected
+ * before they reach the database. When the database refuses a chunk for
+ * the data of a row (SQLState class 22, e.g. a salary out of range) or a
+ * constraint violation (class 23, a duplicate id or email), that chunk is
+ * rolled back and retried row by row, so only the offending rows are
+ * rejected and the import carries on. Any other failure (a lost
+ * connection, a missing table, a server error) rolls the chunk back and
+ * aborts the import; chunks committed before that stay committed.
+ *
+ * Built on an {@link EmployeeStore} instead of a pool (for the log file
+ * backend), rows are validated the same way and inserted one at a time
+ * through the store, which has no round trips to save; the same rows are
+ * rejected and the same failures abort.
+ */
+public final class EmployeeCsvImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    /** Same rule as the FX form. */
+    static final Pattern EMAIL_PATTERN = Pattern.compile(
+            "^[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,6}$", Pattern.CASE_INSENSITIVE);
+
+    private static final int MAX_REPORTED_REJECTIONS = 1_000;
+
+    /** One of these is null. */
+    private final ConnectionPool pool;
+    private final EmployeeStore store;
+    private final int chunkSize;
+
+    public EmployeeCsvImporter(ConnectionPool pool) {
+        this(pool, DEFAULT_CHUNK_SIZE);
+    }
+
+    public EmployeeCsvImporter(ConnectionPool pool, int chunkSize) {
+        this(pool, null, chunkSize);
+    }
+
+    public EmployeeCsvImporter(EmployeeStore store, int chunkSize) {
+        this(null, store, chunkSize);
+    }
+
+    private EmployeeCsvImporter(ConnectionPool pool, EmployeeStore store, int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.pool = pool;
+        this.store = store;
+        this.chunkSize = chunkSize;
+    }
+
+    /** Batched JDBC through {@code pool} when the store is MySQL, otherwise through the store itself. */
+    public static EmployeeCsvImporter forStore(EmployeeStore store, ConnectionPool pool, int chunkSize) {
+        return store instanceof LogEmployeeStore
+                ? new EmployeeCsvImporter(store, chunkSize)
+                : new EmployeeCsvImporter(pool, chunkSize);
+    }
+
+    public Report importFile(Path file) throws IOException, SQLException {
+        return importFile(file, rows -> { });
+    }
+
+    /** @param progress called after each committed chunk with the number of rows read so far */
+    public Report importFile(Path file, LongConsumer progress) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            CsvReader csv = new CsvReader(in);
+            List<String> fields = new ArrayList<>();
+            if (!csv.next(fields)) return report.finish(start);
+
+            Columns columns = Columns.fromHeader(fields);
+            boolean headerLine = columns != null;
+            if (columns == null) columns = Columns.byPosition(fields.size());
+            if (columns == null) {
+                throw new IOException("Line 1: expected id,name,email,salary or name,email,salary but found "
+                        + fields.size() + " columns");
+            }
+
+            try (Sink sink = pool != null ? new JdbcSink(pool, columns.id >= 0) : new StoreSink(store)) {
+                Chunk chunk = new Chunk(chunkSize, columns.id >= 0);
+                long rows = 0;
+                boolean pending = !headerLine; // the first record is data
+                while (pending || csv.next(fields)) {
+                    pending = false;
+                    if (fields.size() == 1 && fields.get(0).isBlank()) continue;
+                    rows++;
+                    String problem = chunk.add(csv.recordLine(), fields, columns);
+                    if (problem != null) report.reject(csv.recordLine(), problem);
+                    if (chunk.size == chunkSize) {
+                        sink.flush(chunk, report);
+                        chunk.size = 0;
+                        progress.accept(rows);
+                    }
+                }
+                sink.flush(chunk, report);
+                progress.accept(rows);
+            }
+        }
+        return report.finish(start);
+    }
+
+    /** Where validated chunks go. */
+    private interface Sink extends AutoCloseable {
+        void flush(Chunk chunk, Report report) throws SQLException;
+
+        @Override
+        void close() throws SQLException;
+    }
+
+    /** One connection and one batched INSERT for the whole import, committed per chunk. */
+    private static final class JdbcSink implements Sink {
+        private final Connection conn;
+        private final PreparedStatement insert;
+
+        JdbcSink(ConnectionPool pool, boolean withId) throws SQLException {
+            conn = pool.getConnection();
+            try {
+                insert = conn.prepareStatement(withId
+                        ? "INSERT INTO employees (id, name, email, salary) VALUES (?, ?, ?, ?)"
+                        : "INSERT INTO employees (name, email, salary) VALUES (?, ?, ?)");
+                conn.setAutoCommit(false);
+            } catch (SQLException e) {
+                conn.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush(Chunk chunk, Report report) throws SQLException {
+            if (chunk.size == 0) return;
+            for (int i = 0; i < chunk.size; i++) {
+                chunk.bind(insert, i);
+                insert.addBatch();
+            }
+            try {
+                insert.executeBatch();
+                conn.commit();
+                report.imported += chunk.size;
+            } catch (BatchUpdateException e) {
+                conn.rollback();
+                insert.clearBatch();
+                if (!isRowError(e)) throw e;
+                insertOneByOne(chunk, report);
+            }
+        }
+
+        /** A row's data or constraints at fault, on the exception or, if it has no SQLState, the first chained one that does. */
+        private static boolean isRowError(SQLException e) {
+            for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+                String state = cause.getSQLState();
+                if (state != null) return Report.isRowError(state);
+            }
+            return false;
+        }
+
+        /** Retries a refused chunk with one autocommitted INSERT per row to find the rows at fault. */
+        private void insertOneByOne(Chunk chunk, Report report) throws SQLException {
+            conn.setAutoCommit(true);
+            try {
+                for (int i = 0; i < chunk.size; i++) {
+                    chunk.bind(insert, i);
+                    try {
+                        insert.executeUpdate();
+                        report.imported++;
+                    } catch (SQLException e) {
+                        report.reject(chunk.lines[i], e);
+                    }
+                }
+            } finally {
+                conn.setAutoCommit(false);
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                insert.close();
+            } finally {
+                conn.close();
+            }
+        }
+    }
+
+    /** Row by row through an {@link EmployeeStore}. */
+    private static final class StoreSink implements Sink {
+        private final EmployeeStore store;
+
+        StoreSink(EmployeeStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void flush(Chunk chunk, Report report) throws SQLException {
+            for (int i = 0; i < chunk.size; i++) {
+                try {
+                    if (chunk.withId) store.insert(chunk.ids[i], chunk.names[i], chunk.emails[i], chunk.salaries[i]);
+                    else store.insert(chunk.names[i], chunk.emails[i], chunk.salaries[i]);
+                    report.imported++;
+                } catch (SQLException e) {
+                    report.reject(chunk.lines[i], e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Outcome of one import. */
+    public static final class Report {
+        private long imported;
+        private long rejected;
+        private final List<String> rejections = new ArrayList<>();
+        private long elapsedNanos;
+
+        private void reject(long line, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REPORTED_REJECTIONS) rejections.add("line " + line + ": " + reason);
+        }
+
+        /** Records a row the database refused for its data, or rethrows any other failure, which aborts the import. */
+        private void reject(long line, SQLException e) throws SQLException {
+            String state = e.getSQLState();
+            if (state == null || !isRowError(state)) throw e;
+            reject(line, state.startsWith("23")
+                    ? "duplicate id or email (SQLState " + state + "): " + e.getMessage()
+                    : e.getMessage());
+        }
+
+        /** SQLState class 22 (data exception) or 23 (integrity constraint violation). */
+        private static boolean isRowError(String state) {
+            return state.startsWith("22") || state.startsWith("23");
+        }
+
+        private Report finish(long start) {
+            elapsedNanos = System.nanoTime() - start;
+            return this;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /** The first {@value EmployeeCsvImporter#MAX_REPORTED_REJECTIONS} rejected rows, as "line N: reason". */
+        public List<String> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNanos / 1e9;
+            return String.format("Imported %,d rows, rejected %,d, in %.1f s (%,.0f rows/s)",
+                    imported, rejected, seconds, seconds > 0 ? (imported + rejected) / seconds : 0.0);
+        }
+    }
+
+    /** Positions of the columns in a record; id is -1 when the file has none. */
+    private static final class Columns {
+        private static final List<String> HEADER_NAMES = List.of("id", "name", "email", "salary");
+
+        final int id;
+        final int name;
+        final int email;
+        final int salary;
+        final int count;
+
+        Columns(int id, int name, int email, int salary, int count) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.salary = salary;
+            this.count = count;
+        }
+
+        /**
+         * Null if the record is not a header, i.e. names none of the
+         * columns. A record that names some must name exactly the columns of
+         * one of the two layouts, or the file is refused: an unknown column
+         * would otherwise be ignored, and with it, say, the ids.
+         */
+        static Columns fromHeader(List<String> fields) throws IOException {
+            int[] positions = {-1, -1, -1, -1};
+            List<String> unknown = new ArrayList<>();
+            boolean header = false;
+            for (int i = 0; i < fields.size(); i++) {
+                String field = fields.get(i).trim();
+                int column = HEADER_NAMES.indexOf(field.toLowerCase(Locale.ROOT));
+                if (column < 0 || positions[column] >= 0) {
+                    unknown.add(field);
+                } else {
+                    positions[column] = i;
+                    header = true;
+                }
+            }
+            if (!header) return null;
+            if (!unknown.isEmpty() || positions[1] < 0 || positions[2] < 0 || positions[3] < 0) {
+                throw new IOException("Line 1: header " + fields + " is not id,name,email,salary or name,email,salary"
+                        + (unknown.isEmpty() ? "" : " (unrecognised: " + unknown + ")"));
+            }
+            return new Columns(positions[0], positions[1], positions[2], positions[3], fields.size());
+        }
+
+        static Columns byPosition(int count) {
+            if (count == 4) return new Columns(0, 1, 2, 3, 4);
+            if (count == 3) return new Columns(-1, 0, 1, 2, 3);
+            return null;
+        }
+    }
+
+    /** Validated rows waiting for the next executeBatch, kept in parallel arrays. */
+    private static final class Chunk {
+        final boolean withId;
+        final long[] lines;
+        final int[] ids;
+        final String[] names;
+        final String[] emails;
+        final double[] salaries;
+        int size;
+
+        Chunk(int capacity, boolean withId) {
+            this.withId = withId;
+            lines = new long[capacity];
+            ids = new int[capacity];
+            names = new String[capacity];
+            emails = new String[capacity];
+            salaries = new double[capacity];
+        }
+
+        /** Adds the record, or returns why it is rejected. */
+        String add(long line, List<String> fields, Columns columns) {
+            if (fields.size() != columns.count) {
+                return "expected " + columns.count + " columns but found " + fields.size();
+            }
+            String name = fields.get(columns.name).trim();
+            if (name.isEmpty()) return "name is empty";
+            if (name.length() > EmployeeStore.MAX_TEXT_LENGTH) {
+                return "name longer than " + EmployeeStore.MAX_TEXT_LENGTH + " characters";
+            }
+            String email = fields.get(columns.email).trim();
+            if (email.isEmpty()) {
+                email = null;
+            } else if (email.length() > EmployeeStore.MAX_TEXT_LENGTH) {
+                return "email longer than " + EmployeeStore.MAX_TEXT_LENGTH + " characters";
+            } else if (!EMAIL_PATTERN.matcher(email).matches()) {
+                return "invalid email '" + email + "'";
+            }
+            double salary;
+            try {
+                salary = Double.parseDouble(fields.get(columns.salary).trim());
+            } catch (NumberFormatException e) {
+                return "invalid salary '" + fields.get(columns.salary).trim() + "'";
+            }
+            int id = 0;
+            if (withId) {
+                try {
+                    id = Integer.parseInt(fields.get(columns.id).trim());
+                } catch (NumberFormatException e) {
+                    return "invalid id '" + fields.get(columns.id).trim() + "'";
+                }
+            }
+            lines[size] = line;
+            ids[size] = id;
+            names[size] = name;
+            emails[size] = email;
+            salaries[size] = salary;
+            size++;
+            return null;
+        }
+
+        void bind(PreparedStatement insert, int row) throws SQLException {
+            int column = 1;
+            if (withId) insert.setInt(column++, ids[row]);
+            insert.setString(column++, names[row]);
+            if (emails[row] == null) insert.setNull(column++, Types.VARCHAR);
+            else insert.setString(column++, emails[row]);
+            insert.setDouble(column, salaries[row]);
+        }
+    }
+
+    /** Splits CSV records; a quoted field may contain commas, "" and line breaks. */
+    private static final class CsvReader {
+        private final BufferedReader in;
+        private final StringBuilder field = new StringBuilder();
+        private long line;
+        private long recordLine;
+
+        CsvReader(BufferedReader in) {
+            this.in = in;
+        }
+
+        /** Line number where the last record read starts. */
+        long recordLine() {
+            return recordLine;
+        }
+
+        boolean next(List<String> fields) throws IOException {
+            String text = in.readLine();
+            if (text == null) return false;
+            if (line == 0 && text.startsWith("\uFEFF")) text = text.substring(1); // byte order mark
+            line++;
+            recordLine = line;
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            int i = 0;
+            while (true) {
+                if (i == text.length()) {
+                    if (!quoted) break;
+                    // a line break inside quotes belongs to the field
+                    text = in.readLine();
+                    if (text == null) throw new IOException("Line " + recordLine + ": unterminated quoted field");
+                    line++;
+                    field.append('\n');
+                    i = 0;
+                    continue;
+                }
+                char c = text.charAt(i++);
+                if (quoted) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < text.length() && text.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return true;
+        }
+    }
+}
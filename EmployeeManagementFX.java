@@ -1,50 +1,106 @@
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
 import javafx.beans.binding.BooleanBinding;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.collections.transformation.SortedList;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
+import java.io.File;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 public class EmployeeManagementFX extends Application {
 
     // --- Database Credentials ---
-    private final String URL = "jdbc:mysql://localhost:3306/student";
+    private final String URL = "jdbc:mysql://localhost:3306/student?rewriteBatchedStatements=true";
     private final String USER = "root";
     private final String PASSWORD = "gautham";
+    private final ConnectionPool pool = ConnectionPool.shared(URL, USER, PASSWORD);
+    // Opened by start(), so a store that cannot be opened is reported rather than failing construction.
+    // The pager is only touched from loadExecutor; the FX thread keeps what the last page load saw of it.
+    private EmployeeStore employees;
+    private EmployeePager pager;
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "employee-load");
+        t.setDaemon(true);
+        return t;
+    });
+    private Task<LoadedPage> loadTask;
+    private boolean morePages = true;
+    private int lastLoadedId = Integer.MIN_VALUE;
 
     // --- UI Components ---
     private TableView<Employee> table;
     private TextField idField, nameField, emailField, salaryField, searchField;
-    private Button addBtn, updateBtn, deleteBtn, clearBtn;
+    private Button addBtn, updateBtn, deleteBtn, clearBtn, importBtn, loadMoreBtn;
     private Label statusLabel;
 
     // --- Data Collections ---
     private ObservableList<Employee> employeeData = FXCollections.observableArrayList();
-    private FilteredList<Employee> filteredData;
-
-    private static final Pattern EMAIL_PATTERN = Pattern.compile(
-            "^[A-Z0-9._%+-]+@[A-Z0-9.-]+\\.[A-Z]{2,6}$", Pattern.CASE_INSENSITIVE
-    );
+    // The table shows allRows, or while the search box picks among the loaded rows, a list of just the matches
+    private SortedList<Employee> allRows;
+    private SortedList<Employee> sortedData;
+    // What the table lists: the whole table by id, or a search and sort done by the database
+    private EmployeeQuery listingQuery = EmployeeQuery.ALL;
+    // The search index and indexedRows (the loaded rows, in order) are only touched from searchExecutor, so
+    // searching never holds up the FX thread
+    private final EmployeeSearchIndex searchIndex = new EmployeeSearchIndex();
+    private List<Employee> indexedRows = new ArrayList<>();
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "employee-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private PauseTransition searchDelay;
+    private Task<SearchResult> searchTask;
+    private EmployeeSearchIndex.Matches lastMatches;
+
+    private static final Pattern EMAIL_PATTERN = EmployeeCsvImporter.EMAIL_PATTERN;
+    private static final Duration SEARCH_DELAY = Duration.millis(150);
 
     public static void main(String[] args) {
         launch(args);
     }
 
+    @Override
+    public void stop() {
+        loadExecutor.shutdownNow();
+        searchExecutor.shutdownNow();
+        if (employees == null) return;
+        try {
+            employees.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void start(Stage primaryStage) {
         primaryStage.setTitle("Employee Management System (User-Generated ID)");
 
+        try {
+            employees = EmployeeStore.configured(pool);
+        } catch (SQLException e) {
+            showAlert(Alert.AlertType.ERROR, "Fatal Database Error", e.getMessage() + "\nThe application will now exit.");
+            System.exit(1);
+        }
+        pager = new EmployeePager(employees);
         createTableIfNotExists();
 
         BorderPane root = new BorderPane();
@@ -67,10 +123,15 @@ public class EmployeeManagementFX extends Application {
         GridPane formPane = createFormPane();
         root.setRight(formPane);
 
-        // Bottom: Status Bar
+        // Bottom: Status Bar, with "Load More" for the next page of employees
         statusLabel = new Label("Ready.");
-        statusLabel.setPadding(new Insets(5, 0, 0, 0));
-        root.setBottom(statusLabel);
+        loadMoreBtn = new Button("Load More");
+        Region statusSpacer = new Region();
+        HBox.setHgrow(statusSpacer, Priority.ALWAYS);
+        HBox statusBar = new HBox(10, statusLabel, statusSpacer, loadMoreBtn);
+        statusBar.setAlignment(Pos.CENTER_LEFT);
+        statusBar.setPadding(new Insets(5, 0, 0, 0));
+        root.setBottom(statusBar);
 
         setupEventHandlers();
         setupBindings(); // MODIFIED: Bindings are now based on field content
@@ -89,18 +150,22 @@ public class EmployeeManagementFX extends Application {
 
         TableColumn<Employee, Integer> idCol = new TableColumn<>("ID");
         idCol.setCellValueFactory(new PropertyValueFactory<>("id"));
+        idCol.setUserData(EmployeeQuery.Sort.ID); // the column to sort on when the database sorts
         idCol.setMaxWidth(1f * Integer.MAX_VALUE * 10);
 
         TableColumn<Employee, String> nameCol = new TableColumn<>("Name");
         nameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
+        nameCol.setUserData(EmployeeQuery.Sort.NAME);
         nameCol.setMaxWidth(1f * Integer.MAX_VALUE * 35);
 
         TableColumn<Employee, String> emailCol = new TableColumn<>("Email");
         emailCol.setCellValueFactory(new PropertyValueFactory<>("email"));
+        emailCol.setUserData(EmployeeQuery.Sort.EMAIL);
         emailCol.setMaxWidth(1f * Integer.MAX_VALUE * 35);
 
         TableColumn<Employee, Double> salaryCol = new TableColumn<>("Salary");
         salaryCol.setCellValueFactory(new PropertyValueFactory<>("salary"));
+        salaryCol.setUserData(EmployeeQuery.Sort.SALARY);
         salaryCol.setStyle("-fx-alignment: CENTER-RIGHT;");
         salaryCol.setMaxWidth(1f * Integer.MAX_VALUE * 20);
 
@@ -144,8 +209,10 @@ public class EmployeeManagementFX extends Application {
         deleteBtn.setMaxWidth(Double.MAX_VALUE);
         clearBtn = new Button("Clear");
         clearBtn.setMaxWidth(Double.MAX_VALUE);
+        importBtn = new Button("Import CSV...");
+        importBtn.setMaxWidth(Double.MAX_VALUE);
 
-        VBox buttonBox = new VBox(10, addBtn, updateBtn, deleteBtn, clearBtn);
+        VBox buttonBox = new VBox(10, addBtn, updateBtn, deleteBtn, clearBtn, importBtn);
         grid.add(buttonBox, 0, 4, 2, 1);
 
         return grid;
@@ -156,6 +223,8 @@ public class EmployeeManagementFX extends Application {
         updateBtn.setOnAction(e -> handleUpdate());
         deleteBtn.setOnAction(e -> handleDelete());
         clearBtn.setOnAction(e -> clearFields());
+        importBtn.setOnAction(e -> handleImport());
+        loadMoreBtn.setOnAction(e -> loadMoreEmployees());
 
         table.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
             if (newSelection != null) {
@@ -180,41 +249,242 @@ public class EmployeeManagementFX extends Application {
         deleteBtn.disableProperty().bind(idFieldEmpty);
     }
 
+    // MODIFIED: Searches go through a trigram index over the loaded rows instead of lower-casing every row per keystroke
     private void setupFiltering() {
-        // (Filtering logic is unchanged)
-        filteredData = new FilteredList<>(employeeData, p -> true);
-        searchField.textProperty().addListener((obs, old, val) -> filteredData.setPredicate(emp -> {
-            if (val == null || val.isEmpty()) return true;
-            String lowerCaseFilter = val.toLowerCase();
-            if (emp.getName().toLowerCase().contains(lowerCaseFilter)) return true;
-            return emp.getEmail() != null && emp.getEmail().toLowerCase().contains(lowerCaseFilter);
-        }));
-        SortedList<Employee> sortedData = new SortedList<>(filteredData);
-        sortedData.comparatorProperty().bind(table.comparatorProperty());
+        allRows = new SortedList<>(employeeData);
+        sortedData = allRows;
         table.setItems(sortedData);
+        // Added after allRows, so it has taken in a change before the search is re-run
+        employeeData.addListener(this::indexChanges);
+        // A keystroke drops the search in flight; a new one starts once typing pauses
+        searchDelay = new PauseTransition(SEARCH_DELAY);
+        searchDelay.setOnFinished(e -> applySearch());
+        searchField.textProperty().addListener((obs, old, val) -> {
+            if (searchTask != null) searchTask.cancel();
+            searchDelay.playFromStart();
+        });
+        // A column sort is done here or by the database, see applySort
+        table.setSortPolicy(t -> {
+            applySort();
+            return true;
+        });
+    }
+
+    // Keeps the search index and indexedRows in step with the loaded rows, on the search thread; a reload (most rows
+    // removed) or a change in several places rebuilds them in one pass. The updates queue ahead of any later search,
+    // so a search sees every change before it.
+    private void indexChanges(ListChangeListener.Change<? extends Employee> change) {
+        List<Integer> removedIds = new ArrayList<>();
+        List<Employee> added = new ArrayList<>();
+        int parts = 0;
+        int from = 0;
+        boolean permuted = false;
+        while (change.next()) {
+            parts++;
+            from = change.getFrom();
+            permuted |= change.wasPermutated();
+            for (Employee emp : change.getRemoved()) removedIds.add(emp.getId());
+            added.addAll(change.getAddedSubList());
+        }
+        int sizeBefore = employeeData.size() - added.size() + removedIds.size();
+        if (parts != 1 || permuted || removedIds.size() > sizeBefore / 2) {
+            List<Employee> rows = new ArrayList<>(employeeData);
+            searchExecutor.execute(() -> {
+                indexedRows = rows;
+                searchIndex.clear();
+                for (Employee emp : rows) searchIndex.add(emp.getId(), emp.getName(), emp.getEmail());
+            });
+        } else {
+            int at = from;
+            searchExecutor.execute(() -> {
+                indexedRows.subList(at, at + removedIds.size()).clear();
+                indexedRows.addAll(at, added);
+                for (int id : removedIds) searchIndex.remove(id);
+                for (Employee emp : added) searchIndex.add(emp.getId(), emp.getName(), emp.getEmail());
+            });
+        }
+        if (!searchField.getText().isEmpty()) applySearch();
+    }
+
+    // Searches on the search thread, which also picks out the matching rows, and hands the table the result in one
+    // list swap, so the FX thread never walks the loaded rows. The last result is passed along, so a query that
+    // extends it only re-checks those rows.
+    private void applySearch() {
+        searchDelay.stop();
+        if (searchTask != null) searchTask.cancel();
+        if (searchInDatabase()) {
+            searchTask = null;
+            listInDatabase();
+            return;
+        }
+        String query = searchField.getText();
+        if (query == null || query.isEmpty()) {
+            searchTask = null;
+            lastMatches = null;
+            showRows(allRows);
+            return;
+        }
+        EmployeeSearchIndex.Matches previous = lastMatches;
+        Task<SearchResult> task = new Task<>() {
+            @Override
+            protected SearchResult call() {
+                EmployeeSearchIndex.Matches matches = searchIndex.search(query, previous, this::isCancelled);
+                if (matches == null || isCancelled()) return null; // superseded, never applied
+                List<Employee> rows = new ArrayList<>(matches.size());
+                for (Employee emp : indexedRows) {
+                    if (matches.contains(emp.getId())) rows.add(emp);
+                }
+                return new SearchResult(matches, rows);
+            }
+        };
+        task.setOnSucceeded(e -> {
+            // a search that finished just before it was cancelled still reports success; only the newest applies
+            if (task != searchTask) return;
+            SearchResult result = task.getValue();
+            lastMatches = result.matches;
+            showRows(new SortedList<>(FXCollections.observableList(result.rows)));
+        });
+        task.setOnFailed(e -> task.getException().printStackTrace());
+        searchTask = task;
+        searchExecutor.execute(task);
+    }
+
+    // Swaps the list the table shows, carrying over the current sort
+    private void showRows(SortedList<Employee> rows) {
+        if (rows == sortedData) return;
+        rows.setComparator(sortedData.getComparator());
+        sortedData = rows;
+        table.setItems(rows);
+    }
+
+    private void applySort() {
+        if (searchInDatabase()) listInDatabase();
+        else sortedData.setComparator(table.getComparator());
+    }
+
+    // Searching and sorting the loaded rows is only right while they are the whole table. Past one page, or once the
+    // database has searched or sorted, both go to the database: the search box as the same name or email substring
+    // match, the first sort column, and keyset pages in that order.
+    private boolean searchInDatabase() {
+        return !listingQuery.isPlainListing() || morePages;
+    }
+
+    // Shows the rows in the database's order and reloads them when the search or sort asked for has changed.
+    // The table may ask for a sort while a change is under way, so the lists are only touched when they differ.
+    private void listInDatabase() {
+        if (sortedData.getComparator() != null) sortedData.setComparator(null);
+        showRows(allRows);
+        lastMatches = null;
+        EmployeeQuery.Sort sort = EmployeeQuery.Sort.ID;
+        boolean ascending = true;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<Employee, ?> column = table.getSortOrder().get(0);
+            sort = (EmployeeQuery.Sort) column.getUserData();
+            ascending = column.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        EmployeeQuery query = new EmployeeQuery(searchField.getText(), sort, ascending);
+        if (!query.equals(listingQuery)) {
+            listingQuery = query;
+            loadEmployees();
+        }
+    }
+
+    // After a write, patches the loaded rows (and with them the search index) instead of reloading from the first page.
+    // row is null for a delete; a new row past the loaded pages is left for "Load More".
+    private void patchLoaded(int id, Employee row) {
+        if (!listingQuery.isPlainListing()) {
+            loadEmployees(); // where the row now goes in a database search or sort is for the database to say
+            return;
+        }
+        for (int i = 0; i < employeeData.size(); i++) {
+            int loadedId = employeeData.get(i).getId();
+            if (loadedId == id) {
+                if (row == null) employeeData.remove(i);
+                else employeeData.set(i, row);
+                return;
+            }
+            if (loadedId > id) {
+                if (row != null) employeeData.add(i, row);
+                return;
+            }
+        }
+        // pager.covers(id), as of the last page load
+        if (row != null && (!morePages || id <= lastLoadedId)) employeeData.add(row);
     }
 
     // --- Database and Logic Methods ---
 
+    // MODIFIED: Loads the first page of listingQuery only (keyset pagination); "Load More" appends the next one
     private void loadEmployees() {
-        // (Unchanged)
-        employeeData.clear();
-        String sql = "SELECT * FROM employees ORDER BY id";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                employeeData.add(new Employee(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getDouble("salary")
-                ));
+        loadPage(listingQuery);
+    }
+
+    private void loadMoreEmployees() {
+        if (loadTask == null) loadPage(null);
+    }
+
+    // Reads a page on loadExecutor: the first of query, or with query null the next of the current listing. A new
+    // listing cancels the load in flight, so typing a search or clicking through sorts never waits on the database.
+    private void loadPage(EmployeeQuery query) {
+        if (loadTask != null) loadTask.cancel();
+        Task<LoadedPage> task = new Task<>() {
+            @Override
+            protected LoadedPage call() throws SQLException {
+                if (query != null) pager.setQuery(query);
+                List<Employee> rows = new ArrayList<>(pager.getPageSize());
+                pager.nextPage((id, name, email, salary) -> rows.add(new Employee(id, name, email, salary)));
+                return new LoadedPage(rows, pager.hasMore());
             }
-            statusLabel.setText("Loaded " + employeeData.size() + " employees.");
-        } catch (SQLException e) {
-            e.printStackTrace();
+        };
+        task.setOnSucceeded(e -> {
+            // a load that finished just before it was cancelled still reports success; only the newest applies
+            if (task != loadTask) return;
+            loadTask = null;
+            LoadedPage page = task.getValue();
+            if (query != null) {
+                employeeData.setAll(page.rows);
+                lastLoadedId = Integer.MIN_VALUE;
+            } else {
+                employeeData.addAll(page.rows);
+            }
+            if (!page.rows.isEmpty()) lastLoadedId = page.rows.get(page.rows.size() - 1).getId();
+            morePages = page.more;
+            loadMoreBtn.setDisable(!morePages);
+            statusLabel.setText("Loaded " + employeeData.size() + " employees" + (morePages ? " (more available)." : "."));
+        });
+        task.setOnFailed(e -> {
+            if (task != loadTask) return;
+            loadTask = null;
+            loadMoreBtn.setDisable(!morePages);
+            statusLabel.setText("Loading failed.");
+            task.getException().printStackTrace();
             showAlert(Alert.AlertType.ERROR, "Database Error", "Could not load employees from the database.");
+        });
+        loadTask = task;
+        loadMoreBtn.setDisable(true);
+        statusLabel.setText("Loading employees...");
+        loadExecutor.execute(task);
+    }
+
+    // A page read off the FX thread, and whether the pager expects more after it
+    private static final class LoadedPage {
+        final List<Employee> rows;
+        final boolean more;
+
+        LoadedPage(List<Employee> rows, boolean more) {
+            this.rows = rows;
+            this.more = more;
+        }
+    }
+
+    // A search's matching ids, and the loaded rows they pick out in table order
+    private static final class SearchResult {
+        final EmployeeSearchIndex.Matches matches;
+        final List<Employee> rows;
+
+        SearchResult(EmployeeSearchIndex.Matches matches, List<Employee> rows) {
+            this.matches = matches;
+            this.rows = rows;
         }
     }
 
@@ -223,7 +493,9 @@ public class EmployeeManagementFX extends Application {
         if (!validateInput(true)) return; // Pass true to indicate it's an "add" operation
 
         int id = Integer.parseInt(idField.getText().trim());
+        String name = nameField.getText().trim();
         String email = emailField.getText().trim();
+        double salary = Double.parseDouble(salaryField.getText().trim());
 
         // NEW: Check if ID already exists before trying to insert
         if (checkIdExists(id)) {
@@ -231,18 +503,11 @@ public class EmployeeManagementFX extends Application {
             return;
         }
 
-        String sql = "INSERT INTO employees (id, name, email, salary) VALUES (?, ?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, id); // Set the user-provided ID
-            pstmt.setString(2, nameField.getText().trim());
-            pstmt.setString(3, email.isEmpty() ? null : email);
-            pstmt.setDouble(4, Double.parseDouble(salaryField.getText().trim()));
-            pstmt.executeUpdate();
+        try {
+            employees.insert(id, name, email.isEmpty() ? null : email, salary);
 
             showAlert(Alert.AlertType.INFORMATION, "Success", "Employee added successfully.");
-            loadEmployees();
+            patchLoaded(id, new Employee(id, name, email.isEmpty() ? null : email, salary));
             clearFields();
         } catch (SQLException e) {
             // This can still happen in a multi-user environment (race condition)
@@ -277,14 +542,10 @@ public class EmployeeManagementFX extends Application {
 
         Optional<ButtonType> result = confirmAlert.showAndWait();
         if (result.isPresent() && result.get() == ButtonType.OK) {
-            String sql = "DELETE FROM employees WHERE id = ?";
-            try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setInt(1, id);
-                int rowsAffected = pstmt.executeUpdate();
-                if (rowsAffected > 0) {
+            try {
+                if (employees.delete(id)) {
                      showAlert(Alert.AlertType.INFORMATION, "Success", "Employee deleted successfully.");
-                     loadEmployees();
+                     patchLoaded(id, null);
                      clearFields();
                 } else {
                      showAlert(Alert.AlertType.WARNING, "Not Found", "No employee with ID " + id + " was found.");
@@ -300,22 +561,16 @@ public class EmployeeManagementFX extends Application {
     private void handleUpdate() {
         if (!validateInput(false)) return; // Pass false for "update" validation
 
+        String name = nameField.getText().trim();
         String email = emailField.getText().trim();
+        double salary = Double.parseDouble(salaryField.getText().trim());
         int id = Integer.parseInt(idField.getText().trim());
 
-        String sql = "UPDATE employees SET name = ?, email = ?, salary = ? WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, nameField.getText().trim());
-            pstmt.setString(2, email.isEmpty() ? null : email);
-            pstmt.setDouble(3, Double.parseDouble(salaryField.getText().trim()));
-            pstmt.setInt(4, id);
-
-            int rowsAffected = pstmt.executeUpdate();
-            if (rowsAffected > 0) {
+        try {
+            boolean updated = employees.update(id, name, email.isEmpty() ? null : email, salary);
+            if (updated) {
                 showAlert(Alert.AlertType.INFORMATION, "Success", "Employee updated successfully.");
-                loadEmployees();
+                patchLoaded(id, new Employee(id, name, email.isEmpty() ? null : email, salary));
                 clearFields();
             } else {
                 showAlert(Alert.AlertType.WARNING, "Not Found", "No employee with ID " + id + " was found to update.");
@@ -326,6 +581,55 @@ public class EmployeeManagementFX extends Application {
         }
     }
 
+    // NEW: Bulk import from a CSV file, run off the FX thread so the window stays responsive
+    private void handleImport() {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Import Employees from CSV");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = chooser.showOpenDialog(table.getScene().getWindow());
+        if (file == null) return;
+
+        Task<EmployeeCsvImporter.Report> task = new Task<>() {
+            @Override
+            protected EmployeeCsvImporter.Report call() throws Exception {
+                updateMessage("Importing " + file.getName() + "...");
+                try {
+                    EmployeeCsvImporter importer =
+                            EmployeeCsvImporter.forStore(employees, pool, EmployeeCsvImporter.DEFAULT_CHUNK_SIZE);
+                    return importer.importFile(file.toPath(),
+                            rows -> updateMessage(String.format("Importing %s: %,d rows read...", file.getName(), rows)));
+                } finally {
+                    employees.invalidateAll(); // a JDBC import writes around the cache
+                }
+            }
+        };
+        importBtn.setDisable(true);
+        statusLabel.textProperty().bind(task.messageProperty());
+        task.setOnSucceeded(e -> {
+            statusLabel.textProperty().unbind();
+            importBtn.setDisable(false);
+            showImportReport(task.getValue());
+            loadEmployees();
+        });
+        task.setOnFailed(e -> {
+            statusLabel.textProperty().unbind();
+            importBtn.setDisable(false);
+            task.getException().printStackTrace();
+            showAlert(Alert.AlertType.ERROR, "Import Error", "Import failed: " + task.getException().getMessage());
+        });
+        Thread worker = new Thread(task, "csv-import");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void showImportReport(EmployeeCsvImporter.Report report) {
+        StringBuilder text = new StringBuilder(report.toString());
+        report.getRejections().stream().limit(20).forEach(rejection -> text.append('\n').append(rejection));
+        if (report.getRejected() > 20) text.append("\n...");
+        showAlert(report.getRejected() == 0 ? Alert.AlertType.INFORMATION : Alert.AlertType.WARNING,
+                "Import Finished", text.toString());
+    }
+
     // --- Utility Methods ---
 
     // MODIFIED: Validation now checks the ID field
@@ -367,14 +671,8 @@ public class EmployeeManagementFX extends Application {
 
     // NEW: Helper method to check if an ID exists in the database
     private boolean checkIdExists(int id) {
-        String sql = "SELECT COUNT(*) FROM employees WHERE id = ?";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setInt(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
+        try {
+            return employees.exists(id);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -412,14 +710,8 @@ public class EmployeeManagementFX extends Application {
 
     // MODIFIED: createTable now defines ID as a non-auto-incrementing PRIMARY KEY
     private void createTableIfNotExists() {
-        String sql = "CREATE TABLE IF NOT EXISTS employees (" +
-                "id INT PRIMARY KEY, " +
-                "name VARCHAR(100) NOT NULL, " +
-                "email VARCHAR(100) UNIQUE, " +
-                "salary DECIMAL(10, 2) NOT NULL)";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             Statement stmt = conn.createStatement()) {
-            stmt.execute(sql);
+        try {
+            employees.createTableIfNotExists(false);
         } catch (SQLException e) {
             e.printStackTrace();
             showAlert(Alert.AlertType.ERROR, "Fatal Database Error", "Could not create the 'employees' table. The application will now exit.");
@@ -446,4 +738,4 @@ public class EmployeeManagementFX extends Application {
         public String getEmail() { return email; }
         public double getSalary() { return salary; }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+import java.sql.SQLException;
+
+/**
+ * Walks the {@code employees} table in id order, one page at a time, with
+ * keyset pagination: each page is {@code WHERE id > <last id seen> ORDER BY
+ * id LIMIT <page size>}, which the primary key index answers directly no
+ * matter how deep into the table the page is (unlike OFFSET). The fetch
+ * size is set to the page size, so the driver holds at most one page of
+ * rows, and the connection goes back to the pool between pages. The
+ * pages come from {@link EmployeeStore#readPage}, so the same pager walks
+ * MySQL, the cache in front of it, or a local log file.
+ *
+ * Given an {@link EmployeeQuery} (a search term, another sort column or
+ * direction), the pages come from {@link EmployeeStore#search} instead,
+ * continuing after the last row read in that query's order.
+ *
+ * A pager remembers where it stopped; {@link #reset} starts over. Rows are
+ * handed to a callback instead of being collected, so a caller that prints
+ * or aggregates them keeps memory flat however large the table is.
+ *
+ * Not thread-safe; use one pager per listing.
+ */
+public final class EmployeePager {
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    /** Receives one row. */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(int id, String name, String email, double salary);
+    }
+
+    private final EmployeeStore source;
+    private final int pageSize;
+    private EmployeeQuery query = EmployeeQuery.ALL;
+    private boolean started;
+    private int lastId;
+    private String lastName;
+    private String lastEmail;
+    private double lastSalary;
+    private boolean exhausted;
+    private long rowsRead;
+
+    public EmployeePager(EmployeeStore source) {
+        this(source, DEFAULT_PAGE_SIZE);
+    }
+
+    public EmployeePager(EmployeeStore source, int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        this.source = source;
+        this.pageSize = pageSize;
+    }
+
+    /** False once a page came back short: the end of the table was reached. */
+    public boolean hasMore() {
+        return !exhausted;
+    }
+
+    /**
+     * Whether a row with this id falls in the part of the table already
+     * read, i.e. would not come back in a later page; used to patch a loaded
+     * listing after an insert instead of reloading it.
+     */
+    public boolean covers(int id) {
+        return query.isPlainListing() && (exhausted || (started && id <= lastId));
+    }
+
+    public EmployeeQuery getQuery() {
+        return query;
+    }
+
+    /** Lists {@code query} from its first page on. */
+    public void setQuery(EmployeeQuery query) {
+        this.query = query.fromStart();
+        reset();
+    }
+
+    /** Rows read since the last {@link #reset}. */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void reset() {
+        started = false;
+        exhausted = false;
+        rowsRead = 0;
+    }
+
+    /** Reads the next page into {@code handler}; returns the number of rows in it. */
+    public int nextPage(RowHandler handler) throws SQLException {
+        if (exhausted) return 0;
+        RowHandler tracking = (id, name, email, salary) -> {
+            handler.row(id, name, email, salary);
+            lastId = id;
+            lastName = name;
+            lastEmail = email;
+            lastSalary = salary;
+            started = true;
+        };
+        int rows = query.isPlainListing()
+                ? source.readPage(!started, lastId, pageSize, tracking)
+                : source.search(started ? query.after(lastId, lastName, lastEmail, lastSalary) : query,
+                        pageSize, tracking);
+        rowsRead += rows;
+        if (rows < pageSize) exhausted = true;
+        return rows;
+    }
+
+    /** Reads every remaining page into {@code handler}; returns the number of rows read. */
+    public long forEachRemaining(RowHandler handler) throws SQLException {
+        long before = rowsRead;
+        while (hasMore()) {
+            nextPage(handler);
+        }
+        return rowsRead - before;
+    }
+}
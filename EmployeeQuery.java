@@ -0,0 +1,205 @@
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * One listing of employees as a front end asks for it: an optional search
+ * term, a sort column and direction, and where the previous page ended.
+ * {@link EmployeeRepository} turns it into SQL; other stores filter and sort
+ * in memory ({@link #scan}).
+ *
+ * A search term matches the employees whose name or email contains it,
+ * ignoring case, as the FX windows' search over the rows they have loaded
+ * does. Rows with equal sort values are ordered by id, so every row has a
+ * unique position and a page starts right after the last row of the one
+ * before (keyset paging, as in {@link EmployeePager}), however deep it is.
+ * NULL emails sort first when ascending and last when descending, as in
+ * MySQL; the order of names and emails ignores case.
+ *
+ * Immutable.
+ */
+public final class EmployeeQuery {
+    public enum Sort { ID, NAME, EMAIL, SALARY }
+
+    /** Every employee in id order: the plain listing, {@link EmployeeStore#readPage}. */
+    public static final EmployeeQuery ALL = new EmployeeQuery(null, Sort.ID, true);
+
+    private final String search;
+    private final Sort sort;
+    private final boolean ascending;
+    /** Keyset position: the id and sort value (String, Double or null) of the last row already read. */
+    private final boolean continued;
+    private final int afterId;
+    private final Object afterValue;
+
+    /** @param search part of a name or email; null or blank for every employee */
+    public EmployeeQuery(String search, Sort sort, boolean ascending) {
+        this(search == null || search.isBlank() ? null : search.trim(), sort, ascending, false, 0, null);
+    }
+
+    private EmployeeQuery(String search, Sort sort, boolean ascending, boolean continued, int afterId,
+                          Object afterValue) {
+        this.search = search;
+        this.sort = Objects.requireNonNull(sort, "sort");
+        this.ascending = ascending;
+        this.continued = continued;
+        this.afterId = afterId;
+        this.afterValue = afterValue;
+    }
+
+    /** This query continuing after the given row, the last one of the previous page. */
+    public EmployeeQuery after(int id, String name, String email, double salary) {
+        return new EmployeeQuery(search, sort, ascending, true, id, sortValue(name, email, salary));
+    }
+
+    /** This query from its first page. */
+    public EmployeeQuery fromStart() {
+        return continued ? new EmployeeQuery(search, sort, ascending, false, 0, null) : this;
+    }
+
+    /** No search and ascending id order, which {@link EmployeeStore#readPage} already serves. */
+    public boolean isPlainListing() {
+        return search == null && sort == Sort.ID && ascending;
+    }
+
+    /** The search term, trimmed; null for every employee. */
+    public String getSearch() {
+        return search;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    /** Whether this query continues after a row (see {@link #after}) rather than from the start. */
+    public boolean isContinued() {
+        return continued;
+    }
+
+    public int getAfterId() {
+        return afterId;
+    }
+
+    /** The sort column's value in the row continued after: a String, a Double, or null (also for {@link Sort#ID}). */
+    public Object getAfterValue() {
+        return afterValue;
+    }
+
+    public boolean matches(String name, String email) {
+        return search == null || contains(name) || contains(email);
+    }
+
+    private boolean contains(String value) {
+        if (value == null) return false;
+        for (int i = 0; i + search.length() <= value.length(); i++) {
+            if (value.regionMatches(true, i, search, 0, search.length())) return true;
+        }
+        return false;
+    }
+
+    private Object sortValue(String name, String email, double salary) {
+        switch (sort) {
+            case NAME: return name;
+            case EMAIL: return email;
+            case SALARY: return salary;
+            default: return null;
+        }
+    }
+
+    /** Negative if the first row comes before the second in this query's order. */
+    private int compare(int id1, Object value1, int id2, Object value2) {
+        int c = 0;
+        if (sort != Sort.ID) {
+            if (value1 == null || value2 == null) {
+                c = value1 == value2 ? 0 : value1 == null ? -1 : 1;
+            } else if (value1 instanceof String) {
+                c = String.CASE_INSENSITIVE_ORDER.compare((String) value1, (String) value2);
+            } else {
+                c = Double.compare((Double) value1, (Double) value2);
+            }
+        }
+        if (c == 0) c = Integer.compare(id1, id2);
+        return ascending ? c : -c;
+    }
+
+    /**
+     * Answers this query from a full pass over {@code store}'s plain
+     * listing, keeping only the first {@code limit} matching rows past the
+     * keyset position: the fallback for stores without a query language.
+     *
+     * @return the number of rows handed to {@code handler}
+     */
+    int scan(EmployeeStore store, int limit, EmployeePager.RowHandler handler) throws SQLException {
+        if (limit < 1) return 0;
+        Comparator<Row> order = (a, b) -> compare(a.id, a.value, b.id, b.value);
+        // the last row kept is at the head, to be dropped when a row that sorts before it turns up
+        PriorityQueue<Row> kept = new PriorityQueue<>(limit, order.reversed());
+        int[] lastId = new int[1];
+        int pageSize = EmployeePager.DEFAULT_PAGE_SIZE;
+        boolean first = true;
+        int read;
+        do {
+            read = store.readPage(first, lastId[0], pageSize, (id, name, email, salary) -> {
+                lastId[0] = id;
+                if (!matches(name, email)) return;
+                Row row = new Row(id, name, email, salary, sortValue(name, email, salary));
+                if (continued && compare(id, row.value, afterId, afterValue) <= 0) return;
+                if (kept.size() < limit) {
+                    kept.add(row);
+                } else if (order.compare(row, kept.peek()) < 0) {
+                    kept.poll();
+                    kept.add(row);
+                }
+            });
+            first = false;
+        } while (read == pageSize);
+
+        Row[] rows = kept.toArray(new Row[0]);
+        Arrays.sort(rows, order);
+        for (Row row : rows) handler.row(row.id, row.name, row.email, row.salary);
+        return rows.length;
+    }
+
+    private static final class Row {
+        final int id;
+        final String name;
+        final String email;
+        final double salary;
+        final Object value;
+
+        Row(int id, String name, String email, double salary, Object value) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.salary = salary;
+            this.value = value;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EmployeeQuery)) return false;
+        EmployeeQuery other = (EmployeeQuery) o;
+        return sort == other.sort && ascending == other.ascending && continued == other.continued
+                && afterId == other.afterId && Objects.equals(search, other.search)
+                && Objects.equals(afterValue, other.afterValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(search, sort, ascending, continued, afterId, afterValue);
+    }
+
+    @Override
+    public String toString() {
+        return (search == null ? "all" : "containing '" + search + "'") + " by " + sort.name().toLowerCase()
+                + (ascending ? " asc" : " desc") + (continued ? " after id " + afterId : "");
+    }
+}
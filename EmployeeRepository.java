@@ -0,0 +1,498 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * The MySQL {@link EmployeeStore}: the SQL for the {@code employees} table,
+ * in one place.
+ *
+ * Every call borrows a connection from the pool and prepares its statement
+ * with {@code prepareStatement(sql)}, which the pool answers from that
+ * connection's statement cache, so each query is parsed once per
+ * connection rather than once per call. Rows are read by column position
+ * and handed to a callback or mapper as plain values; nothing looks up a
+ * column by name.
+ *
+ * Searches and sorts ({@link #search}) are built into SQL per
+ * {@link EmployeeQuery} and backed by indexes on name, email and salary;
+ * their plans can be logged, see {@link #setPlanLog}.
+ *
+ * Each query's executions, failures and latency (borrow to last row read)
+ * are counted; see {@link #getStatistics} and {@link #statistics}.
+ *
+ * Instances are thread-safe.
+ */
+public final class EmployeeRepository implements EmployeeStore {
+    /** The statements this repository runs; statistics are kept per query. */
+    public enum Query {
+        CREATE_TABLE(null),
+        INSERT("INSERT INTO employees (name, email, salary) VALUES (?, ?, ?)"),
+        INSERT_WITH_ID("INSERT INTO employees (id, name, email, salary) VALUES (?, ?, ?, ?)"),
+        UPDATE("UPDATE employees SET name = ?, email = ?, salary = ? WHERE id = ?"),
+        UPDATE_SALARY("UPDATE employees SET salary = ? WHERE id = ?"),
+        DELETE("DELETE FROM employees WHERE id = ?"),
+        EXISTS("SELECT COUNT(*) FROM employees WHERE id = ?"),
+        FIND_BY_ID("SELECT id, name, email, salary FROM employees WHERE id = ?"),
+        FIRST_PAGE("SELECT id, name, email, salary FROM employees ORDER BY id LIMIT ?"),
+        NEXT_PAGE("SELECT id, name, email, salary FROM employees WHERE id > ? ORDER BY id LIMIT ?"),
+        /** Built per {@link EmployeeQuery}, see {@link #search}. */
+        SEARCH(null),
+        EXPLAIN(null);
+
+        final String sql;
+
+        Query(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    /** Schema for the command-line tools: generated ids, optional email and salary. */
+    private static final String CREATE_WITH_GENERATED_ID = "CREATE TABLE IF NOT EXISTS employees ("
+            + "id INT AUTO_INCREMENT PRIMARY KEY, "
+            + "name VARCHAR(100) NOT NULL, "
+            + "email VARCHAR(100), "
+            + "salary DECIMAL(10, 2))";
+    /** Schema for the FX windows: ids typed in by the user, unique emails. */
+    private static final String CREATE_WITH_GIVEN_ID = "CREATE TABLE IF NOT EXISTS employees ("
+            + "id INT PRIMARY KEY, "
+            + "name VARCHAR(100) NOT NULL, "
+            + "email VARCHAR(100) UNIQUE, "
+            + "salary DECIMAL(10, 2) NOT NULL)";
+    /**
+     * Indexed for {@link #search}: ORDER BY the column, id reads that index
+     * in order (InnoDB appends the primary key to each secondary index), so a
+     * page stops after LIMIT matching rows instead of sorting the table.
+     */
+    private static final String[] INDEXED_COLUMNS = {"name", "email", "salary"};
+    private static final String SELECT_COLUMNS = "SELECT id, name, email, salary FROM employees";
+
+    private final ConnectionPool pool;
+    private final Map<Query, QueryStatistics> statistics = new EnumMap<>(Query.class);
+    private volatile Consumer<String> planLog;
+
+    public EmployeeRepository(ConnectionPool pool) {
+        this.pool = pool;
+        for (Query query : Query.values()) statistics.put(query, new QueryStatistics());
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Where the EXPLAIN output of each search goes, e.g. {@code System.err::println}.
+     * Off (null) by default, as it costs a second round trip per search;
+     * {@link EmployeeStore#configured} sets it from {@value EmployeeStore#PLAN_LOG_PROPERTY}.
+     */
+    public void setPlanLog(Consumer<String> planLog) {
+        this.planLog = planLog;
+    }
+
+    /**
+     * A plan log for {@link #setPlanLog} from a setting: {@code stderr}, a
+     * file to append to, or null or blank for none.
+     */
+    public static Consumer<String> planLogTo(String target) {
+        if (target == null || target.isBlank()) return null;
+        if (target.trim().equalsIgnoreCase("stderr")) return System.err::println;
+        Path file = Path.of(target.trim());
+        // one write per plan, appended, so plans from concurrent searches do not interleave
+        return plan -> {
+            try {
+                Files.writeString(file, plan + System.lineSeparator(), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Could not write plan log " + file + ": " + e.getMessage());
+            }
+        };
+    }
+
+    /**
+     * Also adds the {@link #INDEXED_COLUMNS} indexes an existing table
+     * lacks; a column that already leads an index (the FX schema's UNIQUE
+     * email) does not get a second one.
+     */
+    @Override
+    public void createTableIfNotExists(boolean generatedIds) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute(generatedIds ? CREATE_WITH_GENERATED_ID : CREATE_WITH_GIVEN_ID);
+            Set<String> leading = new HashSet<>();
+            // getIndexInfo columns 8 and 9: ORDINAL_POSITION, COLUMN_NAME
+            try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, "employees", false, true)) {
+                while (rs.next()) {
+                    if (rs.getInt(8) == 1 && rs.getString(9) != null) leading.add(rs.getString(9).toLowerCase(Locale.ROOT));
+                }
+            }
+            for (String column : INDEXED_COLUMNS) {
+                if (!leading.contains(column)) {
+                    stmt.execute("CREATE INDEX idx_employees_" + column + " ON employees (" + column + ")");
+                }
+            }
+            ok = true;
+        } finally {
+            record(Query.CREATE_TABLE, start, ok);
+        }
+    }
+
+    @Override
+    public void insert(String name, String email, double salary) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.INSERT.sql)) {
+            pstmt.setString(1, name);
+            pstmt.setString(2, email);
+            pstmt.setDouble(3, salary);
+            pstmt.executeUpdate();
+            ok = true;
+        } finally {
+            record(Query.INSERT, start, ok);
+        }
+    }
+
+    @Override
+    public void insert(int id, String name, String email, double salary) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.INSERT_WITH_ID.sql)) {
+            pstmt.setInt(1, id);
+            pstmt.setString(2, name);
+            pstmt.setString(3, email);
+            pstmt.setDouble(4, salary);
+            pstmt.executeUpdate();
+            ok = true;
+        } finally {
+            record(Query.INSERT_WITH_ID, start, ok);
+        }
+    }
+
+    @Override
+    public boolean update(int id, String name, String email, double salary) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.UPDATE.sql)) {
+            pstmt.setString(1, name);
+            pstmt.setString(2, email);
+            pstmt.setDouble(3, salary);
+            pstmt.setInt(4, id);
+            int rows = pstmt.executeUpdate();
+            ok = true;
+            return rows > 0;
+        } finally {
+            record(Query.UPDATE, start, ok);
+        }
+    }
+
+    @Override
+    public boolean updateSalary(int id, double salary) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.UPDATE_SALARY.sql)) {
+            pstmt.setDouble(1, salary);
+            pstmt.setInt(2, id);
+            int rows = pstmt.executeUpdate();
+            ok = true;
+            return rows > 0;
+        } finally {
+            record(Query.UPDATE_SALARY, start, ok);
+        }
+    }
+
+    @Override
+    public boolean delete(int id) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.DELETE.sql)) {
+            pstmt.setInt(1, id);
+            int rows = pstmt.executeUpdate();
+            ok = true;
+            return rows > 0;
+        } finally {
+            record(Query.DELETE, start, ok);
+        }
+    }
+
+    @Override
+    public boolean exists(int id) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.EXISTS.sql)) {
+            pstmt.setInt(1, id);
+            boolean found;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                found = rs.next() && rs.getInt(1) > 0;
+            }
+            ok = true;
+            return found;
+        } finally {
+            record(Query.EXISTS, start, ok);
+        }
+    }
+
+    @Override
+    public <T> T findById(int id, Mapper<T> mapper) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(Query.FIND_BY_ID.sql)) {
+            pstmt.setInt(1, id);
+            T found = null;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) found = mapper.map(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDouble(4));
+            }
+            ok = true;
+            return found;
+        } finally {
+            record(Query.FIND_BY_ID, start, ok);
+        }
+    }
+
+    /** The driver fetches {@code limit} rows per round trip. */
+    @Override
+    public int readPage(boolean first, int afterId, int limit, EmployeePager.RowHandler handler)
+            throws SQLException {
+        Query query = first ? Query.FIRST_PAGE : Query.NEXT_PAGE;
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query.sql)) {
+            pstmt.setFetchSize(limit);
+            int index = 1;
+            if (!first) pstmt.setInt(index++, afterId);
+            pstmt.setInt(index, limit);
+            int rows = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.row(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDouble(4));
+                    rows++;
+                }
+            }
+            ok = true;
+            return rows;
+        } finally {
+            record(query, start, ok);
+        }
+    }
+
+    /**
+     * One SELECT per query: the search term becomes {@code name LIKE
+     * '%term%' OR email LIKE '%term%'}, the sort {@code ORDER BY <column>, id},
+     * and a continued query adds the keyset condition on both. There are a
+     * few dozen distinct statements, so they stay in the statement cache.
+     *
+     * A substring cannot use an index, so a search reads the sort column's
+     * index in order and tests each row until LIMIT of them match: a page of
+     * a common term costs a page or so of rows, a rare or absent one a scan
+     * of the table. The plan log ({@link #setPlanLog}) shows which.
+     *
+     * With a plan log set, the first page of each search is then run through
+     * EXPLAIN for it. Salaries are taken to be NOT NULL, as in the FX schema: a
+     * NULL salary reads as 0, so a salary-sorted page continued after one
+     * would skip the other NULLs.
+     */
+    @Override
+    public int search(EmployeeQuery query, int limit, EmployeePager.RowHandler handler) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        String sql = searchSql(query, params);
+        params.add(limit);
+        long start = System.nanoTime();
+        boolean ok = false;
+        int rows = 0;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setFetchSize(limit);
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    handler.row(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getDouble(4));
+                    rows++;
+                }
+            }
+            ok = true;
+        } finally {
+            record(Query.SEARCH, start, ok);
+        }
+        if (!query.isContinued()) explain(sql, params);
+        return rows;
+    }
+
+    private static String searchSql(EmployeeQuery query, List<Object> params) {
+        StringBuilder sql = new StringBuilder(SELECT_COLUMNS);
+        String column = column(query.getSort());
+        String clause = " WHERE ";
+        if (query.getSearch() != null) {
+            String pattern = "%" + escapeLike(query.getSearch()) + "%";
+            sql.append(clause).append("(name LIKE ? ESCAPE '!' OR email LIKE ? ESCAPE '!')");
+            params.add(pattern);
+            params.add(pattern);
+            clause = " AND ";
+        }
+        if (query.isContinued()) sql.append(clause).append(keyset(query, column, params));
+        String direction = query.isAscending() ? " ASC" : " DESC";
+        sql.append(" ORDER BY ");
+        if (query.getSort() != EmployeeQuery.Sort.ID) sql.append(column).append(direction).append(", ");
+        return sql.append("id").append(direction).append(" LIMIT ?").toString();
+    }
+
+    /** The rows past the last one read: past it in the sort column, or level with it and past it in id. */
+    private static String keyset(EmployeeQuery query, String column, List<Object> params) {
+        String past = query.isAscending() ? " > ?" : " < ?";
+        Object value = query.getAfterValue();
+        if (query.getSort() == EmployeeQuery.Sort.ID) {
+            params.add(query.getAfterId());
+            return "id" + past;
+        }
+        // NULLs sort first ascending and last descending
+        if (value == null) {
+            params.add(query.getAfterId());
+            return query.isAscending()
+                    ? "(" + column + " IS NULL AND id > ? OR " + column + " IS NOT NULL)"
+                    : "(" + column + " IS NULL AND id < ?)";
+        }
+        params.add(value);
+        params.add(value);
+        params.add(query.getAfterId());
+        return "(" + column + past + " OR " + column + " = ? AND id" + past
+                + (query.isAscending() ? ")" : " OR " + column + " IS NULL)");
+    }
+
+    private static String column(EmployeeQuery.Sort sort) {
+        switch (sort) {
+            case NAME: return "name";
+            case EMAIL: return "email";
+            case SALARY: return "salary";
+            default: return "id";
+        }
+    }
+
+    /** A search term with LIKE's wildcards (and the escape character) taken literally. */
+    private static String escapeLike(String term) {
+        return term.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private static void bind(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            pstmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    /** Writes the plan of a search to the plan log; a failure is logged too, never thrown. */
+    private void explain(String sql, List<Object> params) {
+        Consumer<String> log = planLog;
+        if (log == null) return;
+        StringBuilder plan = new StringBuilder("EXPLAIN ").append(sql).append(' ').append(params);
+        long start = System.nanoTime();
+        boolean ok = false;
+        // with the result set type and concurrency given, the pool does not keep the statement in its cache
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement("EXPLAIN " + sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    plan.append("\n ");
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        String value = rs.getString(i);
+                        if (value != null) plan.append(' ').append(meta.getColumnLabel(i)).append('=').append(value);
+                    }
+                }
+            }
+            ok = true;
+        } catch (SQLException e) {
+            plan.append("\n  failed: ").append(e.getMessage());
+        } finally {
+            record(Query.EXPLAIN, start, ok);
+        }
+        log.accept(plan.toString());
+    }
+
+    // ==== Statistics ====
+
+    /** Executions, failures and latency of one query. */
+    public static final class QueryStatistics {
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        public long getFailureCount() {
+            return failures.sum();
+        }
+
+        public double getMeanMicros() {
+            return latency.getMean() / 1e3;
+        }
+
+        public double getPercentileMicros(double percentile) {
+            return latency.percentile(percentile) / 1e3;
+        }
+
+        public double getMaxMicros() {
+            return latency.getMax() / 1e3;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d failed=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                    getCount(), getFailureCount(), getMeanMicros(), getPercentileMicros(50),
+                    getPercentileMicros(99), getMaxMicros());
+        }
+    }
+
+    public Map<Query, QueryStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /** One line per query that has run, e.g. for a log. */
+    public String statistics() {
+        StringBuilder text = new StringBuilder();
+        statistics.forEach((query, stats) -> {
+            if (stats.getCount() == 0) return;
+            if (text.length() > 0) text.append('\n');
+            text.append(String.format("%-14s %s", query, stats));
+        });
+        return text.toString();
+    }
+
+    public void resetStatistics() {
+        for (QueryStatistics stats : statistics.values()) {
+            stats.latency.reset();
+            stats.failures.reset();
+        }
+    }
+
+    private void record(Query query, long start, boolean ok) {
+        QueryStatistics stats = statistics.get(query);
+        stats.latency.record(System.nanoTime() - start);
+        if (!ok) stats.failures.increment();
+    }
+}
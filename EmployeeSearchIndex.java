@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Substring search over employee names and emails through a trigram
+ * inverted index: for every three-character sequence in a row's lower-cased
+ * name or email, a sorted list of the ids of the rows containing it.
+ *
+ * A query of three or more characters is answered by intersecting the lists
+ * of its trigrams, walking the smallest and galloping through the others,
+ * and confirming each surviving candidate with {@code contains} on the
+ * stored text (a row can hold all of a query's trigrams without holding the
+ * query). Shorter queries have no trigram and are checked against every
+ * row's stored text; either way, no string is lower-cased or allocated per
+ * row at search time.
+ *
+ * Rows are added, replaced and removed one at a time as the loaded rows
+ * change, so the index is built once and then kept up to date rather than
+ * rebuilt per keystroke. While typing, a query usually extends the one
+ * before it; given the previous {@link Matches}, a search only re-checks
+ * those rows, as long as the index has not changed since.
+ *
+ * Not thread-safe; the FX windows use it from their search thread only.
+ */
+public final class EmployeeSearchIndex {
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    /** Lower-cased "name\nemail" per id; the separator keeps trigrams (and matches) from spanning both. */
+    private final Map<Integer, String> texts = new HashMap<>();
+    private final Map<Integer, Postings> postings = new HashMap<>();
+    /** Bumped on every change, so older {@link Matches} are not narrowed after rows came or went. */
+    private long version;
+
+    /** Indexes a row, replacing any row already indexed under the same id. */
+    public void add(int id, String name, String email) {
+        remove(id);
+        version++;
+        String text = (name == null ? "" : name.toLowerCase(Locale.ROOT)) + '\n'
+                + (email == null ? "" : email.toLowerCase(Locale.ROOT));
+        texts.put(id, text);
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int key = trigram(text, i);
+            if (key < 0) continue;
+            postings.computeIfAbsent(key, k -> new Postings()).add(id);
+        }
+    }
+
+    /** @return false if no row was indexed under this id */
+    public boolean remove(int id) {
+        String text = texts.remove(id);
+        if (text == null) return false;
+        version++;
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            int key = trigram(text, i);
+            if (key < 0) continue;
+            Postings list = postings.get(key);
+            if (list != null && list.remove(id) && list.size == 0) postings.remove(key);
+        }
+        return true;
+    }
+
+    public void clear() {
+        texts.clear();
+        postings.clear();
+        version++;
+    }
+
+    /** Number of rows indexed. */
+    public int size() {
+        return texts.size();
+    }
+
+    /** Number of distinct trigrams indexed. */
+    public int getTrigramCount() {
+        return postings.size();
+    }
+
+    /** The rows whose name or email contains {@code query}, ignoring case; an empty query matches every row. */
+    public Matches search(String query) {
+        return search(query, null, () -> false);
+    }
+
+    /**
+     * Like {@link #search(String)}, but may just re-check the rows of
+     * {@code previous} when the query contains its query and no row has
+     * changed since; and gives up, returning null, once {@code cancelled}
+     * answers true (polled every {@value #CANCEL_CHECK_INTERVAL} rows).
+     *
+     * @param previous the last result for this listing, or null
+     */
+    public Matches search(String query, Matches previous, BooleanSupplier cancelled) {
+        String q = query.toLowerCase(Locale.ROOT);
+        boolean narrowable = previous != null && previous.version == version && q.contains(previous.query);
+        if (q.length() < 3 || q.indexOf('\n') >= 0) {
+            return narrowable ? narrow(q, previous, cancelled) : scan(q, cancelled);
+        }
+
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Postings list = postings.get(trigram(q, i));
+            if (list == null) return new Matches(new int[0], 0, q, version);
+            if (!lists.contains(list)) lists.add(list);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        // Both ways check one id list against the text; take the shorter list
+        if (narrowable && previous.size <= lists.get(0).size) return narrow(q, previous, cancelled);
+
+        // All lists are sorted, so each is walked forward once, galloping past ids the smallest lacks
+        Postings smallest = lists.get(0);
+        int[] cursors = new int[lists.size()];
+        int[] found = new int[smallest.size];
+        int count = 0;
+        candidates:
+        for (int i = 0; i < smallest.size; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) return null;
+            int id = smallest.ids[i];
+            for (int l = 1; l < lists.size(); l++) {
+                Postings list = lists.get(l);
+                int at = list.seek(id, cursors[l]);
+                cursors[l] = at;
+                if (at == list.size) break candidates;
+                if (list.ids[at] != id) continue candidates;
+            }
+            if (texts.get(id).contains(q)) found[count++] = id;
+        }
+        return new Matches(found, count, q, version);
+    }
+
+    /** A query extending an earlier one: only the earlier matches can still match. */
+    private Matches narrow(String q, Matches previous, BooleanSupplier cancelled) {
+        int[] found = new int[previous.size];
+        int count = 0;
+        for (int i = 0; i < previous.size; i++) {
+            if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) return null;
+            int id = previous.ids[i];
+            if (texts.get(id).contains(q)) found[count++] = id;
+        }
+        return new Matches(found, count, q, version);
+    }
+
+    /** Queries too short to have a trigram: a pass over the stored, already lower-cased text. */
+    private Matches scan(String q, BooleanSupplier cancelled) {
+        int[] found = new int[texts.size()];
+        int count = 0;
+        int checked = 0;
+        for (Map.Entry<Integer, String> entry : texts.entrySet()) {
+            if (checked++ % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) return null;
+            if (entry.getValue().contains(q)) found[count++] = entry.getKey();
+        }
+        Arrays.sort(found, 0, count);
+        return new Matches(found, count, q, version);
+    }
+
+    /**
+     * The three characters at {@code i} packed into an int: exact for
+     * characters below U+0400, hashed above (a collision only adds
+     * candidates, which are confirmed anyway). -1 if one is the separator.
+     */
+    private static int trigram(String text, int i) {
+        char a = text.charAt(i), b = text.charAt(i + 1), c = text.charAt(i + 2);
+        if (a == '\n' || b == '\n' || c == '\n') return -1;
+        if ((a | b | c) < 0x400) return a << 20 | b << 10 | c;
+        return ((a * 31 + b) * 31 + c) & 0x3FFFFFFF | 0x40000000;
+    }
+
+    /** Ids of the rows holding one trigram, kept sorted; rows arriving in id order are appended. */
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size > 0 && id <= ids[size - 1]) {
+                int at = Arrays.binarySearch(ids, 0, size, id);
+                if (at >= 0) return; // the trigram occurs twice in the row
+                insert(-at - 1, id);
+            } else {
+                insert(size, id);
+            }
+        }
+
+        private void insert(int at, int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            System.arraycopy(ids, at, ids, at + 1, size - at);
+            ids[at] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, size, id);
+            if (at < 0) return false;
+            System.arraycopy(ids, at + 1, ids, at, size - at - 1);
+            size--;
+            return true;
+        }
+
+        /** The first position at or after {@code from} holding an id no less than {@code id}; size if none. */
+        int seek(int id, int from) {
+            int hi = from;
+            for (int step = 1; hi < size && ids[hi] < id; step <<= 1) {
+                from = hi + 1;
+                hi += step;
+            }
+            int at = Arrays.binarySearch(ids, from, Math.min(hi, size), id);
+            return at >= 0 ? at : -at - 1;
+        }
+    }
+
+    /** The ids matching a query, sorted; {@link #contains} is a binary search. */
+    public static final class Matches {
+        private final int[] ids;
+        private final int size;
+        /** Lower-cased. */
+        private final String query;
+        private final long version;
+
+        private Matches(int[] ids, int size, String query, long version) {
+            this.ids = ids;
+            this.size = size;
+            this.query = query;
+            this.version = version;
+        }
+
+        public boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Where the employee records live: the operations the CRUD front ends need,
+ * independent of the backend.
+ *
+ * {@link EmployeeRepository} stores them in MySQL (usually behind an
+ * {@link EmployeeCache}); {@link LogEmployeeStore} keeps them in a local
+ * log file, for edge deployments and tests without a database server.
+ * {@link #configured} picks one from the {@value #LOG_FILE_PROPERTY} system
+ * property, and turns on the MySQL plan log with {@value #PLAN_LOG_PROPERTY}.
+ *
+ * Failures are reported as {@link SQLException} whatever the backend, with
+ * SQLState 23000 for a duplicate id or email, so callers handle both alike.
+ */
+public interface EmployeeStore extends AutoCloseable {
+    /** System property naming a log file to use instead of MySQL, e.g. {@code -Demployee.store=employees.log}. */
+    String LOG_FILE_PROPERTY = "employee.store";
+
+    /**
+     * System property that logs the EXPLAIN plan of each MySQL search, to
+     * {@code stderr} or appended to a file, e.g. {@code -Demployee.planlog=plans.log};
+     * unset, no plan is fetched. See {@link EmployeeRepository#setPlanLog}.
+     */
+    String PLAN_LOG_PROPERTY = "employee.planlog";
+
+    /** Longest name or email in characters, the VARCHAR(100) of the MySQL schema; longer ones fail with SQLState 22001. */
+    int MAX_TEXT_LENGTH = 100;
+
+    /** Builds a caller's row object, e.g. {@code Employee::new}. */
+    @FunctionalInterface
+    interface Mapper<T> {
+        T map(int id, String name, String email, double salary);
+    }
+
+    /**
+     * The log file store when {@value #LOG_FILE_PROPERTY} is set, otherwise
+     * MySQL through {@code pool} with a cache in front, logging search plans
+     * as {@value #PLAN_LOG_PROPERTY} says.
+     *
+     * @throws SQLException with SQLState 58030 if the log file cannot be opened
+     */
+    static EmployeeStore configured(ConnectionPool pool) throws SQLException {
+        String file = System.getProperty(LOG_FILE_PROPERTY);
+        if (file == null || file.isBlank()) {
+            EmployeeRepository repository = new EmployeeRepository(pool);
+            repository.setPlanLog(EmployeeRepository.planLogTo(System.getProperty(PLAN_LOG_PROPERTY)));
+            return new EmployeeCache(repository);
+        }
+        try {
+            return new LogEmployeeStore(Path.of(file));
+        } catch (IOException e) {
+            throw new SQLException("Could not open employee store " + file + ": " + e.getMessage(), "58030", e);
+        }
+    }
+
+    /** @param generatedIds AUTO_INCREMENT ids (the CLI schema) rather than ids chosen by the caller */
+    void createTableIfNotExists(boolean generatedIds) throws SQLException;
+
+    /** Inserts with a generated id. */
+    void insert(String name, String email, double salary) throws SQLException;
+
+    void insert(int id, String name, String email, double salary) throws SQLException;
+
+    /** @return false if there is no employee with this id */
+    boolean update(int id, String name, String email, double salary) throws SQLException;
+
+    /** @return false if there is no employee with this id */
+    boolean updateSalary(int id, double salary) throws SQLException;
+
+    /** @return false if there is no employee with this id */
+    boolean delete(int id) throws SQLException;
+
+    boolean exists(int id) throws SQLException;
+
+    /** @return the mapped row, or null if there is no employee with this id */
+    <T> T findById(int id, Mapper<T> mapper) throws SQLException;
+
+    /**
+     * Reads up to {@code limit} employees in id order into {@code handler}:
+     * from the start when {@code first} is set, otherwise those with an id
+     * above {@code afterId}. Used by {@link EmployeePager}.
+     *
+     * @return the number of rows read
+     */
+    int readPage(boolean first, int afterId, int limit, EmployeePager.RowHandler handler) throws SQLException;
+
+    /**
+     * Reads up to {@code limit} employees matching {@code query}, in its
+     * order, from its keyset position on. Used by {@link EmployeePager} for
+     * anything but the plain listing.
+     *
+     * This default filters and sorts a full pass over {@link #readPage} in
+     * memory; {@link EmployeeRepository} runs it as indexed SQL.
+     *
+     * @return the number of rows read
+     */
+    default int search(EmployeeQuery query, int limit, EmployeePager.RowHandler handler) throws SQLException {
+        return query.scan(this, limit, handler);
+    }
+
+    /** Drops anything cached, after writes that went around the store, such as a batched JDBC import. */
+    default void invalidateAll() {
+    }
+
+    /** Releases what the store holds; the shared connection pool is not closed. */
+    @Override
+    default void close() throws SQLException {
+    }
+}
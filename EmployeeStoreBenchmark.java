@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+/**
+ * Throughput of the employee stores on the three write paths of the CLI
+ * (insertEmployee, updateEmployeeSalary, deleteEmployee): the log file store,
+ * with and without a disk flush per write, and optionally MySQL through the
+ * pooled JDBC repository.
+ *
+ * Usage: java EmployeeStoreBenchmark [rows] [jdbcUrl user password]
+ * The JDBC run inserts, updates and deletes ids from {@value #BASE_ID} on in
+ * the employees table of that database, so point it at a scratch schema.
+ */
+public class EmployeeStoreBenchmark {
+    private static final int BASE_ID = 1_000_000;
+    /** A flush per write or a round trip per write is slow; fewer rows keep those runs short. */
+    private static final int SLOW_ROWS = 2_000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Path dir = Files.createTempDirectory("employee-store-bench");
+        try {
+            run(null, new LogEmployeeStore(dir.resolve("warmup.log")), Math.min(rows, 20_000));
+
+            System.out.println("=== Employee stores (ops/s) ===");
+            System.out.printf("%-24s %8s %12s %12s %12s%n", "store", "rows", "insert", "update", "delete");
+            LogEmployeeStore log = new LogEmployeeStore(dir.resolve("employees.log"));
+            run("log", log, rows);
+            System.out.println("  " + log.statistics());
+            run("log, sync each write",
+                    new LogEmployeeStore(dir.resolve("synced.log"), true, LogEmployeeStore.DEFAULT_COMPACT_MIN_BYTES),
+                    Math.min(rows, SLOW_ROWS));
+
+            if (args.length >= 4) {
+                try (ConnectionPool pool = new ConnectionPool(args[1], args[2], args[3],
+                        1, ConnectionPool.DEFAULT_MAX_WAIT_MILLIS, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS)) {
+                    run("jdbc (pooled)", new EmployeeRepository(pool), Math.min(rows, SLOW_ROWS));
+                    System.out.println("  " + pool.statistics());
+                }
+            } else {
+                System.out.println("(pass jdbcUrl user password to compare with MySQL)");
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /** Inserts, then updates the salary of, then deletes {@code rows} employees; prints the rates unless label is null. */
+    private static void run(String label, EmployeeStore store, int rows) throws SQLException, IOException {
+        try (store) {
+            store.createTableIfNotExists(true);
+            long start = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                store.insert(BASE_ID + i, "Employee " + i, "employee" + i + "@example.com", 1000 + i);
+            }
+            long inserted = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                store.updateSalary(BASE_ID + i, 2000 + i);
+            }
+            long updated = System.nanoTime();
+            for (int i = 0; i < rows; i++) {
+                store.delete(BASE_ID + i);
+            }
+            long deleted = System.nanoTime();
+            if (label != null) {
+                System.out.printf("%-24s %8d %12.0f %12.0f %12.0f%n", label, rows,
+                        rows / ((inserted - start) / 1e9), rows / ((updated - inserted) / 1e9),
+                        rows / ((deleted - updated) / 1e9));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Exact evaluation of a compiled expression, created by
+ * {@link ExpressionEngine#compileExact}.
+ *
+ * Every node is computed on primitive {@code long} with Math.*Exact checks.
+ * Only a node whose result does not fit (overflow, or in decimal mode a
+ * fractional literal or quotient) is computed in BigDecimal, and a result
+ * that fits a long again drops back to the fast path. So the common case
+ * costs about the same as the int path, and a large intermediate value
+ * only makes its own subtree slow.
+ *
+ * Integer mode keeps the calculator's int semantics apart from overflow:
+ * '/' truncates toward zero and '%' takes the sign of the dividend. Decimal
+ * mode divides exactly, rounding to DECIMAL128 (34 digits) only when the
+ * quotient does not terminate. Division and modulo by zero throw the usual
+ * ArithmeticExceptions.
+ *
+ * Instances are immutable; each call to {@link #evaluate} uses its own
+ * scratch state, so an evaluator can be shared between threads.
+ */
+public final class ExactEvaluator {
+    private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    private final CompiledExpression expression;
+    private final boolean decimalMode;
+    private final Node root;
+
+    ExactEvaluator(CompiledExpression expression) {
+        this.expression = expression;
+        this.decimalMode = expression.isFloatMode();
+        this.root = convert(expression.root());
+    }
+
+    /**
+     * Returns a {@link Long} when the result fits, otherwise a
+     * {@link BigInteger} (integral results) or a {@link BigDecimal}.
+     */
+    public Number evaluate(long... values) {
+        if (values.length != expression.getVariables().length) {
+            throw new IllegalArgumentException("Expected " + expression.getVariables().length
+                    + " values but got " + values.length);
+        }
+        State state = new State();
+        long value = root.eval(values, state);
+        BigDecimal big = state.promoted;
+        if (big == null) return value;
+        if (big.signum() == 0 || big.stripTrailingZeros().scale() <= 0) return big.toBigIntegerExact();
+        return big.stripTrailingZeros();
+    }
+
+    public boolean isDecimalMode() {
+        return decimalMode;
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    private Node convert(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Constant) {
+            ExpressionNode.Constant constant = (ExpressionNode.Constant) node;
+            BigDecimal exact;
+            if (constant.literal != null) exact = new BigDecimal(constant.literal);
+            else if (decimalMode) exact = new BigDecimal(constant.floatValue); // folded: exact binary value
+            else exact = BigDecimal.valueOf(constant.intValue);
+            return new Constant(exact);
+        }
+        if (node instanceof ExpressionNode.Variable) {
+            return new Variable(((ExpressionNode.Variable) node).slot);
+        }
+        if (node instanceof ExpressionNode.Negate) {
+            return new Negate(convert(((ExpressionNode.Negate) node).operand));
+        }
+        ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+        return new Binary(binary.op, convert(binary.left), convert(binary.right), decimalMode);
+    }
+
+    /** Holds the BigDecimal result of the last node evaluated when it did not fit a long. */
+    private static final class State {
+        BigDecimal promoted;
+    }
+
+    /**
+     * Result protocol: eval returns the value as a long, unless it sets
+     * state.promoted, in which case that is the value and the return is ignored.
+     */
+    private abstract static class Node {
+        abstract long eval(long[] vars, State state);
+
+        /** Stores {@code value} in state, or returns it as a long when it fits. */
+        static long demote(BigDecimal value, State state) {
+            if ((value.scale() <= 0 || value.signum() == 0 || value.stripTrailingZeros().scale() <= 0)
+                    && value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0) {
+                state.promoted = null;
+                return value.longValue();
+            }
+            state.promoted = value;
+            return 0;
+        }
+    }
+
+    private static final class Constant extends Node {
+        private final long value;
+        private final BigDecimal big; // null when the literal fits a long
+
+        Constant(BigDecimal exact) {
+            State probe = new State();
+            this.value = demote(exact, probe);
+            this.big = probe.promoted;
+        }
+
+        @Override
+        long eval(long[] vars, State state) {
+            state.promoted = big;
+            return value;
+        }
+    }
+
+    private static final class Variable extends Node {
+        private final int slot;
+
+        Variable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        long eval(long[] vars, State state) {
+            return vars[slot];
+        }
+    }
+
+    private static final class Negate extends Node {
+        private final Node operand;
+
+        Negate(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long eval(long[] vars, State state) {
+            long value = operand.eval(vars, state);
+            if (state.promoted != null) {
+                return demote(state.promoted.negate(), state);
+            }
+            if (value == Long.MIN_VALUE) {
+                state.promoted = LONG_MIN.negate();
+                return 0;
+            }
+            return -value;
+        }
+    }
+
+    private static final class Binary extends Node {
+        private final char op;
+        private final Node left;
+        private final Node right;
+        private final boolean decimalMode;
+
+        Binary(char op, Node left, Node right, boolean decimalMode) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.decimalMode = decimalMode;
+        }
+
+        @Override
+        long eval(long[] vars, State state) {
+            long a = left.eval(vars, state);
+            BigDecimal bigA = state.promoted;
+            state.promoted = null;
+            long b = right.eval(vars, state);
+            BigDecimal bigB = state.promoted;
+            state.promoted = null;
+
+            if (bigA == null && bigB == null) {
+                try {
+                    switch (op) {
+                        case '+': return Math.addExact(a, b);
+                        case '-': return Math.subtractExact(a, b);
+                        case '*': return Math.multiplyExact(a, b);
+                        case '/':
+                            if (b == 0) throw new ArithmeticException("Division by zero");
+                            if (a == Long.MIN_VALUE && b == -1) break; // the one overflowing quotient
+                            if (decimalMode && a % b != 0) break;      // fractional quotient
+                            return a / b;
+                        default:
+                            if (b == 0) throw new ArithmeticException("Modulo by zero");
+                            return a % b;
+                    }
+                } catch (ArithmeticException e) {
+                    if (op == '/' || op == '%') throw e; // zero divisor, not an overflow
+                }
+            }
+
+            // Slow path, only for this node: redo the operation in BigDecimal.
+            BigDecimal x = bigA != null ? bigA : BigDecimal.valueOf(a);
+            BigDecimal y = bigB != null ? bigB : BigDecimal.valueOf(b);
+            BigDecimal result;
+            switch (op) {
+                case '+': result = x.add(y); break;
+                case '-': result = x.subtract(y); break;
+                case '*': result = x.multiply(y); break;
+                case '/':
+                    if (y.signum() == 0) throw new ArithmeticException("Division by zero");
+                    result = decimalMode ? divide(x, y) : x.divideToIntegralValue(y);
+                    break;
+                default:
+                    if (y.signum() == 0) throw new ArithmeticException("Modulo by zero");
+                    result = x.remainder(y);
+                    break;
+            }
+            return demote(result, state);
+        }
+
+        private static BigDecimal divide(BigDecimal x, BigDecimal y) {
+            try {
+                return x.divide(y);
+            } catch (ArithmeticException e) {
+                return x.divide(y, MathContext.DECIMAL128); // non-terminating expansion
+            }
+        }
+    }
+}
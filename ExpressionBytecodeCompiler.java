@@ -0,0 +1,333 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Turns a {@link CompiledExpression} into JVM bytecode: one hidden class per
+ * expression whose {@code evaluate} method is straight-line arithmetic the
+ * JIT can inline, instead of a virtual call per tree node.
+ *
+ * Results match the tree (and the original parseExpressionInt/Float)
+ * exactly: int arithmetic wraps, float arithmetic is Java double arithmetic,
+ * and a zero divisor throws ArithmeticException("Division by zero") or
+ * ("Modulo by zero"). The generated code has no branches, so the class file
+ * needs no stack map frames; the zero checks are calls to the static helpers
+ * below.
+ */
+public final class ExpressionBytecodeCompiler {
+
+    public interface IntEvaluator {
+        int evaluate(int[] vars);
+    }
+
+    public interface FloatEvaluator {
+        double evaluate(double[] vars);
+    }
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final String SELF = "ExpressionBytecodeCompiler";
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private ExpressionBytecodeCompiler() {
+    }
+
+    public static IntEvaluator compileInt(CompiledExpression expression) {
+        if (expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in float mode");
+        return (IntEvaluator) define(expression, false);
+    }
+
+    public static FloatEvaluator compileFloat(CompiledExpression expression) {
+        if (!expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in integer mode");
+        return (FloatEvaluator) define(expression, true);
+    }
+
+    // ==== Helpers called from generated code ====
+
+    static int checkDivision(int divisor) {
+        if (divisor == 0) throw new ArithmeticException("Division by zero");
+        return divisor;
+    }
+
+    static int checkModulo(int divisor) {
+        if (divisor == 0) throw new ArithmeticException("Modulo by zero");
+        return divisor;
+    }
+
+    static double checkDivision(double divisor) {
+        if (divisor == 0.0) throw new ArithmeticException("Division by zero");
+        return divisor;
+    }
+
+    static double checkModulo(double divisor) {
+        if (divisor == 0.0) throw new ArithmeticException("Modulo by zero");
+        return divisor;
+    }
+
+    // ==== Class generation ====
+
+    private static Object define(CompiledExpression expression, boolean floatMode) {
+        byte[] bytes = new ClassWriter(floatMode).write(expression.root());
+        try {
+            MethodHandles.Lookup hidden = LOOKUP.defineHiddenClass(bytes, true);
+            return hidden.findConstructor(hidden.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not define evaluator for " + expression, e);
+        }
+    }
+
+    /** Writes a minimal class file: a constructor plus one evaluate method. */
+    private static final class ClassWriter {
+        private final boolean floatMode;
+        private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+        private final DataOutputStream pool = new DataOutputStream(poolBytes);
+        private final Map<String, Integer> poolIndex = new HashMap<>();
+        private int poolCount = 1;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        ClassWriter(boolean floatMode) {
+            this.floatMode = floatMode;
+        }
+
+        byte[] write(ExpressionNode root) {
+            try {
+                String evaluatorInterface = SELF + (floatMode ? "$FloatEvaluator" : "$IntEvaluator");
+                int thisClass = classRef("GeneratedExpression");
+                int superClass = classRef("java/lang/Object");
+                int interfaceClass = classRef(evaluatorInterface);
+                int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+                int codeName = utf8("Code");
+                int initName = utf8("<init>");
+                int initDesc = utf8("()V");
+                int evalName = utf8("evaluate");
+                int evalDesc = utf8(floatMode ? "([D)D" : "([I)I");
+
+                emit(root);
+                code.write(floatMode ? 0xaf : 0xac); // dreturn / ireturn
+                if (code.size() > MAX_CODE_LENGTH || poolCount > 0xffff) {
+                    throw new IllegalArgumentException("Expression too large for bytecode compilation");
+                }
+                int maxStack = stack(root);
+                if (maxStack > 0xffff) {
+                    throw new IllegalArgumentException("Expression too deep for bytecode compilation");
+                }
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                DataOutputStream cls = new DataOutputStream(out);
+                cls.writeInt(0xCAFEBABE);
+                cls.writeShort(0);
+                cls.writeShort(61);
+                cls.writeShort(poolCount);
+                pool.flush();
+                poolBytes.writeTo(cls);
+                cls.writeShort(0x0031); // public final super
+                cls.writeShort(thisClass);
+                cls.writeShort(superClass);
+                cls.writeShort(1);
+                cls.writeShort(interfaceClass);
+                cls.writeShort(0); // fields
+                cls.writeShort(2); // methods
+
+                // public <init>() { super(); }
+                cls.writeShort(0x0001);
+                cls.writeShort(initName);
+                cls.writeShort(initDesc);
+                cls.writeShort(1);
+                cls.writeShort(codeName);
+                cls.writeInt(12 + 5);
+                cls.writeShort(1);
+                cls.writeShort(1);
+                cls.writeInt(5);
+                cls.writeByte(0x2a); // aload_0
+                cls.writeByte(0xb7); // invokespecial
+                cls.writeShort(objectInit);
+                cls.writeByte(0xb1); // return
+                cls.writeShort(0);
+                cls.writeShort(0);
+
+                // public evaluate(vars)
+                cls.writeShort(0x0001);
+                cls.writeShort(evalName);
+                cls.writeShort(evalDesc);
+                cls.writeShort(1);
+                cls.writeShort(codeName);
+                cls.writeInt(12 + code.size());
+                cls.writeShort(maxStack);
+                cls.writeShort(2);
+                cls.writeInt(code.size());
+                code.writeTo(cls);
+                cls.writeShort(0);
+                cls.writeShort(0);
+
+                cls.writeShort(0); // class attributes
+                cls.flush();
+                return out.toByteArray();
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // in-memory streams do not fail
+            }
+        }
+
+        private void emit(ExpressionNode node) throws IOException {
+            if (node instanceof ExpressionNode.Constant) {
+                ExpressionNode.Constant constant = (ExpressionNode.Constant) node;
+                if (floatMode) pushDouble(constant.floatValue);
+                else pushInt(constant.intValue);
+            } else if (node instanceof ExpressionNode.Variable) {
+                code.write(0x2b); // aload_1
+                pushInt(((ExpressionNode.Variable) node).slot);
+                code.write(floatMode ? 0x31 : 0x2e); // daload / iaload
+            } else if (node instanceof ExpressionNode.Negate) {
+                emit(((ExpressionNode.Negate) node).operand);
+                code.write(floatMode ? 0x77 : 0x74); // dneg / ineg
+            } else {
+                ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+                emit(binary.left);
+                if (binary.right == binary.left) {
+                    code.write(floatMode ? 0x5c : 0x59); // dup2 / dup: shared operand
+                } else {
+                    emit(binary.right);
+                }
+                String desc = floatMode ? "(D)D" : "(I)I";
+                switch (binary.op) {
+                    case '+': code.write(floatMode ? 0x63 : 0x60); break;
+                    case '-': code.write(floatMode ? 0x67 : 0x64); break;
+                    case '*': code.write(floatMode ? 0x6b : 0x68); break;
+                    case '/':
+                        invokeStatic(methodRef(SELF, "checkDivision", desc));
+                        code.write(floatMode ? 0x6f : 0x6c);
+                        break;
+                    default:
+                        invokeStatic(methodRef(SELF, "checkModulo", desc));
+                        code.write(floatMode ? 0x73 : 0x70);
+                        break;
+                }
+            }
+        }
+
+        /** Operand stack depth, in slots, needed to evaluate {@code node}. */
+        private int stack(ExpressionNode node) {
+            int width = floatMode ? 2 : 1;
+            if (node instanceof ExpressionNode.Constant) return width;
+            if (node instanceof ExpressionNode.Variable) return 2;
+            if (node instanceof ExpressionNode.Negate) return stack(((ExpressionNode.Negate) node).operand);
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            if (binary.right == binary.left) return Math.max(stack(binary.left), 2 * width);
+            return Math.max(stack(binary.left), width + stack(binary.right));
+        }
+
+        private void pushInt(int value) throws IOException {
+            if (value >= -1 && value <= 5) {
+                code.write(0x03 + value); // iconst_<n>
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                code.write(0x10); // bipush
+                code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                code.write(0x11); // sipush
+                writeShort(value);
+            } else {
+                ldc(constant("I" + value, 3, value));
+            }
+        }
+
+        private void pushDouble(double value) throws IOException {
+            long bits = Double.doubleToRawLongBits(value);
+            if (bits == 0L) {
+                code.write(0x0e); // dconst_0
+            } else if (value == 1.0) {
+                code.write(0x0f); // dconst_1
+            } else {
+                Integer index = poolIndex.get("D" + bits);
+                if (index == null) {
+                    index = poolCount;
+                    pool.writeByte(6);
+                    pool.writeDouble(value);
+                    poolCount += 2; // doubles take two pool slots
+                    poolIndex.put("D" + bits, index);
+                }
+                code.write(0x14); // ldc2_w
+                writeShort(index);
+            }
+        }
+
+        private void ldc(int index) throws IOException {
+            if (index <= 0xff) {
+                code.write(0x12);
+                code.write(index);
+            } else {
+                code.write(0x13);
+                writeShort(index);
+            }
+        }
+
+        private void invokeStatic(int methodRef) throws IOException {
+            code.write(0xb8);
+            writeShort(methodRef);
+        }
+
+        private void writeShort(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        // ==== Constant pool ====
+
+        private int constant(String key, int tag, int value) throws IOException {
+            Integer index = poolIndex.get(key);
+            if (index == null) {
+                index = poolCount++;
+                pool.writeByte(tag);
+                pool.writeInt(value);
+                poolIndex.put(key, index);
+            }
+            return index;
+        }
+
+        private int utf8(String value) throws IOException {
+            Integer index = poolIndex.get("U" + value);
+            if (index == null) {
+                index = poolCount++;
+                pool.writeByte(1);
+                pool.writeUTF(value);
+                poolIndex.put("U" + value, index);
+            }
+            return index;
+        }
+
+        private int classRef(String internalName) throws IOException {
+            int name = utf8(internalName);
+            Integer index = poolIndex.get("C" + internalName);
+            if (index == null) {
+                index = poolCount++;
+                pool.writeByte(7);
+                pool.writeShort(name);
+                poolIndex.put("C" + internalName, index);
+            }
+            return index;
+        }
+
+        private int methodRef(String owner, String name, String desc) throws IOException {
+            String key = "M" + owner + "." + name + desc;
+            Integer index = poolIndex.get(key);
+            if (index == null) {
+                int ownerIndex = classRef(owner);
+                int nameIndex = utf8(name);
+                int descIndex = utf8(desc);
+                int nameAndType = poolCount++;
+                pool.writeByte(12);
+                pool.writeShort(nameIndex);
+                pool.writeShort(descIndex);
+                index = poolCount++;
+                pool.writeByte(10);
+                pool.writeShort(ownerIndex);
+                pool.writeShort(nameAndType);
+                poolIndex.put(key, index);
+            }
+            return index;
+        }
+    }
+}
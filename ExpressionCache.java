@@ -0,0 +1,198 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe LRU cache of evaluation results in front of an
+ * {@link ExpressionEngine}. Entries are keyed on the normalized expression
+ * (spaces stripped, implicit '*' inserted) plus the mode, so "2 (3)" and
+ * "2*(3)" share an entry.
+ *
+ * Failed evaluations are cached too: a hit on one rethrows a new exception
+ * of the same type with the same message ("Division by zero", ...).
+ *
+ * The cache is split into independently locked LRU segments so concurrent
+ * callers (e.g. {@link BatchEvaluator}) rarely contend on the same lock.
+ *
+ * Calls are recorded in the engine's {@link CalculatorMetrics}, if it has
+ * any, as if they had gone to the engine: sampled the same way, with the
+ * lookup as the evaluate time of a hit, and a cached failure counted as an
+ * error every time it is rethrown.
+ */
+public final class ExpressionCache {
+    private static final int MAX_SEGMENTS = 16;
+
+    private final ExpressionEngine engine;
+    private final int maxEntries;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpressionCache(ExpressionEngine engine, int maxEntries) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries must be positive");
+        this.engine = engine;
+        this.maxEntries = maxEntries;
+        int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxEntries));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // spread the remainder so the capacities add up to exactly maxEntries
+            segments[i] = new Segment(maxEntries / count + (i < maxEntries % count ? 1 : 0));
+        }
+    }
+
+    public int evaluateInt(String expression) {
+        return (int) lookup(expression, false).get();
+    }
+
+    public double evaluateFloat(String expression) {
+        return lookup(expression, true).get();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ExpressionCache[size=%d, max=%d, hits=%d, misses=%d, evictions=%d, hitRatio=%.3f]",
+                size(), maxEntries, getHits(), getMisses(), getEvictions(), getHitRatio());
+    }
+
+    private Result lookup(String expression, boolean floatMode) {
+        CalculatorMetrics metrics = engine.getMetrics();
+        boolean timed = metrics != null && metrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        Key key = new Key(ExpressionEngine.normalize(expression), floatMode);
+        long normalizedAt = timed ? System.nanoTime() : 0;
+        Segment segment = segments[(key.hash ^ (key.hash >>> 16)) & (segments.length - 1)];
+        Result result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+        if (result != null) {
+            hits.increment();
+        } else {
+            // Evaluate outside the lock; two threads missing on the same key just compute it twice.
+            misses.increment();
+            result = compute(key);
+            synchronized (segment) {
+                segment.put(key, result);
+            }
+        }
+        if (metrics != null) {
+            if (result.error != null) metrics.recordError(result.error);
+            else if (timed) metrics.recordEvaluation(normalizedAt - start, System.nanoTime() - normalizedAt, key.expression);
+        }
+        return result;
+    }
+
+    private Result compute(Key key) {
+        try {
+            if (key.floatMode) {
+                return new Result(engine.evaluateNormalizedFloat(key.expression), null);
+            }
+            return new Result(engine.evaluateNormalizedInt(key.expression), null);
+        } catch (RuntimeException e) {
+            return new Result(0, e);
+        }
+    }
+
+    private static final class Key {
+        final String expression;
+        final boolean floatMode;
+        final int hash;
+
+        Key(String expression, boolean floatMode) {
+            this.expression = expression;
+            this.floatMode = floatMode;
+            this.hash = expression.hashCode() * 31 + (floatMode ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return floatMode == other.floatMode && expression.equals(other.expression);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /** A cached value, or the failure to rethrow. Int results are stored exactly as doubles. */
+    private static final class Result {
+        final double value;
+        final RuntimeException error;
+
+        Result(double value, RuntimeException error) {
+            this.value = value;
+            this.error = error;
+        }
+
+        double get() {
+            if (error == null) return value;
+            if (error instanceof ArithmeticException) throw new ArithmeticException(error.getMessage());
+            if (error instanceof NumberFormatException) throw new NumberFormatException(error.getMessage());
+            throw new RuntimeException(error.getMessage());
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,847 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Reusable expression evaluator for the calculator grammar:
+ * {@code + - * / %}, unary minus, parentheses and implicit multiplication.
+ *
+ * The engine keeps no parse state of its own; every call works on a fresh
+ * cursor, so one instance can be shared by any number of threads. An
+ * engine built with {@link CalculatorMetrics} also records the timings and
+ * errors of every evaluation and compile there, whatever the input (String,
+ * Reader, CharSequence, file), and so does an {@link ExpressionCache} in
+ * front of it.
+ */
+public final class ExpressionEngine {
+    private final CalculatorMetrics metrics;
+
+    public ExpressionEngine() {
+        this(null);
+    }
+
+    /** An engine that records its work in {@code metrics}, or none when null. */
+    public ExpressionEngine(CalculatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int evaluateInt(String expression) {
+        if (metrics == null) return evaluateNormalizedInt(normalize(expression));
+        try {
+            if (!metrics.sample()) return evaluateNormalizedInt(normalize(expression));
+            long start = System.nanoTime();
+            String normalized = normalize(expression);
+            long normalizedAt = System.nanoTime();
+            int result = evaluateNormalizedInt(normalized);
+            metrics.recordEvaluation(normalizedAt - start, System.nanoTime() - normalizedAt, normalized);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    public double evaluateFloat(String expression) {
+        if (metrics == null) return evaluateNormalizedFloat(normalize(expression));
+        try {
+            if (!metrics.sample()) return evaluateNormalizedFloat(normalize(expression));
+            long start = System.nanoTime();
+            String normalized = normalize(expression);
+            long normalizedAt = System.nanoTime();
+            double result = evaluateNormalizedFloat(normalized);
+            metrics.recordEvaluation(normalizedAt - start, System.nanoTime() - normalizedAt, normalized);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /** The metrics this engine records into, or null; {@link ExpressionCache} records there too. */
+    CalculatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Evaluates an expression that has already been through {@link #normalize}. */
+    int evaluateNormalizedInt(String normalized) {
+        Parser parser = new Parser(new NormalizedCursor(normalized));
+        int result = parser.parseExpressionInt();
+        parser.expectEnd();
+        return result;
+    }
+
+    double evaluateNormalizedFloat(String normalized) {
+        Parser parser = new Parser(new NormalizedCursor(normalized));
+        double result = parser.parseExpressionFloat();
+        parser.expectEnd();
+        return result;
+    }
+
+    /**
+     * Evaluates an expression read from {@code reader} in a single pass.
+     * Spaces are skipped and the implicit '*' produced as characters arrive,
+     * so memory use depends on the nesting depth and the longest literal,
+     * not on the length of the input. Results and error messages, positions
+     * included, are the same as for {@link #evaluateInt(String)} on the text.
+     */
+    public int evaluateInt(Reader reader) throws IOException {
+        try {
+            return evaluateStreamInt(new StreamCursor(reader, null));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public double evaluateFloat(Reader reader) throws IOException {
+        try {
+            return evaluateStreamFloat(new StreamCursor(reader, null));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** Like {@link #evaluateInt(Reader)}, reading any CharSequence (a CharBuffer, a StringBuilder) in place. */
+    public int evaluateInt(CharSequence expression) {
+        return evaluateStreamInt(new StreamCursor(null, expression));
+    }
+
+    public double evaluateFloat(CharSequence expression) {
+        return evaluateStreamFloat(new StreamCursor(null, expression));
+    }
+
+    /**
+     * Streamed input is normalized and evaluated in one pass, so a sampled
+     * call records its whole time as evaluate time and no shape. A failed
+     * read is not an evaluation error and is not recorded.
+     */
+    private int evaluateStreamInt(StreamCursor cursor) {
+        boolean timed = metrics != null && metrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            Parser parser = new Parser(cursor);
+            int result = parser.parseExpressionInt();
+            parser.expectEnd();
+            if (timed) metrics.recordStreamEvaluation(System.nanoTime() - start);
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (metrics != null) metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    private double evaluateStreamFloat(StreamCursor cursor) {
+        boolean timed = metrics != null && metrics.sample();
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            Parser parser = new Parser(cursor);
+            double result = parser.parseExpressionFloat();
+            parser.expectEnd();
+            if (timed) metrics.recordStreamEvaluation(System.nanoTime() - start);
+            return result;
+        } catch (UncheckedIOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (metrics != null) metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Evaluates the UTF-8 expression stored in {@code file}. The file is
+     * memory-mapped and decoded a buffer at a time as the parser reads it,
+     * so it is never loaded onto the heap.
+     */
+    public int evaluateInt(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return evaluateInt(new MappedReader(channel));
+        }
+    }
+
+    public double evaluateFloat(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return evaluateFloat(new MappedReader(channel));
+        }
+    }
+
+    /**
+     * Parses {@code expression} once into an immutable tree that can then be
+     * evaluated repeatedly with different variable values. Identifiers must
+     * be listed in {@code variables}; their order defines the order of the
+     * values passed to {@link CompiledExpression#evaluateInt} and
+     * {@link CompiledExpression#evaluateFloat}.
+     *
+     * Syntax errors are reported here; division and modulo by zero are only
+     * detected when the tree is evaluated.
+     */
+    public CompiledExpression compile(String expression, boolean floatMode, String... variables) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            String[] names = variables.clone();
+            TreeParser parser = new TreeParser(normalizeWithVariables(expression), floatMode, false, names);
+            ExpressionNode root = parser.parseExpression();
+            parser.expectEnd();
+            if (metrics != null) metrics.recordCompile(System.nanoTime() - start);
+            return new CompiledExpression(expression, floatMode, names, root);
+        } catch (RuntimeException e) {
+            if (metrics != null) metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Compiles {@code expression} for exact evaluation: integer literals of
+     * any length are accepted and, in decimal mode, so are decimal literals.
+     * See {@link ExactEvaluator} for the arithmetic.
+     */
+    public ExactEvaluator compileExact(String expression, boolean decimalMode, String... variables) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            String[] names = variables.clone();
+            TreeParser parser = new TreeParser(normalizeWithVariables(expression), decimalMode, true, names);
+            ExpressionNode root = parser.parseExpression();
+            parser.expectEnd();
+            if (metrics != null) metrics.recordCompile(System.nanoTime() - start);
+            return new ExactEvaluator(new CompiledExpression(expression, decimalMode, names, root));
+        } catch (RuntimeException e) {
+            if (metrics != null) metrics.recordError(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Strips spaces and inserts the implicit '*' between a number or ')' and a
+     * following '('. Same rules as the original calculators, without the regex.
+     */
+    static String normalize(String expr) {
+        StringBuilder sb = new StringBuilder(expr.length() + 8);
+        char prev = 0;
+        for (int i = 0; i < expr.length(); i++) {
+            char current = expr.charAt(i);
+            if (current == ' ') continue;
+            if (current == '(' && (Character.isDigit(prev) || prev == ')')) {
+                sb.append('*');
+            }
+            sb.append(current);
+            prev = current;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Like {@link #normalize}, but also treats identifiers as operands, so
+     * {@code 2x}, {@code x(y+1)} and {@code (a+b)c} get their implicit '*'.
+     */
+    static String normalizeWithVariables(String expr) {
+        StringBuilder sb = new StringBuilder(expr.length() + 8);
+        char prev = 0;
+        boolean inIdentifier = false;
+        for (int i = 0; i < expr.length(); i++) {
+            char current = expr.charAt(i);
+            if (current == ' ') continue;
+            boolean operandBefore = Character.isDigit(prev) || prev == ')' || inIdentifier;
+            if (isIdentifierStart(current) && !inIdentifier) {
+                if (operandBefore) sb.append('*');
+                inIdentifier = true;
+            } else if (current == '(') {
+                if (operandBefore) sb.append('*');
+                inIdentifier = false;
+            } else if (!isIdentifierPart(current)) {
+                inIdentifier = false;
+            }
+            sb.append(current);
+            prev = current;
+        }
+        return sb.toString();
+    }
+
+    static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_';
+    }
+
+    static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * Evaluates one normalized expression while it reads it from a {@link Cursor}.
+     *
+     * There is no recursion: each open '(' saves the state of the enclosing
+     * level on an explicit stack, so nesting depth and runs of unary minus
+     * are limited only by memory. Operators are applied at the same points
+     * the recursive grammar applied them (a factor as soon as it is complete,
+     * a term before the next '+' or '-'), so results and the order of errors
+     * are unchanged. Instances are confined to a single evaluation.
+     */
+    private static final class Parser {
+        private static final int OPS_PER_LEVEL = 3;   // addOp, mulOp, pending negations
+        private static final int VALUES_PER_LEVEL = 2; // sum, term
+
+        private final Cursor input;
+        private int depth;
+        private int[] ops;
+        private int[] intValues;
+        private double[] floatValues;
+
+        Parser(Cursor input) {
+            this.input = input;
+        }
+
+        void expectEnd() {
+            if (input.peek() >= 0) {
+                throw new RuntimeException("Unexpected character at position " + input.position());
+            }
+        }
+
+        // ==== Integer parsing ====
+
+        int parseExpressionInt() {
+            int sum = 0;
+            int term = 0;
+            char addOp = 0;
+            char mulOp = 0;
+            int negations = 0;
+
+            while (true) {
+                int ch = input.peek();
+                if (ch < 0) throw new RuntimeException("Unexpected end of expression");
+                if (ch == '-') {
+                    input.advance();
+                    negations++;
+                    continue;
+                }
+                if (ch == '(') {
+                    input.advance();
+                    int slot = push(addOp, mulOp, negations);
+                    if (intValues == null || slot >= intValues.length) intValues = grow(intValues, slot);
+                    intValues[slot] = sum;
+                    intValues[slot + 1] = term;
+                    addOp = 0;
+                    mulOp = 0;
+                    negations = 0;
+                    continue;
+                }
+
+                int value = parseNumberInt();
+                while (true) {
+                    // the factor is complete
+                    if ((negations & 1) != 0) value = -value;
+                    negations = 0;
+                    term = mulOp == 0 ? value : applyInt(term, mulOp, value);
+                    int next = input.peek();
+                    if (next == '*' || next == '/' || next == '%') {
+                        input.advance();
+                        mulOp = (char) next;
+                        break;
+                    }
+                    // the term is complete
+                    sum = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+                    if (next == '+' || next == '-') {
+                        input.advance();
+                        addOp = (char) next;
+                        mulOp = 0;
+                        break;
+                    }
+                    // the expression at this level is complete
+                    if (depth == 0) return sum;
+                    if (next != ')') throw new RuntimeException("Missing closing parenthesis");
+                    input.advance();
+                    value = sum;
+                    int slot = pop();
+                    addOp = (char) ops[slot];
+                    mulOp = (char) ops[slot + 1];
+                    negations = ops[slot + 2];
+                    slot = depth * VALUES_PER_LEVEL;
+                    sum = intValues[slot];
+                    term = intValues[slot + 1];
+                }
+            }
+        }
+
+        private int parseNumberInt() {
+            input.mark();
+            int digits = 0;
+            int value = 0;
+            int c;
+            while ((c = input.peek()) >= 0 && Character.isDigit(c)) {
+                value = value * 10 + Character.digit(c, 10);
+                digits++;
+                input.advance();
+            }
+
+            if (digits == 0) throw new RuntimeException("Expected number at position " + input.position());
+            if (digits > 9) {
+                // may overflow: let Integer.parseInt report it exactly as before
+                return Integer.parseInt(input.marked());
+            }
+            input.unmark();
+            return value;
+        }
+
+        private static int applyInt(int left, char op, int right) {
+            if (op == '*') return left * right;
+            if (right == 0) throw new ArithmeticException(op == '/' ? "Division by zero" : "Modulo by zero");
+            return op == '/' ? left / right : left % right;
+        }
+
+        // ==== Float parsing ====
+
+        double parseExpressionFloat() {
+            double sum = 0;
+            double term = 0;
+            char addOp = 0;
+            char mulOp = 0;
+            int negations = 0;
+
+            while (true) {
+                int ch = input.peek();
+                if (ch < 0) throw new RuntimeException("Unexpected end of expression");
+                if (ch == '-') {
+                    input.advance();
+                    negations++;
+                    continue;
+                }
+                if (ch == '(') {
+                    input.advance();
+                    int slot = push(addOp, mulOp, negations);
+                    if (floatValues == null || slot >= floatValues.length) floatValues = grow(floatValues, slot);
+                    floatValues[slot] = sum;
+                    floatValues[slot + 1] = term;
+                    addOp = 0;
+                    mulOp = 0;
+                    negations = 0;
+                    continue;
+                }
+
+                double value = parseNumberFloat();
+                while (true) {
+                    if ((negations & 1) != 0) value = -value;
+                    negations = 0;
+                    term = mulOp == 0 ? value : applyFloat(term, mulOp, value);
+                    int next = input.peek();
+                    if (next == '*' || next == '/' || next == '%') {
+                        input.advance();
+                        mulOp = (char) next;
+                        break;
+                    }
+                    sum = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+                    if (next == '+' || next == '-') {
+                        input.advance();
+                        addOp = (char) next;
+                        mulOp = 0;
+                        break;
+                    }
+                    if (depth == 0) return sum;
+                    if (next != ')') throw new RuntimeException("Missing closing parenthesis");
+                    input.advance();
+                    value = sum;
+                    int slot = pop();
+                    addOp = (char) ops[slot];
+                    mulOp = (char) ops[slot + 1];
+                    negations = ops[slot + 2];
+                    slot = depth * VALUES_PER_LEVEL;
+                    sum = floatValues[slot];
+                    term = floatValues[slot + 1];
+                }
+            }
+        }
+
+        private double parseNumberFloat() {
+            input.mark();
+            boolean any = false;
+            boolean dotSeen = false;
+            int c;
+            while ((c = input.peek()) >= 0) {
+                if (Character.isDigit(c)) {
+                    input.advance();
+                } else if (c == '.' && !dotSeen) {
+                    dotSeen = true;
+                    input.advance();
+                } else {
+                    break;
+                }
+                any = true;
+            }
+
+            if (!any) throw new RuntimeException("Expected number at position " + input.position());
+            return Double.parseDouble(input.marked());
+        }
+
+        private static double applyFloat(double left, char op, double right) {
+            if (op == '*') return left * right;
+            if (right == 0.0) throw new ArithmeticException(op == '/' ? "Division by zero" : "Modulo by zero");
+            return op == '/' ? left / right : left % right;
+        }
+
+        // ==== Parenthesis stack ====
+
+        /** Saves the pending operators of the current level; returns the value slot for it. */
+        private int push(char addOp, char mulOp, int negations) {
+            int slot = depth * OPS_PER_LEVEL;
+            if (ops == null || slot >= ops.length) ops = grow(ops, slot);
+            ops[slot] = addOp;
+            ops[slot + 1] = mulOp;
+            ops[slot + 2] = negations;
+            return depth++ * VALUES_PER_LEVEL;
+        }
+
+        /** Leaves the current level; returns the operator slot of the enclosing one. */
+        private int pop() {
+            return --depth * OPS_PER_LEVEL;
+        }
+
+        private static int[] grow(int[] array, int needed) {
+            return array == null ? new int[24] : Arrays.copyOf(array, Math.max(array.length * 2, needed + 3));
+        }
+
+        private static double[] grow(double[] array, int needed) {
+            return array == null ? new double[16] : Arrays.copyOf(array, Math.max(array.length * 2, needed + 2));
+        }
+    }
+
+    /** Characters of a normalized expression, read front to back. */
+    private abstract static class Cursor {
+        /** The current character, or -1 at the end. */
+        abstract int peek();
+
+        /** Moves past the current character. */
+        abstract void advance();
+
+        /** Index of the current character in the normalized text, for error messages. */
+        abstract int position();
+
+        /** Starts collecting the characters passed from here on (literal text). */
+        abstract void mark();
+
+        /** The characters passed since {@link #mark}; stops collecting. */
+        abstract String marked();
+
+        /** Stops collecting without building the text. */
+        abstract void unmark();
+    }
+
+    /** Cursor over a String that has already been normalized. */
+    private static final class NormalizedCursor extends Cursor {
+        private final String text;
+        private int index;
+        private int markedAt;
+
+        NormalizedCursor(String text) {
+            this.text = text;
+        }
+
+        @Override
+        int peek() {
+            return index < text.length() ? text.charAt(index) : -1;
+        }
+
+        @Override
+        void advance() {
+            index++;
+        }
+
+        @Override
+        int position() {
+            return index;
+        }
+
+        @Override
+        void mark() {
+            markedAt = index;
+        }
+
+        @Override
+        String marked() {
+            return text.substring(markedAt, index);
+        }
+
+        @Override
+        void unmark() {
+            // nothing collected: marked() is a substring
+        }
+    }
+
+    /**
+     * Normalizing cursor over raw text from a Reader or a CharSequence. It
+     * applies the rules of {@link #normalize} on the fly (spaces skipped,
+     * '*' produced between a digit or ')' and a following '('), holding only
+     * one buffer of input.
+     */
+    private static final class StreamCursor extends Cursor {
+        private static final int UNREAD = -2;
+
+        private final Reader reader;          // null when reading the sequence
+        private final CharSequence sequence;
+        private final char[] buffer;
+        private int offset;
+        private int limit;
+        private int sequenceIndex;
+        private boolean eof;
+
+        private int position;                 // index in the normalized text
+        private int previous;                 // last raw character passed
+        private boolean starPassed;           // the '*' before the next '(' was already produced
+        private int current = UNREAD;
+        private boolean currentIsStar;
+        private StringBuilder marked;
+        private boolean marking;
+
+        StreamCursor(Reader reader, CharSequence sequence) {
+            this.reader = reader;
+            this.sequence = sequence;
+            this.buffer = new char[sequence != null ? Math.min(8192, Math.max(16, sequence.length())) : 8192];
+        }
+
+        @Override
+        int peek() {
+            if (current != UNREAD) return current;
+            int c = nextRaw();
+            currentIsStar = c == '(' && !starPassed && (Character.isDigit(previous) || previous == ')');
+            current = currentIsStar ? '*' : c;
+            return current;
+        }
+
+        @Override
+        void advance() {
+            int c = peek();
+            if (c < 0) return;
+            if (marking) marked.append((char) c);
+            position++;
+            if (currentIsStar) {
+                starPassed = true; // the '(' itself is still to come
+            } else {
+                offset++;
+                previous = c;
+                starPassed = false;
+            }
+            current = UNREAD;
+        }
+
+        @Override
+        int position() {
+            return position;
+        }
+
+        @Override
+        void mark() {
+            if (marked == null) marked = new StringBuilder();
+            marked.setLength(0);
+            marking = true;
+        }
+
+        @Override
+        String marked() {
+            String text = marked.toString();
+            unmark();
+            return text;
+        }
+
+        @Override
+        void unmark() {
+            marking = false;
+            marked.setLength(0);
+        }
+
+        /** Next raw character that is not a space, without passing it; -1 at the end. */
+        private int nextRaw() {
+            while (true) {
+                if (offset == limit && !fill()) return -1;
+                char c = buffer[offset];
+                if (c != ' ') return c;
+                offset++;
+            }
+        }
+
+        private boolean fill() {
+            if (eof) return false;
+            offset = 0;
+            if (reader == null) {
+                limit = Math.min(buffer.length, sequence.length() - sequenceIndex);
+                for (int i = 0; i < limit; i++) {
+                    buffer[i] = sequence.charAt(sequenceIndex + i);
+                }
+                sequenceIndex += limit;
+            } else {
+                try {
+                    do {
+                        limit = reader.read(buffer, 0, buffer.length);
+                    } while (limit == 0);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            if (limit <= 0) {
+                limit = 0;
+                eof = true;
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /** Decodes a memory-mapped file as UTF-8, one caller buffer at a time. */
+    private static final class MappedReader extends Reader {
+        private final ByteBuffer bytes;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        private boolean done;
+
+        MappedReader(FileChannel channel) throws IOException {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Expression file is larger than 2 GB");
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        @Override
+        public int read(char[] target, int off, int len) throws IOException {
+            if (done) return -1;
+            CharBuffer out = CharBuffer.wrap(target, off, len);
+            CoderResult result = decoder.decode(bytes, out, true);
+            if (result.isError()) result.throwException(); // malformed UTF-8
+            if (result.isUnderflow()) {
+                decoder.flush(out);
+                done = true;
+            }
+            int count = out.position() - off;
+            return count == 0 && done ? -1 : count;
+        }
+
+        @Override
+        public void close() {
+            // the mapping goes away with the buffer
+        }
+    }
+
+    /**
+     * Same grammar and the same explicit-stack scan as {@link Parser}, plus
+     * identifiers, but builds an {@link ExpressionNode} tree instead of
+     * computing a value.
+     */
+    private static final class TreeParser {
+        private final String input;
+        private final boolean floatMode;
+        private final boolean exact;
+        private final String[] variables;
+        private int index;
+
+        TreeParser(String input, boolean floatMode, boolean exact, String[] variables) {
+            this.input = input;
+            this.floatMode = floatMode;
+            this.exact = exact;
+            this.variables = variables;
+        }
+
+        void expectEnd() {
+            if (index != input.length()) {
+                throw new RuntimeException("Unexpected character at position " + index);
+            }
+        }
+
+        ExpressionNode parseExpression() {
+            ArrayDeque<Level> enclosing = new ArrayDeque<>();
+            Level level = new Level();
+
+            while (true) {
+                if (index >= input.length()) throw new RuntimeException("Unexpected end of expression");
+                char ch = input.charAt(index);
+                if (ch == '-') {
+                    index++;
+                    level.negations++;
+                    continue;
+                }
+                if (ch == '(') {
+                    index++;
+                    enclosing.push(level);
+                    level = new Level();
+                    continue;
+                }
+
+                ExpressionNode node = parseOperand(ch);
+                while (true) {
+                    for (; level.negations > 0; level.negations--) {
+                        // -(-x) is x in int and float arithmetic; keeps long '-' runs from nesting the tree
+                        node = node instanceof ExpressionNode.Negate
+                                ? ((ExpressionNode.Negate) node).operand
+                                : new ExpressionNode.Negate(node);
+                    }
+                    level.term = level.mulOp == 0 ? node : new ExpressionNode.Binary(level.mulOp, level.term, node);
+                    char next = index < input.length() ? input.charAt(index) : 0;
+                    if (next == '*' || next == '/' || next == '%') {
+                        index++;
+                        level.mulOp = next;
+                        break;
+                    }
+                    level.sum = level.addOp == 0 ? level.term : new ExpressionNode.Binary(level.addOp, level.sum, level.term);
+                    if (next == '+' || next == '-') {
+                        index++;
+                        level.addOp = next;
+                        level.mulOp = 0;
+                        break;
+                    }
+                    if (enclosing.isEmpty()) return level.sum;
+                    if (next != ')') throw new RuntimeException("Missing closing parenthesis");
+                    index++;
+                    node = level.sum;
+                    level = enclosing.pop();
+                }
+            }
+        }
+
+        private ExpressionNode parseOperand(char ch) {
+            if (isIdentifierStart(ch)) {
+                int start = index;
+                while (index < input.length() && isIdentifierPart(input.charAt(index))) {
+                    index++;
+                }
+                String name = input.substring(start, index);
+                for (int slot = 0; slot < variables.length; slot++) {
+                    if (variables[slot].equals(name)) return new ExpressionNode.Variable(name, slot);
+                }
+                throw new RuntimeException("Unknown variable '" + name + "' at position " + start);
+            }
+
+            int start = index;
+            boolean dotSeen = false;
+            while (index < input.length()) {
+                char c = input.charAt(index);
+                if (Character.isDigit(c)) {
+                    index++;
+                } else if (c == '.' && floatMode && !dotSeen) {
+                    dotSeen = true;
+                    index++;
+                } else {
+                    break;
+                }
+            }
+
+            if (start == index) throw new RuntimeException("Expected number at position " + index);
+            String literal = input.substring(start, index);
+            if (floatMode || exact) {
+                // exact evaluation works from the literal text, the values are only approximations
+                double value = Double.parseDouble(literal);
+                return new ExpressionNode.Constant((int) value, value, literal);
+            }
+            int value = Integer.parseInt(literal);
+            return new ExpressionNode.Constant(value, value, literal);
+        }
+
+        /** Partial state of one parenthesis level: {@code sum addOp term mulOp (negations)}. */
+        private static final class Level {
+            ExpressionNode sum;
+            ExpressionNode term;
+            char addOp;
+            char mulOp;
+            int negations;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Immutable node of a compiled expression tree. Evaluation only reads the
+ * tree and the variable array passed in, so it does no parsing and allocates
+ * nothing.
+ */
+abstract class ExpressionNode {
+
+    abstract int evalInt(int[] vars);
+
+    abstract double evalFloat(double[] vars);
+
+    static final class Constant extends ExpressionNode {
+        final int intValue;
+        final double floatValue;
+        /** Source text of the literal, or null for constants made by folding. */
+        final String literal;
+
+        Constant(int intValue, double floatValue) {
+            this(intValue, floatValue, null);
+        }
+
+        Constant(int intValue, double floatValue, String literal) {
+            this.intValue = intValue;
+            this.floatValue = floatValue;
+            this.literal = literal;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            return intValue;
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            return floatValue;
+        }
+    }
+
+    static final class Variable extends ExpressionNode {
+        final String name;
+        final int slot;
+
+        Variable(String name, int slot) {
+            this.name = name;
+            this.slot = slot;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            return vars[slot];
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            return vars[slot];
+        }
+    }
+
+    static final class Negate extends ExpressionNode {
+        final ExpressionNode operand;
+
+        Negate(ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            return -operand.evalInt(vars);
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            return -operand.evalFloat(vars);
+        }
+    }
+
+    /**
+     * One of {@code + - * / %}, with the same zero checks as the calculators.
+     * When both operands are the same shared node (see ExpressionOptimizer)
+     * it is evaluated only once.
+     */
+    static final class Binary extends ExpressionNode {
+        final char op;
+        final ExpressionNode left;
+        final ExpressionNode right;
+
+        Binary(char op, ExpressionNode left, ExpressionNode right) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            int value = left.evalInt(vars);
+            int operand = right == left ? value : right.evalInt(vars);
+            switch (op) {
+                case '+': return value + operand;
+                case '-': return value - operand;
+                case '*': return value * operand;
+                case '/':
+                    if (operand == 0) throw new ArithmeticException("Division by zero");
+                    return value / operand;
+                default:
+                    if (operand == 0) throw new ArithmeticException("Modulo by zero");
+                    return value % operand;
+            }
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            double value = left.evalFloat(vars);
+            double operand = right == left ? value : right.evalFloat(vars);
+            switch (op) {
+                case '+': return value + operand;
+                case '-': return value - operand;
+                case '*': return value * operand;
+                case '/':
+                    if (operand == 0.0) throw new ArithmeticException("Division by zero");
+                    return value / operand;
+                default:
+                    if (operand == 0.0) throw new ArithmeticException("Modulo by zero");
+                    return value % operand;
+            }
+        }
+    }
+}
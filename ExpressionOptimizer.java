@@ -0,0 +1,168 @@
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Rewrites a {@link CompiledExpression} into an equivalent, smaller tree:
+ * <ul>
+ *   <li>constant subtrees are folded, using the expression's own int or
+ *       float arithmetic, so results are bit-for-bit the same;</li>
+ *   <li>chains of unary minus collapse ({@code --x} becomes {@code x});</li>
+ *   <li>identical subexpressions are shared, turning the tree into a DAG.
+ *       When both operands of a node are the same shared subtree, as in
+ *       {@code (a+b)*(a+b)}, it is evaluated once.</li>
+ * </ul>
+ * A constant division or modulo by zero is left in place so it still throws
+ * when evaluated, exactly as before.
+ *
+ * Not thread-safe; use one optimizer per thread.
+ */
+public final class ExpressionOptimizer {
+    private final Map<Object, ExpressionNode> canonical = new HashMap<>();
+    private boolean floatMode;
+    private int removedNodes;
+
+    public CompiledExpression optimize(CompiledExpression expression) {
+        canonical.clear();
+        floatMode = expression.isFloatMode();
+        ExpressionNode root = expression.root();
+        ExpressionNode optimized = rewrite(root);
+        removedNodes = countNodes(root) - countUniqueNodes(optimized);
+        canonical.clear();
+        return new CompiledExpression(expression.getSource(), floatMode, expression.getVariables(), optimized);
+    }
+
+    /** Nodes removed by the last {@link #optimize} call. */
+    public int getRemovedNodes() {
+        return removedNodes;
+    }
+
+    /** Number of nodes in the tree, counting a shared node once per use. */
+    static int countNodes(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Negate) {
+            return 1 + countNodes(((ExpressionNode.Negate) node).operand);
+        }
+        if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            return 1 + countNodes(binary.left) + countNodes(binary.right);
+        }
+        return 1;
+    }
+
+    /** Number of distinct node objects reachable from {@code node}. */
+    static int countUniqueNodes(ExpressionNode node) {
+        Map<ExpressionNode, Boolean> seen = new IdentityHashMap<>();
+        collect(node, seen);
+        return seen.size();
+    }
+
+    private static void collect(ExpressionNode node, Map<ExpressionNode, Boolean> seen) {
+        if (seen.put(node, Boolean.TRUE) != null) return;
+        if (node instanceof ExpressionNode.Negate) {
+            collect(((ExpressionNode.Negate) node).operand, seen);
+        } else if (node instanceof ExpressionNode.Binary) {
+            ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+            collect(binary.left, seen);
+            collect(binary.right, seen);
+        }
+    }
+
+    private ExpressionNode rewrite(ExpressionNode node) {
+        if (node instanceof ExpressionNode.Constant) {
+            ExpressionNode.Constant constant = (ExpressionNode.Constant) node;
+            return share(new Key('c', floatMode ? Double.doubleToRawLongBits(constant.floatValue) : constant.intValue, null, null), node);
+        }
+        if (node instanceof ExpressionNode.Variable) {
+            return share(new Key('v', ((ExpressionNode.Variable) node).slot, null, null), node);
+        }
+        if (node instanceof ExpressionNode.Negate) {
+            ExpressionNode operand = rewrite(((ExpressionNode.Negate) node).operand);
+            if (operand instanceof ExpressionNode.Negate) {
+                return ((ExpressionNode.Negate) operand).operand; // -(-x) == x, also for int wrap-around
+            }
+            if (operand instanceof ExpressionNode.Constant) {
+                ExpressionNode.Constant constant = (ExpressionNode.Constant) operand;
+                return constant(-constant.intValue, -constant.floatValue);
+            }
+            return share(new Key('-', 0, operand, null), new ExpressionNode.Negate(operand));
+        }
+
+        ExpressionNode.Binary binary = (ExpressionNode.Binary) node;
+        ExpressionNode left = rewrite(binary.left);
+        ExpressionNode right = rewrite(binary.right);
+        if (left instanceof ExpressionNode.Constant && right instanceof ExpressionNode.Constant) {
+            ExpressionNode folded = fold(binary.op, (ExpressionNode.Constant) left, (ExpressionNode.Constant) right);
+            if (folded != null) return folded;
+        }
+        return share(new Key(binary.op, 0, left, right), new ExpressionNode.Binary(binary.op, left, right));
+    }
+
+    /** Folds {@code left op right}, or returns null when it must throw at evaluation time. */
+    private ExpressionNode fold(char op, ExpressionNode.Constant left, ExpressionNode.Constant right) {
+        if (floatMode) {
+            double a = left.floatValue;
+            double b = right.floatValue;
+            if ((op == '/' || op == '%') && b == 0.0) return null;
+            double value;
+            switch (op) {
+                case '+': value = a + b; break;
+                case '-': value = a - b; break;
+                case '*': value = a * b; break;
+                case '/': value = a / b; break;
+                default: value = a % b; break;
+            }
+            return constant((int) value, value);
+        }
+        int a = left.intValue;
+        int b = right.intValue;
+        if ((op == '/' || op == '%') && b == 0) return null;
+        int value;
+        switch (op) {
+            case '+': value = a + b; break;
+            case '-': value = a - b; break;
+            case '*': value = a * b; break;
+            case '/': value = a / b; break;
+            default: value = a % b; break;
+        }
+        return constant(value, value);
+    }
+
+    private ExpressionNode constant(int intValue, double floatValue) {
+        long bits = floatMode ? Double.doubleToRawLongBits(floatValue) : intValue;
+        return share(new Key('c', bits, null, null), new ExpressionNode.Constant(intValue, floatValue));
+    }
+
+    private ExpressionNode share(Key key, ExpressionNode node) {
+        ExpressionNode existing = canonical.putIfAbsent(key, node);
+        return existing != null ? existing : node;
+    }
+
+    /** Structural identity of a node whose children are already canonical. */
+    private static final class Key {
+        final char type;
+        final long value;
+        final ExpressionNode left;
+        final ExpressionNode right;
+
+        Key(char type, long value, ExpressionNode left, ExpressionNode right) {
+            this.type = type;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return type == other.type && value == other.value && left == other.left && right == other.right;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = type * 31 + Long.hashCode(value);
+            h = h * 31 + System.identityHashCode(left);
+            return h * 31 + System.identityHashCode(right);
+        }
+    }
+}
@@ -0,0 +1,629 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * An expression that is edited in place, for live editing where the text
+ * changes one keystroke at a time.
+ *
+ * The text is kept as a tree of parenthesized groups. Each group holds its
+ * tokens in packed arrays, like {@link TokenBuffer} (numbers already
+ * converted to values, operators, spaces, child groups), and caches its own
+ * value. An edit finds the innermost group that contains it, re-tokenizes
+ * only the tokens it touches and splices them in. Only that group and its
+ * ancestors are marked dirty, so the next evaluation re-runs just that path
+ * as one pass over cached values per level; nothing else is re-parsed or
+ * re-evaluated. An edit that unbalances the parentheses of the span it
+ * touches rebuilds the whole tree once.
+ *
+ * Each group keeps the offsets of its entries, computed lazily and dropped
+ * only from the first entry an edit moves, so finding the entries under an
+ * edit is a binary search per level. The text is a gap buffer left at the
+ * last edit: an edit next to the previous one moves only the characters in
+ * between. What remains linear is splicing the entry arrays of the edited
+ * group (a block copy of the entries after the edit) and re-evaluating the
+ * groups on the dirty path, one pass over each.
+ *
+ * Results are those of {@link ExpressionEngine#evaluateInt} and
+ * {@link ExpressionEngine#evaluateFloat} on {@link #getText()}. While the
+ * text is not a valid expression (or a division by zero is reached) the
+ * evaluation is handed to the engine, so the exception and its message are
+ * exactly the ones the engine throws.
+ *
+ * Not thread-safe.
+ */
+public final class IncrementalExpression {
+    private static final ExpressionEngine ENGINE = new ExpressionEngine();
+
+    private static final byte NUMBER = 0;
+    private static final byte SPACE = 1;
+    private static final byte OPERATOR = 2;
+    private static final byte OTHER = 3;
+    private static final byte GROUP = 4;
+
+    private static final byte INT_VALID = 1;
+    private static final byte FLOAT_VALID = 2;
+    private static final byte ENDS_WITH_DIGIT = 4;
+
+    private final boolean floatMode;
+    private final GapBuffer text;
+    private Group root;
+    private int lastReparsed;
+
+    public IncrementalExpression(String text, boolean floatMode) {
+        this.floatMode = floatMode;
+        this.text = new GapBuffer(text);
+        rebuild();
+    }
+
+    /** Replaces the characters in [start, end) with {@code replacement}, like StringBuilder.replace. */
+    public void edit(int start, int end, String replacement) {
+        if (start < 0 || end > text.length() || start > end) {
+            throw new IndexOutOfBoundsException("Edit [" + start + ", " + end + ") outside 0.." + text.length());
+        }
+
+        // innermost group whose content (between its parentheses) contains the edit:
+        // the child holding the character before the edit, if the edit also ends inside it
+        Group group = root;
+        int base = 0;
+        while (start > base) {
+            int k = group.firstEndingAfter(start - base - 1);
+            if (k == group.size || group.kinds[k] != GROUP) break;
+            int pos = base + group.offset(k);
+            if (end >= pos + group.length(k)) break;
+            group.editedEntry = k;
+            group = group.children[k];
+            base = pos + 1;
+        }
+
+        // the group's entries touched by the edit, widened over neighbouring numbers and spaces,
+        // which may merge with the new text ("1 2" is the number 12)
+        int first = group.firstEndingAfter(start - base - 1);
+        int last = group.firstStartingAfter(end - base) - 1;
+        int spanStart = first < group.size ? base + group.offset(first) : start;
+        int spanEnd = last >= 0 ? base + group.offset(last) + group.length(last) : end;
+        while (first > 0 && group.isMergeable(first - 1)) {
+            first--;
+            spanStart -= group.length(first);
+        }
+        while (last >= 0 && last + 1 < group.size && group.isMergeable(last + 1)) {
+            last++;
+            spanEnd += group.length(last);
+        }
+
+        String span = text.substring(spanStart, start) + replacement + text.substring(end, spanEnd);
+        text.replace(start, end, replacement);
+
+        Group replaced = tokenize(span, true);
+        if (replaced == null) {
+            rebuild(); // parentheses no longer pair up inside the span
+            return;
+        }
+        lastReparsed = span.length();
+        int delta = group.replace(first, Math.max(first, last + 1), replaced);
+        for (Group g = group.parent; g != null; g = g.parent) {
+            g.contentLength += delta;
+            g.invalidateOffsets(g.editedEntry + 1); // the entries after the edited child moved
+        }
+        group.markDirty();
+    }
+
+    public void insert(int offset, String inserted) {
+        edit(offset, offset, inserted);
+    }
+
+    public void delete(int start, int end) {
+        edit(start, end, "");
+    }
+
+    public String getText() {
+        return text.toString();
+    }
+
+    public boolean isFloatMode() {
+        return floatMode;
+    }
+
+    /** Number of characters re-tokenized by the last edit (the whole text after a rebuild). */
+    public int getLastReparsedChars() {
+        return lastReparsed;
+    }
+
+    public int evaluateInt() {
+        if (floatMode) throw new IllegalStateException("Expression is in float mode");
+        if (evaluate(root)) return root.intValue;
+        return ENGINE.evaluateInt(text.toString()); // throws the engine's own error
+    }
+
+    public double evaluateFloat() {
+        if (!floatMode) throw new IllegalStateException("Expression is in integer mode");
+        if (evaluate(root)) return root.floatValue;
+        return ENGINE.evaluateFloat(text.toString());
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    /**
+     * The characters of the text with a gap at the last edit, so edits
+     * close together move only the characters between them.
+     */
+    private static final class GapBuffer {
+        private char[] chars;
+        private int gapStart;
+        private int gapEnd;
+
+        GapBuffer(String text) {
+            chars = new char[Math.max(16, text.length() * 2)];
+            text.getChars(0, text.length(), chars, 0);
+            gapStart = text.length();
+            gapEnd = chars.length;
+        }
+
+        int length() {
+            return chars.length - (gapEnd - gapStart);
+        }
+
+        void replace(int start, int end, String replacement) {
+            moveGap(start);
+            gapEnd += end - start;
+            int added = replacement.length();
+            if (gapEnd - gapStart < added) {
+                int length = length();
+                char[] grown = new char[Math.max(chars.length * 2, length + added + 16)];
+                int tail = chars.length - gapEnd;
+                System.arraycopy(chars, 0, grown, 0, gapStart);
+                System.arraycopy(chars, gapEnd, grown, grown.length - tail, tail);
+                gapEnd = grown.length - tail;
+                chars = grown;
+            }
+            replacement.getChars(0, added, chars, gapStart);
+            gapStart += added;
+        }
+
+        String substring(int start, int end) {
+            if (end <= gapStart) return new String(chars, start, end - start);
+            int gap = gapEnd - gapStart;
+            if (start >= gapStart) return new String(chars, start + gap, end - start);
+            return new String(chars, start, gapStart - start) + new String(chars, gapEnd, end - gapStart);
+        }
+
+        private void moveGap(int at) {
+            if (at < gapStart) {
+                int moved = gapStart - at;
+                System.arraycopy(chars, at, chars, gapEnd - moved, moved);
+                gapStart = at;
+                gapEnd -= moved;
+            } else if (at > gapStart) {
+                int moved = at - gapStart;
+                System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+                gapStart = at;
+                gapEnd += moved;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, length());
+        }
+    }
+
+    private void rebuild() {
+        root = tokenize(text.toString(), false);
+        lastReparsed = text.length();
+    }
+
+    /** Evaluates the dirty groups under {@code top}, children before parents; false if it failed. */
+    private boolean evaluate(Group top) {
+        ArrayDeque<Group> pending = new ArrayDeque<>();
+        if (top.dirty) pending.push(top);
+        while (!pending.isEmpty()) {
+            Group group = pending.peek();
+            Group child = group.nextDirtyChild();
+            if (child != null) {
+                pending.push(child);
+                continue;
+            }
+            pending.pop();
+            if (floatMode) group.evaluateFloat();
+            else group.evaluateInt();
+            group.dirty = false;
+        }
+        return !top.failed;
+    }
+
+    /**
+     * Splits {@code s} into tokens and groups. With {@code strict}, returns
+     * null when the parentheses do not pair up; otherwise an unmatched
+     * parenthesis becomes an OTHER token, which makes evaluation fall back
+     * to the engine.
+     */
+    private static Group tokenize(String s, boolean strict) {
+        Group holder = new Group();
+        Group current = holder;
+        ArrayDeque<Group> open = new ArrayDeque<>();
+        int i = 0;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == ' ') {
+                int j = i;
+                while (j < s.length() && s.charAt(j) == ' ') j++;
+                current.addToken(SPACE, j - i, (char) 0);
+                i = j;
+            } else if (Character.isDigit(c) || c == '.') {
+                int j = i;
+                while (j < s.length() && (Character.isDigit(s.charAt(j)) || s.charAt(j) == '.' || s.charAt(j) == ' ')) j++;
+                while (s.charAt(j - 1) == ' ') j--; // trailing spaces are not part of the number
+                current.addNumber(s.substring(i, j));
+                i = j;
+            } else if (c == '(') {
+                open.push(current);
+                current = new Group();
+                i++;
+            } else if (c == ')') {
+                if (open.isEmpty()) {
+                    if (strict) return null;
+                    current.addToken(OTHER, 1, c);
+                } else {
+                    Group closed = current;
+                    current = open.pop();
+                    current.addGroup(closed);
+                }
+                i++;
+            } else {
+                boolean operator = c == '+' || c == '-' || c == '*' || c == '/' || c == '%';
+                current.addToken(operator ? OPERATOR : OTHER, 1, c);
+                i++;
+            }
+        }
+        while (!open.isEmpty()) {
+            if (strict) return null;
+            Group unclosed = current;
+            current = open.pop();
+            current.addToken(OTHER, 1, '(');
+            current.replace(current.size, current.size, unclosed);
+        }
+        return holder;
+    }
+
+    /**
+     * A parenthesized group (or the whole text, for the root): its entries in
+     * parallel arrays, and its cached value.
+     */
+    private static final class Group {
+        Group parent;
+        int size;
+        byte[] kinds = new byte[8];
+        int[] lengths = new int[8];
+        char[] ops = new char[8];
+        byte[] flags = new byte[8];
+        int[] intValues = new int[8];
+        double[] floatValues = new double[8];
+        Group[] children = new Group[8];
+        int contentLength;
+        /** Start of each entry within the content; only the first {@code validOffsets} are current. */
+        int[] offsets = new int[8];
+        int validOffsets;
+        /** The entry the last edit descended into, while the edit updates the ancestors. */
+        int editedEntry;
+
+        boolean dirty = true;
+        boolean failed;
+        int intValue;
+        double floatValue;
+        /** Children that turned dirty since this group was last evaluated (some may since be detached). */
+        final ArrayList<Group> dirtyChildren = new ArrayList<>();
+
+        /** Source length of entry k; a child group counts its parentheses. */
+        int length(int k) {
+            return kinds[k] == GROUP ? children[k].contentLength + 2 : lengths[k];
+        }
+
+        /** Start of entry k within the content, computing the offsets up to it as needed. */
+        int offset(int k) {
+            while (validOffsets <= k) {
+                int v = validOffsets++;
+                offsets[v] = v == 0 ? 0 : offsets[v - 1] + length(v - 1);
+            }
+            return offsets[k];
+        }
+
+        /** The first entry ending after content position {@code pos}, that is holding it; size if none. */
+        int firstEndingAfter(int pos) {
+            while (validOffsets < size && (validOffsets == 0 || offsets[validOffsets - 1] <= pos)) {
+                offset(validOffsets);
+            }
+            int lo = 0;
+            int hi = validOffsets;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (offsets[mid] + length(mid) > pos) hi = mid;
+                else lo = mid + 1;
+            }
+            return lo;
+        }
+
+        /** The first entry starting after content position {@code pos}; size if none. */
+        int firstStartingAfter(int pos) {
+            while (validOffsets < size && (validOffsets == 0 || offsets[validOffsets - 1] <= pos)) {
+                offset(validOffsets);
+            }
+            int lo = 0;
+            int hi = validOffsets;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (offsets[mid] > pos) hi = mid;
+                else lo = mid + 1;
+            }
+            return lo;
+        }
+
+        void invalidateOffsets(int from) {
+            if (from < validOffsets) validOffsets = from;
+        }
+
+        boolean isMergeable(int k) {
+            return kinds[k] == NUMBER || kinds[k] == SPACE;
+        }
+
+        void addToken(byte kind, int length, char op) {
+            int k = grow(1, size);
+            kinds[k] = kind;
+            lengths[k] = length;
+            ops[k] = op;
+            contentLength += length;
+        }
+
+        /** A run of digits and dots, possibly with spaces inside; parsed the way the engine would. */
+        void addNumber(String raw) {
+            int k = grow(1, size);
+            kinds[k] = NUMBER;
+            lengths[k] = raw.length();
+            contentLength += raw.length();
+            String digits = raw.indexOf(' ') < 0 ? raw : raw.replace(" ", "");
+            int dots = 0;
+            for (int i = 0; i < digits.length(); i++) {
+                if (digits.charAt(i) == '.') dots++;
+            }
+            byte flag = Character.isDigit(digits.charAt(digits.length() - 1)) ? ENDS_WITH_DIGIT : 0;
+            try {
+                if (dots == 0) {
+                    intValues[k] = Integer.parseInt(digits);
+                    flag |= INT_VALID;
+                }
+            } catch (NumberFormatException e) {
+                // left to the engine, which reports it
+            }
+            try {
+                if (dots <= 1) {
+                    floatValues[k] = Double.parseDouble(digits);
+                    flag |= FLOAT_VALID;
+                }
+            } catch (NumberFormatException e) {
+                // same
+            }
+            flags[k] = flag;
+        }
+
+        void addGroup(Group child) {
+            int k = grow(1, size);
+            kinds[k] = GROUP;
+            children[k] = child;
+            attach(child);
+            contentLength += child.contentLength + 2;
+        }
+
+        /**
+         * Replaces entries [from, to) with all entries of {@code source};
+         * returns the change in source length, already applied to this
+         * group. Lengths of ancestors are the caller's business.
+         */
+        int replace(int from, int to, Group source) {
+            int delta = source.contentLength;
+            for (int k = from; k < to; k++) {
+                delta -= length(k);
+                if (kinds[k] == GROUP) children[k].parent = null; // detached: skipped if still listed as dirty
+            }
+            int oldSize = size;
+            int tail = size - to;
+            int at = grow(source.size - (to - from), from);
+            System.arraycopy(kinds, to, kinds, at + source.size, tail);
+            System.arraycopy(lengths, to, lengths, at + source.size, tail);
+            System.arraycopy(ops, to, ops, at + source.size, tail);
+            System.arraycopy(flags, to, flags, at + source.size, tail);
+            System.arraycopy(intValues, to, intValues, at + source.size, tail);
+            System.arraycopy(floatValues, to, floatValues, at + source.size, tail);
+            System.arraycopy(children, to, children, at + source.size, tail);
+            System.arraycopy(source.kinds, 0, kinds, at, source.size);
+            System.arraycopy(source.lengths, 0, lengths, at, source.size);
+            System.arraycopy(source.ops, 0, ops, at, source.size);
+            System.arraycopy(source.flags, 0, flags, at, source.size);
+            System.arraycopy(source.intValues, 0, intValues, at, source.size);
+            System.arraycopy(source.floatValues, 0, floatValues, at, source.size);
+            System.arraycopy(source.children, 0, children, at, source.size);
+            for (int k = at; k < at + source.size; k++) {
+                if (kinds[k] == GROUP) attach(children[k]);
+            }
+            for (int k = size; k < oldSize; k++) {
+                children[k] = null; // shrunk: drop stale references past the end
+            }
+            invalidateOffsets(from);
+            contentLength += delta;
+            return delta;
+        }
+
+        /**
+         * Makes room for {@code added} more entries (negative to shrink) and
+         * sets the new size; returns {@code at}. Entries from {@code at} on
+         * are moved by the caller.
+         */
+        private int grow(int added, int at) {
+            int newSize = size + added;
+            if (newSize > kinds.length) {
+                int capacity = Math.max(newSize, kinds.length * 2);
+                kinds = Arrays.copyOf(kinds, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                ops = Arrays.copyOf(ops, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                intValues = Arrays.copyOf(intValues, capacity);
+                floatValues = Arrays.copyOf(floatValues, capacity);
+                children = Arrays.copyOf(children, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+            }
+            size = newSize;
+            return at;
+        }
+
+        private void attach(Group child) {
+            child.parent = this;
+            if (child.dirty) dirtyChildren.add(child);
+        }
+
+        /** Marks this group and its clean ancestors dirty; a dirty group is always listed in its parent. */
+        void markDirty() {
+            for (Group g = this; g != null && !g.dirty; g = g.parent) {
+                g.dirty = true;
+                if (g.parent != null) g.parent.dirtyChildren.add(g);
+            }
+        }
+
+        Group nextDirtyChild() {
+            while (!dirtyChildren.isEmpty()) {
+                Group child = dirtyChildren.remove(dirtyChildren.size() - 1);
+                if (child.parent == this && child.dirty) return child;
+            }
+            return null;
+        }
+
+        /**
+         * Same operator handling as the engine's parser, over cached token
+         * and child values; anything the engine would reject marks the group
+         * failed.
+         */
+        void evaluateInt() {
+            failed = true;
+            int sum = 0;
+            int term = 0;
+            char addOp = 0;
+            char mulOp = 0;
+            int negations = 0;
+            boolean expectOperand = true;
+            boolean implicitTimes = false; // a following '(' multiplies
+
+            for (int k = 0; k < size; k++) {
+                byte kind = kinds[k];
+                int value;
+                if (kind == SPACE) continue;
+                if (kind == GROUP) {
+                    Group child = children[k];
+                    if (child.failed) return;
+                    if (!expectOperand) {
+                        if (!implicitTimes) return;
+                        mulOp = '*';
+                    }
+                    value = child.intValue;
+                    implicitTimes = true;
+                } else if (expectOperand) {
+                    if (kind == OPERATOR && ops[k] == '-') {
+                        negations++;
+                        continue;
+                    }
+                    if (kind != NUMBER || (flags[k] & INT_VALID) == 0) return;
+                    value = intValues[k];
+                    implicitTimes = (flags[k] & ENDS_WITH_DIGIT) != 0;
+                } else {
+                    if (kind != OPERATOR) return;
+                    char op = ops[k];
+                    if (op == '+' || op == '-') {
+                        sum = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+                        addOp = op;
+                        mulOp = 0;
+                    } else {
+                        mulOp = op;
+                    }
+                    expectOperand = true;
+                    continue;
+                }
+
+                if ((negations & 1) != 0) value = -value;
+                negations = 0;
+                if (mulOp == 0) {
+                    term = value;
+                } else if (mulOp == '*') {
+                    term *= value;
+                } else {
+                    if (value == 0) return; // the engine reports which one
+                    term = mulOp == '/' ? term / value : term % value;
+                }
+                expectOperand = false;
+            }
+            if (expectOperand) return;
+            intValue = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+            failed = false;
+        }
+
+        void evaluateFloat() {
+            failed = true;
+            double sum = 0;
+            double term = 0;
+            char addOp = 0;
+            char mulOp = 0;
+            int negations = 0;
+            boolean expectOperand = true;
+            boolean implicitTimes = false;
+
+            for (int k = 0; k < size; k++) {
+                byte kind = kinds[k];
+                double value;
+                if (kind == SPACE) continue;
+                if (kind == GROUP) {
+                    Group child = children[k];
+                    if (child.failed) return;
+                    if (!expectOperand) {
+                        if (!implicitTimes) return;
+                        mulOp = '*';
+                    }
+                    value = child.floatValue;
+                    implicitTimes = true;
+                } else if (expectOperand) {
+                    if (kind == OPERATOR && ops[k] == '-') {
+                        negations++;
+                        continue;
+                    }
+                    if (kind != NUMBER || (flags[k] & FLOAT_VALID) == 0) return;
+                    value = floatValues[k];
+                    implicitTimes = (flags[k] & ENDS_WITH_DIGIT) != 0;
+                } else {
+                    if (kind != OPERATOR) return;
+                    char op = ops[k];
+                    if (op == '+' || op == '-') {
+                        sum = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+                        addOp = op;
+                        mulOp = 0;
+                    } else {
+                        mulOp = op;
+                    }
+                    expectOperand = true;
+                    continue;
+                }
+
+                if ((negations & 1) != 0) value = -value;
+                negations = 0;
+                if (mulOp == 0) {
+                    term = value;
+                } else if (mulOp == '*') {
+                    term *= value;
+                } else {
+                    if (value == 0.0) return;
+                    term = mulOp == '/' ? term / value : term % value;
+                }
+                expectOperand = false;
+            }
+            if (expectOperand) return;
+            floatValue = addOp == 0 ? term : addOp == '+' ? sum + term : sum - term;
+            failed = false;
+        }
+    }
+}
@@ -0,0 +1,556 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * {@link EmployeeStore} in one local file, for running without MySQL.
+ *
+ * The file is an append-only log of records, memory-mapped for reading and
+ * writing: an insert or update appends the employee's full row, a delete
+ * appends a tombstone. An in-memory index maps each live id to the offset
+ * of its latest row, so a lookup is one map probe plus decoding that row,
+ * and a listing walks the index in id order.
+ *
+ * Every record carries its length and a CRC-32C of its contents, and the
+ * length is written last. On open the log is replayed up to the first
+ * record that is incomplete or fails its checksum, which is where a crash
+ * interrupted the last append; everything after it is discarded. Writes
+ * reach the OS page cache at once, so they survive the process dying; pass
+ * {@code syncEachWrite} to also force each one to disk, which survives
+ * power loss at the price of a disk flush per write.
+ *
+ * Overwritten rows and tombstones are garbage. When garbage exceeds both the
+ * live data and {@code compactMinBytes}, the live rows are copied in id order
+ * to a new file which then atomically replaces the old one, and the
+ * directory is synced so the rename itself survives power loss; a crash
+ * part-way leaves the old file in place. The old file stays open and mapped
+ * until the new one has replaced it, so a compaction that fails leaves the
+ * store as it was. A failed automatic compaction does not fail the write
+ * that started it: it is reported on System.err, counted, and not retried
+ * until garbage has doubled. Windows cannot replace a file that is mapped,
+ * so there every compaction fails this way and the log only grows.
+ *
+ * Generated ids continue from the highest id in the log, like
+ * AUTO_INCREMENT after a restart. With the FX schema
+ * ({@code createTableIfNotExists(false)}) emails are unique, ignoring case
+ * as MySQL's default collation does. Violations are reported as
+ * {@link SQLIntegrityConstraintViolationException} with SQLState 23000, and
+ * over-long values with SQLState 22001, as MySQL would.
+ *
+ * Instances are thread-safe. Only one instance may have a file open: each
+ * holds an exclusive lock on it, and opening a file that another instance,
+ * in this process or another, has locked fails with an IOException instead
+ * of two stores appending over each other's records.
+ */
+public final class LogEmployeeStore implements EmployeeStore {
+    public static final long DEFAULT_COMPACT_MIN_BYTES = 1 << 20;
+
+    private static final int MAGIC = 0x454D504C; // "EMPL"
+    private static final short VERSION = 1;
+    /** magic, version, flags, 8 reserved bytes */
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAGS_OFFSET = 6;
+    private static final short FLAG_CREATED = 1;
+    private static final short FLAG_UNIQUE_EMAIL = 2;
+
+    /** length of the body, CRC-32C of the body */
+    private static final int RECORD_HEADER = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int INITIAL_MAP_SIZE = 1 << 20;
+
+    private final Path file;
+    private final boolean syncEachWrite;
+    private final long compactMinBytes;
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    /** Where the next record goes; everything from here on is zero. */
+    private int end;
+    private short flags;
+
+    /** Live id to the offset of its latest PUT. */
+    private TreeMap<Integer, Integer> index = new TreeMap<>();
+    /** Lower-cased email to the id that has it. */
+    private final Map<String, Integer> emails = new HashMap<>();
+    private int maxId;
+    /** Bytes of the records the index points to. */
+    private long liveBytes;
+    private long discardedBytes;
+    private long compactions;
+    private long compactionFailures;
+    // Garbage below this after a failed compaction does not retry it
+    private long retryGarbageBytes;
+    private boolean closed;
+
+    public LogEmployeeStore(Path file) throws IOException {
+        this(file, false, DEFAULT_COMPACT_MIN_BYTES);
+    }
+
+    public LogEmployeeStore(Path file, boolean syncEachWrite, long compactMinBytes) throws IOException {
+        this.file = file;
+        this.syncEachWrite = syncEachWrite;
+        this.compactMinBytes = compactMinBytes;
+        open();
+    }
+
+    // ==== EmployeeStore ====
+
+    @Override
+    public synchronized void createTableIfNotExists(boolean generatedIds) throws SQLException {
+        checkOpen();
+        if ((flags & FLAG_CREATED) != 0) return;
+        flags = (short) (FLAG_CREATED | (generatedIds ? 0 : FLAG_UNIQUE_EMAIL));
+        map.putShort(FLAGS_OFFSET, flags);
+        if (syncEachWrite) map.force(0, HEADER_SIZE);
+    }
+
+    @Override
+    public synchronized void insert(String name, String email, double salary) throws SQLException {
+        checkOpen();
+        if (maxId == Integer.MAX_VALUE) throw new SQLException("Out of generated ids", "22003");
+        int id = maxId + 1;
+        checkRow(id, name, email);
+        put(id, name, email, salary);
+    }
+
+    @Override
+    public synchronized void insert(int id, String name, String email, double salary) throws SQLException {
+        checkOpen();
+        if (index.containsKey(id)) {
+            throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + id + "' for key 'PRIMARY'", "23000");
+        }
+        checkRow(id, name, email);
+        put(id, name, email, salary);
+    }
+
+    @Override
+    public synchronized boolean update(int id, String name, String email, double salary) throws SQLException {
+        checkOpen();
+        if (!index.containsKey(id)) return false;
+        checkRow(id, name, email);
+        put(id, name, email, salary);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean updateSalary(int id, double salary) throws SQLException {
+        checkOpen();
+        Integer offset = index.get(id);
+        if (offset == null) return false;
+        Row row = decode(offset);
+        put(id, row.name, row.email, salary);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean delete(int id) throws SQLException {
+        checkOpen();
+        if (!index.containsKey(id)) return false;
+        ByteBuffer body = ByteBuffer.allocate(5);
+        body.put(DELETE).putInt(id);
+        append(body.array());
+        return true;
+    }
+
+    @Override
+    public synchronized boolean exists(int id) throws SQLException {
+        checkOpen();
+        return index.containsKey(id);
+    }
+
+    @Override
+    public synchronized <T> T findById(int id, Mapper<T> mapper) throws SQLException {
+        checkOpen();
+        Integer offset = index.get(id);
+        if (offset == null) return null;
+        Row row = decode(offset);
+        return mapper.map(id, row.name, row.email, row.salary);
+    }
+
+    @Override
+    public synchronized int readPage(boolean first, int afterId, int limit, EmployeePager.RowHandler handler)
+            throws SQLException {
+        checkOpen();
+        Map<Integer, Integer> from = first ? index : index.tailMap(afterId, false);
+        int rows = 0;
+        for (Iterator<Map.Entry<Integer, Integer>> it = from.entrySet().iterator(); rows < limit && it.hasNext(); ) {
+            Map.Entry<Integer, Integer> entry = it.next();
+            Row row = decode(entry.getValue());
+            handler.row(entry.getKey(), row.name, row.email, row.salary);
+            rows++;
+        }
+        return rows;
+    }
+
+    /** Forces outstanding writes to disk and closes the file. */
+    @Override
+    public synchronized void close() throws SQLException {
+        if (closed) return;
+        closed = true;
+        try {
+            map.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new SQLException("Could not close " + file, "58030", e);
+        }
+    }
+
+    // ==== Maintenance and statistics ====
+
+    /** Rewrites the file with only the live rows. Runs by itself when garbage dominates. */
+    public synchronized void compact() throws SQLException {
+        checkOpen();
+        try {
+            rewrite();
+        } catch (IOException e) {
+            throw new SQLException("Compaction of " + file + " failed", "58030", e);
+        }
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /** Bytes of log in use, header included. */
+    public synchronized long getLogBytes() {
+        return end;
+    }
+
+    /** Bytes of overwritten rows and tombstones, reclaimed by the next compaction. */
+    public synchronized long getGarbageBytes() {
+        return end - HEADER_SIZE - liveBytes;
+    }
+
+    /** Bytes dropped when the file was opened because the last append had not completed. */
+    public synchronized long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    /** Automatic compactions that failed; the writes that started them did not. */
+    public synchronized long getCompactionFailureCount() {
+        return compactionFailures;
+    }
+
+    /** One-line summary, e.g. for a log. */
+    public synchronized String statistics() {
+        return String.format("employees=%d log=%,dB garbage=%,dB compactions=%d (%d failed) discarded=%dB",
+                index.size(), (long) end, getGarbageBytes(), compactions, compactionFailures, discardedBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "LogEmployeeStore[" + file + ", " + statistics() + "]";
+    }
+
+    // ==== Writing ====
+
+    private void checkOpen() throws SQLException {
+        if (closed) throw new SQLException("Employee store " + file + " is closed", "08003");
+    }
+
+    private void checkRow(int id, String name, String email) throws SQLException {
+        if (name == null) throw new SQLIntegrityConstraintViolationException("Column 'name' cannot be null", "23000");
+        if (name.length() > MAX_TEXT_LENGTH) throw new SQLException("Data too long for column 'name'", "22001");
+        if (email == null) return;
+        if (email.length() > MAX_TEXT_LENGTH) throw new SQLException("Data too long for column 'email'", "22001");
+        if ((flags & FLAG_UNIQUE_EMAIL) != 0) {
+            Integer owner = emails.get(email.toLowerCase(Locale.ROOT));
+            if (owner != null && owner != id) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Duplicate entry '" + email + "' for key 'email'", "23000");
+            }
+        }
+    }
+
+    private void put(int id, String name, String email, double salary) throws SQLException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] emailBytes = email == null ? null : email.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(1 + 4 + 8 + 2 + nameBytes.length + 2
+                + (emailBytes == null ? 0 : emailBytes.length));
+        body.put(PUT).putInt(id).putDouble(salary);
+        body.putShort((short) nameBytes.length).put(nameBytes);
+        if (emailBytes == null) {
+            body.putShort((short) -1);
+        } else {
+            body.putShort((short) emailBytes.length).put(emailBytes);
+        }
+        append(body.array());
+    }
+
+    private void append(byte[] body) throws SQLException {
+        int size = RECORD_HEADER + body.length;
+        try {
+            ensureCapacity(size);
+        } catch (IOException e) {
+            throw new SQLException("Could not grow " + file, "58030", e);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        int offset = end;
+        map.put(offset + RECORD_HEADER, body);
+        map.putInt(offset + 4, (int) crc.getValue());
+        map.putInt(offset, body.length); // last: a record without its length is not there
+        if (syncEachWrite) map.force(offset, size);
+        end += size;
+        apply(offset);
+        long garbage = getGarbageBytes();
+        if (garbage > liveBytes && garbage >= compactMinBytes && garbage >= retryGarbageBytes) {
+            // the record is written; a failure from here on is the compaction's, not the caller's
+            try {
+                rewrite();
+                retryGarbageBytes = 0;
+            } catch (IOException e) {
+                compactionFailures++;
+                retryGarbageBytes = garbage * 2;
+                System.err.println("Compaction of " + file + " failed, retrying at "
+                        + retryGarbageBytes + " bytes of garbage: " + e);
+            }
+        }
+    }
+
+    /** Updates the index for the record at {@code offset}, which is valid. */
+    private void apply(int offset) {
+        int size = RECORD_HEADER + map.getInt(offset);
+        byte type = map.get(offset + RECORD_HEADER);
+        int id = map.getInt(offset + RECORD_HEADER + 1);
+        maxId = Math.max(maxId, id);
+        Integer old = type == PUT ? index.put(id, offset) : index.remove(id);
+        if (old != null) {
+            liveBytes -= RECORD_HEADER + map.getInt(old);
+            String oldEmail = decode(old).email;
+            if (oldEmail != null) emails.remove(oldEmail.toLowerCase(Locale.ROOT), id);
+        }
+        if (type == PUT) {
+            liveBytes += size;
+            String email = decode(offset).email;
+            if (email != null) emails.put(email.toLowerCase(Locale.ROOT), id);
+        }
+    }
+
+    private void ensureCapacity(int size) throws IOException, SQLException {
+        if ((long) end + size <= map.capacity()) return;
+        long capacity = map.capacity();
+        while (capacity < (long) end + size) capacity *= 2;
+        if (capacity > Integer.MAX_VALUE) {
+            compact(); // the only way to make room
+            if ((long) end + size > Integer.MAX_VALUE) throw new SQLException("Employee store " + file + " is full", "53100");
+            capacity = Integer.MAX_VALUE;
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    // ==== Reading ====
+
+    private static final class Row {
+        final String name;
+        final String email;
+        final double salary;
+
+        Row(String name, String email, double salary) {
+            this.name = name;
+            this.email = email;
+            this.salary = salary;
+        }
+    }
+
+    private Row decode(int offset) {
+        int position = offset + RECORD_HEADER + 1 + 4;
+        double salary = map.getDouble(position);
+        position += 8;
+        int nameLength = map.getShort(position) & 0xFFFF;
+        String name = string(position + 2, nameLength);
+        position += 2 + nameLength;
+        short emailLength = map.getShort(position);
+        String email = emailLength < 0 ? null : string(position + 2, emailLength & 0xFFFF);
+        return new Row(name, email, salary);
+    }
+
+    private String string(int position, int length) {
+        byte[] bytes = new byte[length];
+        map.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==== Opening, recovery and compaction ====
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock(channel);
+        Files.deleteIfExists(compactionFile()); // an interrupted compaction; the log itself is intact
+        long size = channel.size();
+        if (size > 0) checkHeader(size); // before mapping, which would grow the file
+        long capacity = INITIAL_MAP_SIZE;
+        while (capacity < size) capacity *= 2;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+        if (size == 0) {
+            map.putInt(0, MAGIC);
+            map.putShort(4, VERSION);
+            map.putShort(FLAGS_OFFSET, (short) 0);
+            map.force(0, HEADER_SIZE);
+        }
+        flags = map.getShort(FLAGS_OFFSET);
+        end = HEADER_SIZE;
+        recover((int) Math.max(size, HEADER_SIZE));
+    }
+
+    /** Locks the whole file until {@code target} is closed, or closes it and fails if someone else holds the lock. */
+    private void lock(FileChannel target) throws IOException {
+        FileLock lock;
+        try {
+            lock = target.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // held through another channel of this process
+        }
+        if (lock == null) {
+            target.close();
+            throw new IOException(file + " is already open in another employee store");
+        }
+    }
+
+    private void checkHeader(long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // read it all
+        }
+        String problem = null;
+        if (size > Integer.MAX_VALUE) problem = " is too large to map";
+        else if (size < HEADER_SIZE || header.getInt(0) != MAGIC) problem = " is not an employee store";
+        else if (header.getShort(4) != VERSION) problem = " has unsupported version " + header.getShort(4);
+        if (problem != null) {
+            channel.close();
+            throw new IOException(file + problem);
+        }
+    }
+
+    /** Replays the log up to the first record that is not complete and intact, and zeroes the rest. */
+    private void recover(int fileSize) {
+        CRC32C crc = new CRC32C();
+        while (end + RECORD_HEADER <= fileSize) {
+            int length = map.getInt(end);
+            if (length < 5 || (long) end + RECORD_HEADER + length > fileSize) break;
+            ByteBuffer body = map.duplicate();
+            body.limit(end + RECORD_HEADER + length).position(end + RECORD_HEADER);
+            crc.reset();
+            crc.update(body);
+            if ((int) crc.getValue() != map.getInt(end + 4)) break;
+            byte type = map.get(end + RECORD_HEADER);
+            if (type != PUT && type != DELETE) break;
+            apply(end);
+            end += RECORD_HEADER + length;
+        }
+        // zero whatever follows, so records appended from here are not followed by stale ones
+        int i = end;
+        for (; i + 8 <= fileSize; i += 8) {
+            if (map.getLong(i) != 0) {
+                discardedBytes += 8;
+                map.putLong(i, 0);
+            }
+        }
+        for (; i < fileSize; i++) {
+            if (map.get(i) != 0) {
+                discardedBytes++;
+                map.put(i, (byte) 0);
+            }
+        }
+        if (discardedBytes > 0) map.force();
+    }
+
+    private Path compactionFile() {
+        return file.resolveSibling(file.getFileName() + ".compact");
+    }
+
+    /**
+     * Copies the live rows in id order to a new file and swaps it in. Until
+     * the rename succeeds the old file stays open and mapped, so a failure
+     * up to there deletes the new file and leaves the store as it was.
+     */
+    private void rewrite() throws IOException {
+        Path target = compactionFile();
+        TreeMap<Integer, Integer> moved = new TreeMap<>();
+        FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer next;
+        int position = HEADER_SIZE;
+        try {
+            lock(out); // held on from the rename on, when this becomes the file others would open
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            buffer.putInt(MAGIC).putShort(VERSION).putShort(flags).putLong(0);
+            for (Map.Entry<Integer, Integer> entry : index.entrySet()) {
+                int offset = entry.getValue();
+                int size = RECORD_HEADER + map.getInt(offset);
+                if (buffer.remaining() < size) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                    buffer = ByteBuffer.allocate(Math.max(buffer.capacity(), size));
+                }
+                ByteBuffer record = map.duplicate();
+                record.limit(offset + size).position(offset);
+                buffer.put(record);
+                moved.put(entry.getKey(), position);
+                position += size;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(true);
+            long capacity = INITIAL_MAP_SIZE;
+            while (capacity < position * 2L) capacity *= 2;
+            next = out.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(capacity, Integer.MAX_VALUE));
+            // fails on Windows, where neither file can be replaced while mapped
+            Files.move(target, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                out.close();
+                Files.deleteIfExists(target);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        FileChannel old = channel;
+        channel = out;
+        map = next;
+        index = moved;
+        end = position;
+        compactions++;
+        try {
+            old.close(); // its file is already unlinked
+        } finally {
+            syncDirectory();
+        }
+    }
+
+    /** Makes a rename in the log's directory durable. */
+    private void syncDirectory() throws IOException {
+        FileChannel directory;
+        try {
+            directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Windows cannot open a directory; NTFS journals the rename itself
+        }
+        try (directory) {
+            directory.force(true);
+        }
+    }
+}
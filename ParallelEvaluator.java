@@ -0,0 +1,385 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates one large {@link CompiledExpression} on the threads of a
+ * {@link ForkJoinPool}.
+ *
+ * The tree is planned once: runs of operators of the same precedence, such
+ * as the terms of a long sum, are flattened into chains, and any subtree
+ * smaller than the threshold stays an ordinary tree. When evaluating, the
+ * operands of a chain are split by size into fork/join tasks, and their
+ * values are then combined strictly left to right. So float results are
+ * bit-for-bit those of {@link CompiledExpression#evaluateFloat} (the
+ * additions happen in the same order), int arithmetic wraps as usual, and
+ * when several operands fail the exception is the one sequential evaluation
+ * throws first. A tree smaller than the threshold is evaluated on the
+ * calling thread without touching the pool.
+ *
+ * Chains are iterated rather than recursed into, so a sum of many thousands
+ * of terms does not need one stack frame per term.
+ *
+ * Instances are immutable; scratch arrays are allocated per call, so an
+ * evaluator can be shared between threads.
+ */
+public final class ParallelEvaluator {
+    /** Subtree size, in nodes, below which evaluation stays on one thread. */
+    public static final int DEFAULT_THRESHOLD = 2048;
+
+    private final CompiledExpression expression;
+    private final ForkJoinPool pool;
+    private final Plan root;
+
+    /** Splits at {@link #DEFAULT_THRESHOLD} nodes and runs on the common pool. */
+    public ParallelEvaluator(CompiledExpression expression) {
+        this(expression, DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+    }
+
+    public ParallelEvaluator(CompiledExpression expression, int threshold, ForkJoinPool pool) {
+        if (threshold < 1) throw new IllegalArgumentException("Threshold must be positive: " + threshold);
+        this.expression = expression;
+        this.pool = pool;
+        this.root = new PlanBuilder(threshold).build(expression.root());
+    }
+
+    public int evaluateInt(int... values) {
+        if (expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in float mode");
+        checkArity(values.length);
+        if (root instanceof Leaf) return ((Leaf) root).node.evalInt(values);
+        Root task = new Root(root, values, null);
+        pool.invoke(task);
+        if (task.failure != null) throw task.failure;
+        return task.intResult;
+    }
+
+    public double evaluateFloat(double... values) {
+        if (!expression.isFloatMode()) throw new IllegalStateException("Expression was compiled in integer mode");
+        checkArity(values.length);
+        if (root instanceof Leaf) return ((Leaf) root).node.evalFloat(values);
+        Root task = new Root(root, null, values);
+        pool.invoke(task);
+        if (task.failure != null) throw task.failure;
+        return task.floatResult;
+    }
+
+    /** False when the whole tree is below the threshold and is evaluated sequentially. */
+    public boolean isParallel() {
+        return !(root instanceof Leaf);
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+
+    private void checkArity(int count) {
+        String[] variables = expression.getVariables();
+        if (count != variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " values for "
+                    + Arrays.toString(variables) + " but got " + count);
+        }
+    }
+
+    // ==== Plan ====
+
+    private abstract static class Plan {
+        /** Nodes evaluated, counting a shared node once per use. */
+        final long size;
+
+        Plan(long size) {
+            this.size = size;
+        }
+
+        abstract int evalInt(int[] vars);
+
+        abstract double evalFloat(double[] vars);
+    }
+
+    /** A subtree below the threshold, evaluated sequentially. */
+    private static final class Leaf extends Plan {
+        final ExpressionNode node;
+
+        Leaf(ExpressionNode node, long size) {
+            super(size);
+            this.node = node;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            return node.evalInt(vars);
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            return node.evalFloat(vars);
+        }
+    }
+
+    private static final class Negate extends Plan {
+        final Plan operand;
+
+        Negate(Plan operand) {
+            super(operand.size + 1);
+            this.operand = operand;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            return -operand.evalInt(vars);
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            return -operand.evalFloat(vars);
+        }
+    }
+
+    /**
+     * {@code ((operands[0] ops[1] operands[1]) ops[2] operands[2]) ...}, with
+     * all operators of one precedence. The operands run as tasks; the fold
+     * is sequential so the operation order is the tree's.
+     */
+    private static final class Chain extends Plan {
+        final char[] ops;
+        final Plan[] operands;
+        /** ends[i] is the total size of operands[0..i); used to split evenly. */
+        final long[] ends;
+        final int threshold;
+
+        Chain(char[] ops, Plan[] operands, int threshold) {
+            super(total(operands) + operands.length - 1);
+            this.ops = ops;
+            this.operands = operands;
+            this.threshold = threshold;
+            this.ends = new long[operands.length + 1];
+            for (int i = 0; i < operands.length; i++) {
+                ends[i + 1] = ends[i] + operands[i].size;
+            }
+        }
+
+        private static long total(Plan[] operands) {
+            long total = 0;
+            for (Plan operand : operands) total += operand.size;
+            return total;
+        }
+
+        @Override
+        int evalInt(int[] vars) {
+            int[] values = new int[operands.length];
+            RuntimeException[] failures = new RuntimeException[operands.length];
+            new Operands(this, vars, values, null, null, failures, 0, operands.length).invoke();
+            if (failures[0] != null) throw failures[0];
+            int value = values[0];
+            for (int i = 1; i < operands.length; i++) {
+                if (failures[i] != null) throw failures[i];
+                int operand = values[i];
+                switch (ops[i]) {
+                    case '+': value += operand; break;
+                    case '-': value -= operand; break;
+                    case '*': value *= operand; break;
+                    case '/':
+                        if (operand == 0) throw new ArithmeticException("Division by zero");
+                        value /= operand;
+                        break;
+                    default:
+                        if (operand == 0) throw new ArithmeticException("Modulo by zero");
+                        value %= operand;
+                        break;
+                }
+            }
+            return value;
+        }
+
+        @Override
+        double evalFloat(double[] vars) {
+            double[] values = new double[operands.length];
+            RuntimeException[] failures = new RuntimeException[operands.length];
+            new Operands(this, null, null, vars, values, failures, 0, operands.length).invoke();
+            if (failures[0] != null) throw failures[0];
+            double value = values[0];
+            for (int i = 1; i < operands.length; i++) {
+                if (failures[i] != null) throw failures[i];
+                double operand = values[i];
+                switch (ops[i]) {
+                    case '+': value += operand; break;
+                    case '-': value -= operand; break;
+                    case '*': value *= operand; break;
+                    case '/':
+                        if (operand == 0.0) throw new ArithmeticException("Division by zero");
+                        value /= operand;
+                        break;
+                    default:
+                        if (operand == 0.0) throw new ArithmeticException("Modulo by zero");
+                        value %= operand;
+                        break;
+                }
+            }
+            return value;
+        }
+    }
+
+    // ==== Tasks ====
+
+    /**
+     * Evaluates operands[from..to) of a chain, splitting the range in two by
+     * size while it is above the threshold. A failing operand is recorded and
+     * ends its range: the fold throws at the first failure anyway.
+     */
+    private static final class Operands extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Chain chain;
+        private final int[] intVars;
+        private final int[] intValues;
+        private final double[] floatVars;
+        private final double[] floatValues;
+        private final RuntimeException[] failures;
+        private final int from;
+        private final int to;
+
+        Operands(Chain chain, int[] intVars, int[] intValues, double[] floatVars, double[] floatValues,
+                 RuntimeException[] failures, int from, int to) {
+            this.chain = chain;
+            this.intVars = intVars;
+            this.intValues = intValues;
+            this.floatVars = floatVars;
+            this.floatValues = floatValues;
+            this.failures = failures;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            long[] ends = chain.ends;
+            if (to - from > 1 && ends[to] - ends[from] >= chain.threshold) {
+                int mid = split(ends, from, to);
+                invokeAll(new Operands(chain, intVars, intValues, floatVars, floatValues, failures, from, mid),
+                        new Operands(chain, intVars, intValues, floatVars, floatValues, failures, mid, to));
+                return;
+            }
+            Plan[] operands = chain.operands;
+            for (int i = from; i < to; i++) {
+                boolean repeated = i > from && operands[i] == operands[i - 1]; // (a+b)*(a+b): once
+                try {
+                    if (intValues != null) {
+                        intValues[i] = repeated ? intValues[i - 1] : operands[i].evalInt(intVars);
+                    } else {
+                        floatValues[i] = repeated ? floatValues[i - 1] : operands[i].evalFloat(floatVars);
+                    }
+                } catch (RuntimeException e) {
+                    failures[i] = e;
+                    return;
+                }
+            }
+        }
+
+        /** The index in (from, to) that best halves the total size. */
+        private static int split(long[] ends, int from, int to) {
+            long half = (ends[from] + ends[to]) / 2;
+            int index = Arrays.binarySearch(ends, from + 1, to, half);
+            if (index < 0) index = -index - 1;
+            return Math.max(from + 1, Math.min(to - 1, index));
+        }
+    }
+
+    /**
+     * Runs the plan inside the pool. Failures are kept rather than thrown so
+     * the caller gets the original exception: the pool would rethrow a copy
+     * without the message.
+     */
+    private static final class Root extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Plan plan;
+        private final int[] intVars;
+        private final double[] floatVars;
+        int intResult;
+        double floatResult;
+        RuntimeException failure;
+
+        Root(Plan plan, int[] intVars, double[] floatVars) {
+            this.plan = plan;
+            this.intVars = intVars;
+            this.floatVars = floatVars;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                if (intVars != null) intResult = plan.evalInt(intVars);
+                else floatResult = plan.evalFloat(floatVars);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+
+    // ==== Planning ====
+
+    private static final class PlanBuilder {
+        private final int threshold;
+        private final Map<ExpressionNode, Plan> built = new IdentityHashMap<>();
+
+        PlanBuilder(int threshold) {
+            this.threshold = threshold;
+        }
+
+        Plan build(ExpressionNode node) {
+            Plan plan = built.get(node);
+            if (plan == null) {
+                plan = create(node);
+                built.put(node, plan);
+            }
+            return plan;
+        }
+
+        private Plan create(ExpressionNode node) {
+            Plan plan;
+            if (node instanceof ExpressionNode.Binary) {
+                plan = chain((ExpressionNode.Binary) node);
+            } else if (node instanceof ExpressionNode.Negate) {
+                plan = new Negate(build(((ExpressionNode.Negate) node).operand));
+            } else {
+                return new Leaf(node, 1);
+            }
+            return plan.size < threshold ? new Leaf(node, plan.size) : plan;
+        }
+
+        /** Walks down the left spine while the operators keep the precedence of {@code top}. */
+        private Plan chain(ExpressionNode.Binary top) {
+            boolean additive = isAdditive(top.op);
+            List<ExpressionNode> rights = new ArrayList<>();
+            StringBuilder ops = new StringBuilder();
+            ExpressionNode current = top;
+            while (current instanceof ExpressionNode.Binary) {
+                ExpressionNode.Binary binary = (ExpressionNode.Binary) current;
+                // a node whose operands are one shared subtree stays whole so it is evaluated once
+                if (isAdditive(binary.op) != additive || (binary.left == binary.right && binary != top)) break;
+                ops.append(binary.op);
+                rights.add(binary.right);
+                current = binary.left;
+                if (binary.left == binary.right) break;
+            }
+
+            int count = rights.size() + 1;
+            Plan[] operands = new Plan[count];
+            char[] chainOps = new char[count];
+            operands[0] = build(current);
+            for (int i = 1; i < count; i++) {
+                operands[i] = build(rights.get(count - 1 - i));
+                chainOps[i] = ops.charAt(count - 1 - i);
+            }
+            return new Chain(chainOps, operands, threshold);
+        }
+
+        private static boolean isAdditive(char op) {
+            return op == '+' || op == '-';
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import java.util.Arrays;
+
+/**
+ * Packed token stream for the token-based calculators: token kinds in an
+ * {@code int[]}, literal values pre-parsed into {@code long[]} and
+ * {@code double[]}, and source offsets for error messages. The parsers walk
+ * it by index, so tokenizing and parsing create no per-token objects.
+ *
+ * Tokenizing works on the raw input: spaces are skipped (also inside
+ * numbers, as replaceAll(" ", "") did) and the implicit '*' before '(' is
+ * emitted as a STAR token, so the token sequence is the same one the old
+ * String-based tokenizers produced.
+ */
+final class TokenBuffer {
+    static final int NUMBER = 0;
+    static final int PLUS = 1;
+    static final int MINUS = 2;
+    static final int STAR = 3;
+    static final int SLASH = 4;
+    static final int PERCENT = 5;
+    static final int LPAREN = 6;
+    static final int RPAREN = 7;
+    static final int OTHER = 8;
+
+    /** Marks a literal that is not a valid int (has a dot or is too long). */
+    private static final long NOT_AN_INT = Long.MIN_VALUE;
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1.0;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10.0;
+        }
+    }
+
+    private String source;
+    private int[] kinds;
+    private long[] intValues;
+    private double[] floatValues;
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 8);
+        kinds = new int[capacity];
+        intValues = new long[capacity];
+        floatValues = new double[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    static TokenBuffer tokenize(String expr) {
+        TokenBuffer buffer = new TokenBuffer(expr.length() + 1);
+        buffer.reset(expr);
+        return buffer;
+    }
+
+    /** Re-tokenizes {@code expr} into this buffer, reusing its arrays. */
+    void reset(String expr) {
+        source = expr;
+        size = 0;
+        char prev = 0;
+        int i = 0;
+        while (i < expr.length()) {
+            char c = expr.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                i = scanNumber(expr, i);
+                prev = expr.charAt(ends[size - 1] - 1);
+                continue;
+            }
+            if (c == '(' && (Character.isDigit(prev) || prev == ')')) {
+                add(STAR, i, i); // implicit multiplication
+            }
+            add(kindOf(c), i, i + 1);
+            prev = c;
+            i++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    int kind(int i) {
+        return kinds[i];
+    }
+
+    /**
+     * The token as an int literal. Anything else goes through
+     * Integer.parseInt on the token text, so it fails with the same
+     * NumberFormatException the String tokens did.
+     */
+    int intValue(int i) {
+        long value = intValues[i];
+        if (kinds[i] == NUMBER && value != NOT_AN_INT && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return Integer.parseInt(text(i));
+    }
+
+    /** The token as a double literal; same fallback rules as {@link #intValue}. */
+    double floatValue(int i) {
+        double value = floatValues[i];
+        if (kinds[i] == NUMBER && !Double.isNaN(value)) {
+            return value;
+        }
+        return Double.parseDouble(text(i));
+    }
+
+    /** Token text, as the old tokenizers would have produced it. Only used on error paths. */
+    String text(int i) {
+        if (starts[i] == ends[i]) return "*";
+        return source.substring(starts[i], ends[i]).replace(" ", "");
+    }
+
+    private int scanNumber(String expr, int i) {
+        int start = i;
+        int end = i;
+        boolean dotSeen = false;
+        boolean anyDigit = false;
+        boolean exact = true; // fits the fast double path
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = 0;
+        while (i < expr.length()) {
+            char c = expr.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (Character.isDigit(c)) {
+                int d = Character.digit(c, 10);
+                anyDigit = true;
+                if (c > '9') exact = false; // non-ASCII digit: leave it to the parse methods
+                if (digitCount < 18) {
+                    digits = digits * 10 + d;
+                    if (digits != 0) digitCount++;
+                } else {
+                    exact = false;
+                    digitCount++;
+                }
+                if (dotSeen) fractionDigits++;
+            } else if (c == '.' && !dotSeen) {
+                dotSeen = true;
+            } else {
+                break;
+            }
+            i++;
+            end = i;
+        }
+
+        add(NUMBER, start, end);
+        int t = size - 1;
+        intValues[t] = dotSeen || digitCount > 10 ? NOT_AN_INT : digits;
+        if (exact && digitCount <= 15 && fractionDigits < POWERS_OF_TEN.length && anyDigit) {
+            // at most 15 significant digits and an exact power of ten: one correctly rounded division
+            floatValues[t] = digits / POWERS_OF_TEN[fractionDigits];
+        } else {
+            try {
+                floatValues[t] = Double.parseDouble(text(t));
+            } catch (NumberFormatException e) {
+                floatValues[t] = Double.NaN; // rethrown by floatValue() if the parser gets here
+            }
+        }
+        return end;
+    }
+
+    private static int kindOf(char c) {
+        switch (c) {
+            case '+': return PLUS;
+            case '-': return MINUS;
+            case '*': return STAR;
+            case '/': return SLASH;
+            case '%': return PERCENT;
+            case '(': return LPAREN;
+            case ')': return RPAREN;
+            default: return OTHER;
+        }
+    }
+
+    private void add(int kind, int start, int end) {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            intValues = Arrays.copyOf(intValues, capacity);
+            floatValues = Arrays.copyOf(floatValues, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[size] = kind;
+        intValues[size] = 0;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+}
@@ -1,11 +1,16 @@
-import java.util.ArrayList;
 import java.util.Scanner;
 
 public class calaculatorwithArrayList {
-    private static ArrayList<String> tokens;
-    private static int index;
     private static boolean isFloatMode;
 
+    // Index-based cursor over a packed token buffer.
+    private final TokenBuffer tokens;
+    private int pos;
+
+    private calaculatorwithArrayList(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
 
@@ -15,82 +20,65 @@ public class calaculatorwithArrayList {
         isFloatMode = (mode == 2);
 
         System.out.println("Enter a mathematical expression:");
-        String rawInput = scanner.nextLine().replaceAll(" ", "");
-        rawInput = insertImplicitMultiplication(rawInput);
-
-        tokens = tokenize(rawInput);
-        index = 0;
+        String rawInput = scanner.nextLine();
 
         try {
             if (isFloatMode) {
-                double result = parseExpressionFloat();
-                if (index != tokens.size()) {
-                    throw new RuntimeException("Unexpected token at position " + index);
-                }
+                double result = evaluateFloat(rawInput);
                 System.out.println("Result: " + result);
             } else {
-                int result = parseExpressionInt();
-                if (index != tokens.size()) {
-                    throw new RuntimeException("Unexpected token at position " + index);
-                }
+                int result = evaluateInt(rawInput);
                 System.out.println("Result: " + result);
             }
         } catch (RuntimeException e) {
             System.out.println("Invalid expression: " + e.getMessage());
         }
+
     }
 
-    private static String insertImplicitMultiplication(String expr) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < expr.length(); i++) {
-            char current = expr.charAt(i);
-            sb.append(current);
-            if (i < expr.length() - 1) {
-                char next = expr.charAt(i + 1);
-                if ((Character.isDigit(current) || current == ')') && next == '(') {
-                    sb.append('*');
-                }
-            }
-        }
-        return sb.toString();
+    // Each evaluation gets its own parser instance, so these are safe to call concurrently.
+
+    static int evaluateInt(String expression) {
+        calaculatorwithArrayList parser = new calaculatorwithArrayList(TokenBuffer.tokenize(expression));
+        int result = parser.parseExpressionInt();
+        parser.expectEnd();
+        return result;
     }
 
-    private static ArrayList<String> tokenize(String expr) {
-        ArrayList<String> tokens = new ArrayList<>();
-        int i = 0;
-        while (i < expr.length()) {
-            char c = expr.charAt(i);
-
-            if (Character.isDigit(c) || c == '.') {
-                StringBuilder number = new StringBuilder();
-                boolean dotSeen = false;
-                while (i < expr.length() && (Character.isDigit(expr.charAt(i)) || (!dotSeen && expr.charAt(i) == '.'))) {
-                    if (expr.charAt(i) == '.') dotSeen = true;
-                    number.append(expr.charAt(i));
-                    i++;
-                }
-                tokens.add(number.toString());
-            } else {
-                tokens.add(String.valueOf(c));
-                i++;
-            }
+    static double evaluateFloat(String expression) {
+        calaculatorwithArrayList parser = new calaculatorwithArrayList(TokenBuffer.tokenize(expression));
+        double result = parser.parseExpressionFloat();
+        parser.expectEnd();
+        return result;
+    }
+
+    private void expectEnd() {
+        if (pos != tokens.size()) {
+            throw new RuntimeException("Unexpected token at position " + pos);
         }
-        return tokens;
+    }
+
+    private boolean isEmpty() {
+        return pos >= tokens.size();
+    }
+
+    private int peek() {
+        return tokens.kind(pos);
     }
 
     // Integer parsing methods: parseExpressionInt(), parseTermInt(), parseFactorInt()
-    // Use tokens.get(index) instead of input.charAt(index)
-    // Advance index accordingly.
+    // Use tokens.kind(pos) instead of input.charAt(index)
+    // Advance pos accordingly.
 
-    private static int parseExpressionInt() {
+    private int parseExpressionInt() {
         int value = parseTermInt();
-        while (index < tokens.size()) {
-            String op = tokens.get(index);
-            if (op.equals("+")) {
-                index++;
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
                 value += parseTermInt();
-            } else if (op.equals("-")) {
-                index++;
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
                 value -= parseTermInt();
             } else {
                 break;
@@ -99,20 +87,20 @@ public class calaculatorwithArrayList {
         return value;
     }
 
-    private static int parseTermInt() {
+    private int parseTermInt() {
         int value = parseFactorInt();
-        while (index < tokens.size()) {
-            String op = tokens.get(index);
-            if (op.equals("*")) {
-                index++;
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
                 value *= parseFactorInt();
-            } else if (op.equals("/")) {
-                index++;
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
                 int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                index++;
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
                 int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
@@ -123,46 +111,46 @@ public class calaculatorwithArrayList {
         return value;
     }
 
-    private static int parseFactorInt() {
-        if (index >= tokens.size()) throw new RuntimeException("Unexpected end of expression");
+    private int parseFactorInt() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
 
-        String token = tokens.get(index);
+        int token = tokens.kind(pos);
 
-        if (token.equals("-")) {
-            index++;
+        if (token == TokenBuffer.MINUS) {
+            pos++;
             return -parseFactorInt();
         }
 
-        if (token.equals("(")) {
-            index++;
+        if (token == TokenBuffer.LPAREN) {
+            pos++;
             int value = parseExpressionInt();
-            if (index >= tokens.size() || !tokens.get(index).equals(")")) {
+            if (isEmpty() || tokens.kind(pos) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
-            index++;
+            pos++;
             return value;
         }
 
         try {
-            int value = Integer.parseInt(token);
-            index++;
+            int value = tokens.intValue(pos);
+            pos++;
             return value;
         } catch (NumberFormatException e) {
-            throw new RuntimeException("Expected number but found '" + token + "' at position " + index);
+            throw new RuntimeException("Expected number but found '" + tokens.text(pos) + "' at position " + pos);
         }
     }
 
     // Float parsing methods (similar changes as Integer parsing)
 
-    private static double parseExpressionFloat() {
+    private double parseExpressionFloat() {
         double value = parseTermFloat();
-        while (index < tokens.size()) {
-            String op = tokens.get(index);
-            if (op.equals("+")) {
-                index++;
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
                 value += parseTermFloat();
-            } else if (op.equals("-")) {
-                index++;
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
                 value -= parseTermFloat();
             } else {
                 break;
@@ -171,20 +159,20 @@ public class calaculatorwithArrayList {
         return value;
     }
 
-    private static double parseTermFloat() {
+    private double parseTermFloat() {
         double value = parseFactorFloat();
-        while (index < tokens.size()) {
-            String op = tokens.get(index);
-            if (op.equals("*")) {
-                index++;
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
                 value *= parseFactorFloat();
-            } else if (op.equals("/")) {
-                index++;
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
                 double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                index++;
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
                 double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
@@ -195,32 +183,32 @@ public class calaculatorwithArrayList {
         return value;
     }
 
-    private static double parseFactorFloat() {
-        if (index >= tokens.size()) throw new RuntimeException("Unexpected end of expression");
+    private double parseFactorFloat() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
 
-        String token = tokens.get(index);
+        int token = tokens.kind(pos);
 
-        if (token.equals("-")) {
-            index++;
+        if (token == TokenBuffer.MINUS) {
+            pos++;
             return -parseFactorFloat();
         }
 
-        if (token.equals("(")) {
-            index++;
+        if (token == TokenBuffer.LPAREN) {
+            pos++;
             double value = parseExpressionFloat();
-            if (index >= tokens.size() || !tokens.get(index).equals(")")) {
+            if (isEmpty() || tokens.kind(pos) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
-            index++;
+            pos++;
             return value;
         }
 
         try {
-            double value = Double.parseDouble(token);
-            index++;
+            double value = tokens.floatValue(pos);
+            pos++;
             return value;
         } catch (NumberFormatException e) {
-            throw new RuntimeException("Expected number but found '" + token + "' at position " + index);
+            throw new RuntimeException("Expected number but found '" + tokens.text(pos) + "' at position " + pos);
         }
     }
 }
@@ -1,94 +1,80 @@
-import java.util.LinkedList;
 import java.util.Scanner;
 
 public class calculatorwithLL {
-    private static LinkedList<String> tokens;
     private static boolean isFloatMode;
 
+    // Parse cursor over a packed token buffer; polling a token just advances pos.
+    private final TokenBuffer tokens;
+    private int pos;
+
+    private calculatorwithLL(TokenBuffer tokens) {
+        this.tokens = tokens;
+    }
+
     public static void main(String[] args) {
         Scanner scanner = new Scanner(System.in);
+
         System.out.println("Choose mode:\n1. Integer\n2. Float");
         int mode = scanner.nextInt();
         scanner.nextLine();  // consume newline
         isFloatMode = (mode == 2);
 
         System.out.println("Enter a mathematical expression:");
-        String rawInput = scanner.nextLine().replaceAll(" ", "");
-        rawInput = insertImplicitMultiplication(rawInput);
-
-        tokens = tokenize(rawInput);
+        String rawInput = scanner.nextLine();
 
         try {
             if (isFloatMode) {
-                double result = parseExpressionFloat();
-                if (!tokens.isEmpty()) {
-                    throw new RuntimeException("Unexpected token: " + tokens.peek());
-                }
+                double result = evaluateFloat(rawInput);
                 System.out.println("Result: " + result);
             } else {
-                int result = parseExpressionInt();
-                if (!tokens.isEmpty()) {
-                    throw new RuntimeException("Unexpected token: " + tokens.peek());
-                }
+                int result = evaluateInt(rawInput);
                 System.out.println("Result: " + result);
             }
         } catch (RuntimeException e) {
             System.out.println("Invalid expression: " + e.getMessage());
         }
-       
+
     }
-    
-
-    private static String insertImplicitMultiplication(String expr) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < expr.length(); i++) {
-            char current = expr.charAt(i);
-            sb.append(current);
-            if (i < expr.length() - 1) {
-                char next = expr.charAt(i + 1);
-                if ((Character.isDigit(current) || current == ')') && next == '(') {
-                    sb.append('*');
-                }
-            }
-        }
-        return sb.toString();
-        
+
+    static int evaluateInt(String expression) {
+        calculatorwithLL parser = new calculatorwithLL(TokenBuffer.tokenize(expression));
+        int result = parser.parseExpressionInt();
+        parser.expectEnd();
+        return result;
     }
 
-    private static LinkedList<String> tokenize(String expr) {
-        LinkedList<String> tokens = new LinkedList<>();
-        int i = 0;
-        while (i < expr.length()) {
-            char c = expr.charAt(i);
-
-            if (Character.isDigit(c) || c == '.') {
-                StringBuilder number = new StringBuilder();
-                boolean dotSeen = false;
-                while (i < expr.length() && (Character.isDigit(expr.charAt(i)) || (!dotSeen && expr.charAt(i) == '.'))) {
-                    if (expr.charAt(i) == '.') dotSeen = true;
-                    number.append(expr.charAt(i));
-                    i++;
-                }
-                tokens.add(number.toString());
-            } else {
-                tokens.add(String.valueOf(c));
-                i++;
-            }
+    static double evaluateFloat(String expression) {
+        calculatorwithLL parser = new calculatorwithLL(TokenBuffer.tokenize(expression));
+        double result = parser.parseExpressionFloat();
+        parser.expectEnd();
+        return result;
+    }
+
+    private void expectEnd() {
+        if (!isEmpty()) {
+            throw new RuntimeException("Unexpected token: " + tokens.text(pos));
         }
-        return tokens;
+    }
+
+    private boolean isEmpty() {
+        return pos >= tokens.size();
+    }
+
+    private int peek() {
+        return tokens.kind(pos);
     }
 
     // === Integer parsing ===
 
-    private static int parseExpressionInt() {
+    private int parseExpressionInt() {
         int value = parseTermInt();
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("+")) {
-                tokens.poll();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
                 value += parseTermInt();
-            } else if (op.equals("-")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
                 value -= parseTermInt();
             } else {
                 break;
@@ -97,20 +83,20 @@ public class calculatorwithLL {
         return value;
     }
 
-    private static int parseTermInt() {
+    private int parseTermInt() {
         int value = parseFactorInt();
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("*")) {
-                tokens.poll();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
                 value *= parseFactorInt();
-            } else if (op.equals("/")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
                 int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
                 int divisor = parseFactorInt();
                 if (divisor == 0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
@@ -121,41 +107,40 @@ public class calculatorwithLL {
         return value;
     }
 
-    private static int parseFactorInt() {
-        if (tokens.isEmpty()) throw new RuntimeException("Unexpected end of expression");
+    private int parseFactorInt() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
+        int token = pos++;
 
-        String token = tokens.poll();
-
-        if (token.equals("-")) {
+        if (tokens.kind(token) == TokenBuffer.MINUS) {
             return -parseFactorInt();
         }
 
-        if (token.equals("(")) {
+        if (tokens.kind(token) == TokenBuffer.LPAREN) {
             int value = parseExpressionInt();
-            if (tokens.isEmpty() || !tokens.poll().equals(")")) {
+            if (isEmpty() || tokens.kind(pos++) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
             return value;
         }
 
         try {
-            return Integer.parseInt(token);
+            return tokens.intValue(token);
         } catch (NumberFormatException e) {
-            throw new RuntimeException("Expected number but found '" + token + "'");
+            throw new RuntimeException("Expected number but found '" + tokens.text(token) + "'");
         }
     }
 
     //Float
 
-    private static double parseExpressionFloat() {
+    private double parseExpressionFloat() {
         double value = parseTermFloat();
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("+")) {
-                tokens.poll();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.PLUS) {
+                pos++;
                 value += parseTermFloat();
-            } else if (op.equals("-")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.MINUS) {
+                pos++;
                 value -= parseTermFloat();
             } else {
                 break;
@@ -164,20 +149,20 @@ public class calculatorwithLL {
         return value;
     }
 
-    private static double parseTermFloat() {
+    private double parseTermFloat() {
         double value = parseFactorFloat();
-        while (!tokens.isEmpty()) {
-            String op = tokens.peek();
-            if (op.equals("*")) {
-                tokens.poll();
+        while (!isEmpty()) {
+            int op = peek();
+            if (op == TokenBuffer.STAR) {
+                pos++;
                 value *= parseFactorFloat();
-            } else if (op.equals("/")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.SLASH) {
+                pos++;
                 double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Division by zero");
                 value /= divisor;
-            } else if (op.equals("%")) {
-                tokens.poll();
+            } else if (op == TokenBuffer.PERCENT) {
+                pos++;
                 double divisor = parseFactorFloat();
                 if (divisor == 0.0) throw new ArithmeticException("Modulo by zero");
                 value %= divisor;
@@ -188,29 +173,26 @@ public class calculatorwithLL {
         return value;
     }
 
-    private static double parseFactorFloat() {
-        if (tokens.isEmpty()) throw new RuntimeException("Unexpected end of expression");
-
-        String token = tokens.poll();
+    private double parseFactorFloat() {
+        if (isEmpty()) throw new RuntimeException("Unexpected end of expression");
+        int token = pos++;
 
-        if (token.equals("-")) {
+        if (tokens.kind(token) == TokenBuffer.MINUS) {
             return -parseFactorFloat();
         }
 
-        if (token.equals("(")) {
+        if (tokens.kind(token) == TokenBuffer.LPAREN) {
             double value = parseExpressionFloat();
-            if (tokens.isEmpty() || !tokens.poll().equals(")")) {
+            if (isEmpty() || tokens.kind(pos++) != TokenBuffer.RPAREN) {
                 throw new RuntimeException("Missing closing parenthesis");
             }
             return value;
         }
 
         try {
-            return Double.parseDouble(token);
+            return tokens.floatValue(token);
         } catch (NumberFormatException e) {
-            throw new RuntimeException("Expected number but found '" + token + "'");
-            
+            throw new RuntimeException("Expected number but found '" + tokens.text(token) + "'");
         }
-        
     }
 }
@@ -0,0 +1,123 @@
+package jmh;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The calculator implementations head to head on the same inputs, in int
+ * and float mode. Run with allocation figures:
+ *
+ *   mvn -B package
+ *   java -jar target/benchmarks.jar CalculatorBenchmarks -prof gc
+ *
+ * JMH generates its harness into a sub-package of the benchmark's, so the
+ * benchmarks cannot live in the default package with the calculators; the
+ * entry points are looked up reflectively once per trial and called through
+ * method handles. "calculator" is ExpressionEngine, which calculator and the
+ * Calculator in Project both delegate to.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmarks {
+    @Param({"calculator", "CalculatorWithQueue", "calculatorwithLL", "calaculatorwithArrayList"})
+    public String implementation;
+
+    @Param({"short", "long", "nested", "implicit"})
+    public String input;
+
+    private String expression;
+    private MethodHandle evaluateInt;
+    private MethodHandle evaluateFloat;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        expression = expression(input);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if (implementation.equals("calculator")) {
+            Class<?> type = Class.forName("ExpressionEngine");
+            Object engine = type.getConstructor().newInstance();
+            evaluateInt = lookup.unreflect(type.getMethod("evaluateInt", String.class)).bindTo(engine);
+            evaluateFloat = lookup.unreflect(type.getMethod("evaluateFloat", String.class)).bindTo(engine);
+        } else {
+            Class<?> type = Class.forName(implementation);
+            evaluateInt = staticMethod(lookup, type, "evaluateInt");
+            evaluateFloat = staticMethod(lookup, type, "evaluateFloat");
+        }
+        evaluateInt = evaluateInt.asType(MethodType.methodType(int.class, String.class));
+        evaluateFloat = evaluateFloat.asType(MethodType.methodType(double.class, String.class));
+    }
+
+    /** The implementations' entry points are package-private. */
+    private static MethodHandle staticMethod(MethodHandles.Lookup lookup, Class<?> type, String name)
+            throws ReflectiveOperationException {
+        Method method = type.getDeclaredMethod(name, String.class);
+        method.setAccessible(true);
+        return lookup.unreflect(method);
+    }
+
+    @Benchmark
+    public int intMode() throws Throwable {
+        return (int) evaluateInt.invokeExact(expression);
+    }
+
+    @Benchmark
+    public double floatMode() throws Throwable {
+        return (double) evaluateFloat.invokeExact(expression);
+    }
+
+    static String expression(String input) {
+        switch (input) {
+            case "short": return "1+2*3";
+            case "long": return longExpression(200);
+            case "nested": return nestedExpression(200);
+            case "implicit": return implicitExpression(100);
+            default: throw new IllegalArgumentException("Unknown input: " + input);
+        }
+    }
+
+    /** 200 terms of a*b/c joined by + and -. */
+    private static String longExpression(int terms) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= terms; i++) {
+            if (i > 1) sb.append(i % 3 == 0 ? '-' : '+');
+            sb.append(i).append('*').append(i % 7 + 1).append('/').append(i % 5 + 1);
+        }
+        return sb.toString();
+    }
+
+    /** (1+(1+(...(1+1)...))) */
+    private static String nestedExpression(int depth) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) sb.append("(1+");
+        sb.append('1');
+        for (int i = 0; i < depth; i++) sb.append(')');
+        return sb.toString();
+    }
+
+    /** 2(1)(2)(3)(1)... */
+    private static String implicitExpression(int factors) {
+        StringBuilder sb = new StringBuilder("2");
+        for (int i = 0; i < factors; i++) {
+            sb.append('(').append(i % 3 + 1).append(')');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,128 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** The line protocol of {@link CalculatorServer}, over a loopback connection. */
+class CalculatorServerTest {
+    private CalculatorServer server;
+    private Socket socket;
+    private BufferedReader in;
+    private Writer out;
+
+    @BeforeEach
+    void connect() throws IOException {
+        server = new CalculatorServer(0);
+        socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10_000);
+        in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void disconnect() throws IOException {
+        socket.close();
+        server.close();
+    }
+
+    private String request(String line) throws IOException {
+        out.write(line + "\n");
+        out.flush();
+        return in.readLine();
+    }
+
+    /** The server hung up: end of stream, or a reset when it left input unread. */
+    private void assertClosedByServer() throws IOException {
+        try {
+            assertNull(in.readLine());
+        } catch (SocketException e) {
+            // connection reset
+        }
+    }
+
+    @Test
+    void answersSingleRequests() throws IOException {
+        assertEquals("OK 7", request("INT 1+2*3"));
+        assertEquals("OK -2147483648", request("INT 2147483647+1"));
+        assertEquals("OK 0.25", request("FLOAT 1/4"));
+        assertEquals("OK 2.5", request("FLOAT 5 / 2"));
+        assertEquals("ERR Division by zero", request("INT 1/0"));
+        assertEquals("ERR Modulo by zero", request("FLOAT 1%0"));
+        assertEquals("ERR Missing closing parenthesis", request("INT (1+2"));
+        assertEquals("ERR Unknown command: SQRT", request("SQRT 4"));
+        assertEquals("OK 3", request("INT 1+2\r"));
+    }
+
+    @Test
+    void batchReadsTheGivenNumberOfLines() throws IOException {
+        out.write("BATCH INT 3\n1+1\n2/0\n(3)(4)\nBATCH FLOAT 2\n1/8\n-0.5*3\n");
+        out.flush();
+        assertEquals("OK 2", in.readLine());
+        assertEquals("ERR Division by zero", in.readLine());
+        assertEquals("OK 12", in.readLine());
+        assertEquals("OK 0.125", in.readLine());
+        assertEquals("OK -1.5", in.readLine());
+        assertEquals("ERR Usage: BATCH INT|FLOAT <count>", request("BATCH LONG 1"));
+        assertEquals("ERR Usage: BATCH INT|FLOAT <count>", request("BATCH INT x"));
+        assertEquals("OK 0", request("BATCH INT 0\nINT 0"));
+    }
+
+    @Test
+    void pipelinedRequestsAreAnsweredInOrder() throws IOException {
+        int burst = 5_000;
+        List<String> expected = new ArrayList<>();
+        StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < burst; i++) {
+            if (i % 100 == 0) {
+                requests.append("BATCH FLOAT 2\n").append(i).append("/2\n").append(i).append("/0\n");
+                expected.add("OK " + i / 2.0);
+                expected.add("ERR Division by zero");
+            } else {
+                requests.append("INT ").append(i).append("*3-1\n");
+                expected.add("OK " + (i * 3 - 1));
+            }
+        }
+        requests.append("STATS\nQUIT\nINT 1\n");
+        out.write(requests.toString());
+        out.flush();
+        for (String reply : expected) assertEquals(reply, in.readLine());
+        String stats = in.readLine();
+        assertTrue(stats.startsWith("OK count=" + burst + " "), stats);
+        assertClosedByServer(); // nothing after QUIT is answered
+    }
+
+    @Test
+    void quitClosesTheConnection() throws IOException {
+        assertEquals("OK 2", request("INT 2"));
+        out.write("QUIT\n");
+        out.flush();
+        assertNull(in.readLine());
+    }
+
+    @Test
+    void overlongLinesAreRefusedAndTheConnectionClosed() throws IOException {
+        String longest = "INT " + "1+".repeat((CalculatorServer.MAX_LINE_LENGTH - 5) / 2) + "1";
+        assertTrue(longest.length() <= CalculatorServer.MAX_LINE_LENGTH);
+        assertEquals("OK " + ((CalculatorServer.MAX_LINE_LENGTH - 5) / 2 + 1), request(longest));
+        out.write("INT " + "1".repeat(CalculatorServer.MAX_LINE_LENGTH) + "\nINT 1\n");
+        out.flush();
+        assertEquals("ERR line too long", in.readLine());
+        assertClosedByServer();
+    }
+}
@@ -0,0 +1,221 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** {@link ConnectionPool} against an in-memory H2 database in MySQL mode. */
+class ConnectionPoolTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private ConnectionPool pool;
+
+    /** A fresh in-memory database, kept until the JVM exits. */
+    static String newDatabaseUrl() {
+        return "jdbc:h2:mem:test" + DATABASES.incrementAndGet()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    }
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    void returnedConnectionIsReused() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 2, 1_000, 60_000);
+        try (Connection conn = pool.getConnection()) {
+            assertEquals(1, pool.getActiveCount());
+            assertFalse(conn.isClosed());
+        }
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        try (Connection conn = pool.getConnection()) {
+            assertTrue(conn.isValid(1));
+        }
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(2, pool.getBorrowCount());
+    }
+
+    @Test
+    void returnedHandleIsUnusable() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        Connection conn = pool.getConnection();
+        conn.close();
+        conn.close(); // twice is harmless and does not return it twice
+        assertTrue(conn.isClosed());
+        assertThrows(SQLException.class, conn::createStatement);
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    void openTransactionIsRolledBackOnReturn() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE t (v INT)");
+        }
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            conn.setAutoCommit(false);
+            stmt.execute("INSERT INTO t VALUES (1)");
+        }
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM t")) {
+            assertTrue(conn.getAutoCommit());
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+        }
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    void borrowTimesOutWhenAllConnectionsAreInUse() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 100, 60_000);
+        try (Connection held = pool.getConnection()) {
+            long start = System.nanoTime();
+            assertThrows(SQLTransientConnectionException.class, pool::getConnection);
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+            assertFalse(held.isClosed());
+        }
+        assertEquals(1, pool.getTimeoutCount());
+        pool.getConnection().close(); // the permit of the failed borrow was not lost
+    }
+
+    @Test
+    void waitingBorrowerGetsTheReturnedConnection() throws Exception {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 5_000, 60_000);
+        Connection held = pool.getConnection();
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+            try (Connection conn = pool.getConnection()) {
+                return conn.isValid(1);
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(waiter.isDone());
+        held.close();
+        assertTrue(waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(0, pool.getTimeoutCount());
+    }
+
+    @Test
+    void idleConnectionsAreEvicted() throws Exception {
+        // long enough that neither is evicted before both are back, however slow the machine
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 2, 1_000, 500);
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        first.close();
+        second.close();
+        assertEquals(2, pool.getIdleCount());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.getIdleCount() > 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(2, pool.getDestroyedCount());
+        pool.getConnection().close();
+        assertEquals(3, pool.getCreatedCount());
+    }
+
+    @Test
+    void brokenConnectionIsDiscardedInsteadOfReused() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        Connection physical;
+        try (Connection conn = pool.getConnection()) {
+            physical = conn.unwrap(Connection.class);
+            physical.close();
+        }
+        assertEquals(0, pool.getIdleCount());
+        assertEquals(1, pool.getDestroyedCount());
+        try (Connection conn = pool.getConnection()) {
+            assertNotSame(physical, conn.unwrap(Connection.class));
+        }
+        assertEquals(2, pool.getCreatedCount());
+    }
+
+    @Test
+    void preparedStatementsAreCachedPerConnection() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        String sql = "SELECT ? + 1";
+        PreparedStatement firstStatement;
+        try (Connection conn = pool.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            firstStatement = pstmt.unwrap(PreparedStatement.class);
+            pstmt.setInt(1, 1);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                assertTrue(rs.next());
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+        try (Connection conn = pool.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            assertSame(firstStatement, pstmt.unwrap(PreparedStatement.class));
+            assertSame(conn, pstmt.getConnection());
+        }
+        assertEquals(1, pool.getStatementCacheHits());
+        assertEquals(1, pool.getStatementCacheMisses());
+    }
+
+    @Test
+    void sessionSettingsAreRestoredOnReturn() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        int isolation;
+        boolean readOnly;
+        try (Connection conn = pool.getConnection()) {
+            isolation = conn.getTransactionIsolation();
+            readOnly = conn.isReadOnly();
+            conn.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            conn.setReadOnly(!readOnly);
+        }
+        try (Connection conn = pool.getConnection()) {
+            assertEquals(isolation, conn.getTransactionIsolation());
+            assertEquals(readOnly, conn.isReadOnly());
+        }
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    void cachedStatementSettingsAreRestoredBeforeReuse() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        String sql = "SELECT * FROM SYSTEM_RANGE(1, 10)";
+        int fetchSize;
+        try (Connection conn = pool.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            fetchSize = pstmt.getFetchSize();
+            pstmt.setFetchSize(3);
+            pstmt.setMaxRows(2);
+            pstmt.setQueryTimeout(7);
+        }
+        try (Connection conn = pool.getConnection(); PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            assertEquals(fetchSize, pstmt.getFetchSize());
+            assertEquals(0, pstmt.getMaxRows());
+            assertEquals(0, pstmt.getQueryTimeout());
+            int rows = 0;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) rows++;
+            }
+            assertEquals(10, rows);
+        }
+        assertEquals(1, pool.getStatementCacheHits());
+    }
+
+    @Test
+    void closedPoolRefusesToLend() throws SQLException {
+        pool = new ConnectionPool(newDatabaseUrl(), "sa", "", 1, 1_000, 60_000);
+        pool.getConnection().close();
+        pool.close();
+        assertEquals(0, pool.getIdleCount());
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+}
@@ -0,0 +1,153 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link EmployeeCache} in front of a {@link LogEmployeeStore}; writes made
+ * to the store directly stand for another client's.
+ */
+class EmployeeCacheTest {
+    private static final long TTL_MILLIS = 200;
+
+    @TempDir
+    Path dir;
+
+    private LogEmployeeStore store;
+
+    @BeforeEach
+    void open() throws Exception {
+        store = new LogEmployeeStore(dir.resolve("employees.log"));
+        store.createTableIfNotExists(false);
+        for (int id = 1; id <= 5; id++) store.insert(id, "Employee " + id, "e" + id + "@example.com", 1000);
+    }
+
+    @AfterEach
+    void close() throws SQLException {
+        store.close();
+    }
+
+    private static Double salary(EmployeeStore source, int id) throws SQLException {
+        return source.findById(id, (rid, name, email, salary) -> salary);
+    }
+
+    @Test
+    void lookupsAreServedFromMemoryUntilTheTtlExpires() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 100, TTL_MILLIS);
+        assertEquals(1000.0, salary(cache, 1));
+        assertFalse(cache.exists(42));
+        assertEquals(2, cache.getMissCount());
+
+        store.updateSalary(1, 2000); // another writer
+        store.insert(42, "Elsewhere", null, 1);
+        assertEquals(1000.0, salary(cache, 1));
+        assertFalse(cache.exists(42)); // "no such id" is cached too
+        assertEquals(2, cache.getHitCount());
+
+        Thread.sleep(TTL_MILLIS + 50);
+        assertEquals(2000.0, salary(cache, 1));
+        assertTrue(cache.exists(42));
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2.0 / 6, cache.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void invalidateAllPicksUpOutsideWritesAtOnce() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 100, 60_000);
+        assertEquals(1000.0, salary(cache, 3));
+        assertEquals(5, readAll(cache).size());
+
+        store.updateSalary(3, 3000);
+        store.delete(5);
+        assertEquals(1000.0, salary(cache, 3));
+        assertEquals(5, readAll(cache).size());
+
+        cache.invalidateAll();
+        assertEquals(3000.0, salary(cache, 3));
+        assertEquals(List.of(1, 2, 3, 4), readAll(cache));
+    }
+
+    @Test
+    void ownWritesAreVisibleWithoutReloading() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 100, 60_000);
+        assertEquals(5, readAll(cache).size());
+        assertEquals(1, cache.getListingLoadCount());
+
+        cache.updateSalary(2, 2500);
+        cache.update(4, "Renamed", "r@example.com", 4000);
+        cache.delete(1);
+        cache.insert(9, "New", null, 900);
+        long misses = cache.getMissCount();
+
+        assertEquals(2500.0, salary(cache, 2));
+        assertEquals("Renamed", cache.findById(4, (id, name, email, salary) -> name));
+        assertNull(salary(cache, 1));
+        assertEquals(List.of(2, 3, 4, 5, 9), readAll(cache));
+        assertEquals(misses, cache.getMissCount());
+        assertEquals(1, cache.getListingLoadCount());
+        assertEquals(2500.0, salary(store, 2)); // written through
+    }
+
+    @Test
+    void insertWithGeneratedIdDropsTheListing() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 100, 60_000);
+        readAll(cache);
+        cache.insert("Generated", null, 100);
+        assertEquals(List.of(1, 2, 3, 4, 5, 6), readAll(cache));
+        assertEquals(2, cache.getListingLoadCount());
+    }
+
+    @Test
+    void tableLargerThanTheCacheIsListedFromTheStore() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 3, 60_000);
+        assertEquals(List.of(1, 2, 3, 4, 5), readAll(cache));
+        assertEquals(List.of(1, 2, 3, 4, 5), readAll(cache));
+        assertEquals(0, cache.getListingLoadCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void leastRecentlyUsedRowsAreEvicted() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 2, 60_000);
+        salary(cache, 1);
+        salary(cache, 2);
+        salary(cache, 1);
+        salary(cache, 3); // evicts 2
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        long misses = cache.getMissCount();
+        salary(cache, 1);
+        assertEquals(misses, cache.getMissCount());
+        salary(cache, 2);
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    void invalidateForgetsOneId() throws Exception {
+        EmployeeCache cache = new EmployeeCache(store, 100, 60_000);
+        salary(cache, 1);
+        salary(cache, 2);
+        store.updateSalary(1, 1111);
+        store.updateSalary(2, 2222);
+        cache.invalidate(1);
+        assertEquals(1111.0, salary(cache, 1));
+        assertEquals(1000.0, salary(cache, 2));
+    }
+
+    private static List<Integer> readAll(EmployeeStore source) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        new EmployeePager(source, 2).forEachRemaining((id, name, email, salary) -> ids.add(id));
+        return ids;
+    }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** {@link EmployeeCsvImporter} through batched JDBC on MySQL-mode H2. */
+class EmployeeCsvImporterTest {
+    @TempDir
+    Path dir;
+
+    private ConnectionPool pool;
+    private EmployeeRepository repository;
+
+    @BeforeEach
+    void open() throws SQLException {
+        // IGNORECASE: unique emails ignore case, as with MySQL's default collation
+        pool = new ConnectionPool(ConnectionPoolTest.newDatabaseUrl() + ";IGNORECASE=TRUE", "sa", "",
+                2, 1_000, 60_000);
+        repository = new EmployeeRepository(pool);
+        repository.createTableIfNotExists(false);
+    }
+
+    @AfterEach
+    void close() {
+        pool.close();
+    }
+
+    private Path csv(String content) throws IOException {
+        Path file = dir.resolve("employees.csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private List<Integer> ids() throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        new EmployeePager(repository).forEachRemaining((id, name, email, salary) -> ids.add(id));
+        return ids;
+    }
+
+    @Test
+    void headerInAnyOrderAndAfterAByteOrderMark() throws Exception {
+        Path file = csv("\uFEFFsalary,Email,id,name\n100,ann@example.com,7,Ann\n200,,9,\"Bob, Jr.\"\n");
+        EmployeeCsvImporter.Report report = new EmployeeCsvImporter(pool, 10).importFile(file);
+        assertEquals(2, report.getImported());
+        assertEquals(List.of(7, 9), ids()); // the ids of the file, not generated ones
+        assertEquals("Bob, Jr.", repository.findById(9, (id, name, email, salary) -> name));
+    }
+
+    @Test
+    void byteOrderMarkBeforeDataWithoutHeader() throws Exception {
+        Path file = csv("\uFEFF3,Ann,ann@example.com,100\n");
+        assertEquals(1, new EmployeeCsvImporter(pool, 10).importFile(file).getImported());
+        assertEquals(List.of(3), ids());
+    }
+
+    @Test
+    void headerWithAnUnknownColumnIsRefused() throws Exception {
+        Path file = csv("employee_id,name,email,salary\n7,Ann,ann@example.com,100\n");
+        IOException e = assertThrows(IOException.class, () -> new EmployeeCsvImporter(pool, 10).importFile(file));
+        assertTrue(e.getMessage().contains("employee_id"), e.getMessage());
+        assertEquals(List.of(), ids());
+    }
+
+    @Test
+    void duplicatesInAChunkAreRejectedRowByRow() throws Exception {
+        Path file = csv("id,name,email,salary\n"
+                + "1,Ann,ann@example.com,100\n"
+                + "2,Bob,bob@example.com,200\n"
+                + "1,Again,again@example.com,300\n"
+                + "3,Cid,BOB@example.com,400\n"
+                + "4,Dee,not-an-email,500\n"
+                + "5,Eve,eve@example.com,600\n");
+        EmployeeCsvImporter.Report report = new EmployeeCsvImporter(pool, 2).importFile(file);
+        assertEquals(3, report.getImported());
+        assertEquals(List.of(1, 2, 5), ids());
+        assertEquals(3, report.getRejected());
+        assertTrue(report.getRejections().get(0).startsWith("line 4: duplicate id or email"),
+                report.getRejections().toString());
+    }
+
+    @Test
+    void overLongValuesAreRejectedAsWithTheLogStore() throws Exception {
+        Path file = csv("id,name,email,salary\n"
+                + "1,Ann,ann@example.com,100\n"
+                + "2,Bob,bob@example.com,200\n"
+                + "3," + "x".repeat(101) + ",long@example.com,300\n" // too long for VARCHAR(100)
+                + "4,Dee,dee@example.com,400\n"
+                + "5,Eve," + "e".repeat(90) + "@example.com,500\n");
+        EmployeeCsvImporter.Report report = new EmployeeCsvImporter(pool, 2).importFile(file);
+        assertEquals(List.of(1, 2, 4), ids());
+        assertEquals(List.of("line 4: name longer than 100 characters", "line 6: email longer than 100 characters"),
+                report.getRejections());
+
+        try (LogEmployeeStore store = new LogEmployeeStore(dir.resolve("employees.log"))) {
+            store.createTableIfNotExists(false);
+            EmployeeCsvImporter.Report logReport = new EmployeeCsvImporter(store, 2).importFile(file);
+            assertEquals(report.getRejections(), logReport.getRejections());
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    void rowTheDatabaseRefusesForItsDataIsRejected() throws Exception {
+        Path file = csv("id,name,email,salary\n"
+                + "1,Ann,ann@example.com,100\n"
+                + "2,Bob,bob@example.com,1e12\n" // out of range for DECIMAL(10, 2)
+                + "3,Cid,cid@example.com,300\n");
+        EmployeeCsvImporter.Report report = new EmployeeCsvImporter(pool, 10).importFile(file);
+        assertEquals(List.of(1, 3), ids());
+        assertEquals(1, report.getRejected());
+        assertTrue(report.getRejections().get(0).startsWith("line 3: "), report.getRejections().toString());
+    }
+
+    @Test
+    void databaseFailuresAbortTheImport() throws Exception {
+        Path file = csv("id,name,email,salary\n1,Ann,ann@example.com,100\n");
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE employees");
+        }
+        SQLException e = assertThrows(SQLException.class, () -> new EmployeeCsvImporter(pool, 10).importFile(file));
+        assertTrue(e.getSQLState().startsWith("42"), e.getSQLState());
+    }
+}
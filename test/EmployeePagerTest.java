@@ -0,0 +1,193 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Keyset paging through {@link EmployeePager}, against MySQL-mode H2 through
+ * {@link EmployeeRepository} and against {@link LogEmployeeStore}, whose
+ * searches run in memory; both must page the same way.
+ */
+class EmployeePagerTest {
+    @TempDir
+    Path dir;
+
+    private ConnectionPool pool;
+    private final List<EmployeeStore> stores = new ArrayList<>();
+
+    @AfterEach
+    void close() throws SQLException {
+        for (EmployeeStore store : stores) store.close();
+        if (pool != null) pool.close();
+    }
+
+    private EmployeeRepository repository() throws SQLException {
+        // IGNORECASE: comparisons and LIKE ignore case, as with MySQL's default collation
+        pool = new ConnectionPool(ConnectionPoolTest.newDatabaseUrl() + ";IGNORECASE=TRUE", "sa", "",
+                2, 1_000, 60_000);
+        EmployeeRepository repository = new EmployeeRepository(pool);
+        repository.createTableIfNotExists(true);
+        stores.add(repository);
+        return repository;
+    }
+
+    private LogEmployeeStore logStore() throws Exception {
+        LogEmployeeStore store = new LogEmployeeStore(dir.resolve("employees.log"));
+        store.createTableIfNotExists(true);
+        stores.add(store);
+        return store;
+    }
+
+    @Test
+    void plainListingReadsEveryRowOnceInIdOrder() throws Exception {
+        for (EmployeeStore store : List.of(repository(), logStore())) {
+            for (int i = 1; i <= 23; i++) store.insert("Employee " + i, "e" + i + "@example.com", 1000 + i);
+            EmployeePager pager = new EmployeePager(store, 5);
+            List<Integer> ids = new ArrayList<>();
+            List<Integer> pageSizes = new ArrayList<>();
+            while (pager.hasMore()) pageSizes.add(pager.nextPage((id, name, email, salary) -> ids.add(id)));
+
+            assertEquals(List.of(5, 5, 5, 5, 3), pageSizes, store.getClass().getName());
+            assertEquals(range(1, 23), ids);
+            assertEquals(23, pager.getRowsRead());
+            assertEquals(0, pager.nextPage((id, name, email, salary) -> ids.add(id)));
+        }
+    }
+
+    @Test
+    void lastFullPageIsFollowedByAnEmptyOne() throws Exception {
+        EmployeeRepository store = repository();
+        for (int i = 1; i <= 10; i++) store.insert("Employee " + i, null, 1000);
+        EmployeePager pager = new EmployeePager(store, 5);
+        assertEquals(5, pager.nextPage((id, name, email, salary) -> { }));
+        assertEquals(5, pager.nextPage((id, name, email, salary) -> { }));
+        assertTrue(pager.hasMore());
+        assertEquals(0, pager.nextPage((id, name, email, salary) -> { }));
+        assertFalse(pager.hasMore());
+    }
+
+    @Test
+    void pagingContinuesAfterTheLastRowReadWhileTheTableChanges() throws Exception {
+        EmployeeRepository store = repository();
+        for (int i = 1; i <= 10; i++) store.insert("Employee " + i, null, 1000);
+        EmployeePager pager = new EmployeePager(store, 4);
+        List<Integer> ids = new ArrayList<>();
+        pager.nextPage((id, name, email, salary) -> ids.add(id));
+
+        store.delete(2); // already read
+        store.delete(6); // not read yet
+        store.insert("Late", null, 1000); // id 11, after the end
+        pager.forEachRemaining((id, name, email, salary) -> ids.add(id));
+
+        assertEquals(List.of(1, 2, 3, 4, 5, 7, 8, 9, 10, 11), ids);
+        assertTrue(pager.covers(3));
+        pager.reset();
+        assertFalse(pager.covers(3));
+    }
+
+    @Test
+    void searchPagesThroughTiesInSortOrder() throws Exception {
+        String[] names = {"smith", "Jones", "SMITH", "Smithers", "adams", "Smith", "smith", "Baker", "SMITH", "Smyth"};
+        List<List<Integer>> results = new ArrayList<>();
+        for (EmployeeStore store : List.of(repository(), logStore())) {
+            for (int i = 0; i < names.length; i++) {
+                store.insert(i + 1, names[i], "user" + (i + 1) + "@example.com", 1000 + (i % 3) * 500);
+            }
+            for (boolean ascending : new boolean[] {true, false}) {
+                for (EmployeeQuery.Sort sort : EmployeeQuery.Sort.values()) {
+                    EmployeeQuery query = new EmployeeQuery(" SMI ", sort, ascending);
+                    results.add(pageThrough(store, query, 2));
+                }
+            }
+            List<Integer> byName = pageThrough(store, new EmployeeQuery("smi", EmployeeQuery.Sort.NAME, true), 2);
+            // "smith" x5 by id, then "Smithers"; neither Smyth nor the others match
+            assertEquals(List.of(1, 3, 6, 7, 9, 4), byName, store.getClass().getName());
+            List<Integer> bySalaryDesc = pageThrough(store, new EmployeeQuery(null, EmployeeQuery.Sort.SALARY, false), 3);
+            assertEquals(expectedBySalaryDescending(store), bySalaryDesc);
+        }
+        // the in-memory search of the log store pages exactly like the SQL one
+        int half = results.size() / 2;
+        assertEquals(results.subList(0, half), results.subList(half, results.size()));
+    }
+
+    @Test
+    void searchPlansAreOnlyExplainedWithAPlanLog() throws Exception {
+        EmployeeRepository store = repository();
+        for (int i = 1; i <= 5; i++) store.insert("Employee " + i, null, 1000);
+        EmployeeQuery query = new EmployeeQuery("emp", EmployeeQuery.Sort.NAME, true);
+        assertEquals(List.of(1, 2, 3, 4, 5), pageThrough(store, query, 2));
+        assertEquals(0, store.getStatistics().get(EmployeeRepository.Query.EXPLAIN).getCount());
+
+        List<String> plans = new ArrayList<>();
+        store.setPlanLog(plans::add);
+        pageThrough(store, query, 2);
+        assertEquals(1, plans.size()); // the first page only
+        assertTrue(plans.get(0).startsWith("EXPLAIN SELECT"), plans.get(0));
+    }
+
+    @Test
+    void planLogSettingAppendsPlansToAFile() throws Exception {
+        EmployeeRepository store = repository();
+        Path planFile = dir.resolve("plans.log");
+        store.setPlanLog(EmployeeRepository.planLogTo(planFile.toString()));
+        store.insert(1, "Ann", "ann@example.com", 1000);
+        EmployeeQuery query = new EmployeeQuery("ann", EmployeeQuery.Sort.NAME, true);
+        pageThrough(store, query, 2);
+        pageThrough(store, query, 2);
+        String plans = Files.readString(planFile);
+        assertTrue(plans.startsWith("EXPLAIN SELECT"), plans);
+        assertEquals(2, plans.split("EXPLAIN SELECT", -1).length - 1);
+        assertNull(EmployeeRepository.planLogTo(" "));
+    }
+
+    @Test
+    void searchMatchesAnywhereInNameOrEmail() throws Exception {
+        for (EmployeeStore store : List.of(repository(), logStore())) {
+            store.insert(1, "John", "john.smith@example.com", 1000);
+            store.insert(2, "Blacksmith", null, 1000);
+            store.insert(3, "Smith", "s@example.com", 1000);
+            store.insert(4, "Jones", "jones@example.com", 1000);
+            store.insert(5, "50% off", "x_y@example.com", 1000);
+            EmployeeQuery smith = new EmployeeQuery("SMITH", EmployeeQuery.Sort.ID, true);
+            assertEquals(List.of(1, 2, 3), pageThrough(store, smith, 2), store.getClass().getName());
+            // LIKE wildcards in the term are taken literally
+            assertEquals(List.of(5), pageThrough(store, new EmployeeQuery("0%", EmployeeQuery.Sort.ID, true), 2));
+            assertEquals(List.of(5), pageThrough(store, new EmployeeQuery("x_y", EmployeeQuery.Sort.ID, true), 2));
+        }
+    }
+
+    private static List<Integer> pageThrough(EmployeeStore store, EmployeeQuery query, int pageSize)
+            throws SQLException {
+        EmployeePager pager = new EmployeePager(store, pageSize);
+        pager.setQuery(query);
+        List<Integer> ids = new ArrayList<>();
+        pager.forEachRemaining((id, name, email, salary) -> ids.add(id));
+        return ids;
+    }
+
+    private static List<Integer> expectedBySalaryDescending(EmployeeStore store) throws SQLException {
+        List<double[]> rows = new ArrayList<>();
+        store.readPage(true, 0, Integer.MAX_VALUE, (id, name, email, salary) -> rows.add(new double[] {id, salary}));
+        rows.sort(Comparator.<double[]>comparingDouble(r -> r[1]).thenComparingDouble(r -> r[0]).reversed());
+        List<Integer> ids = new ArrayList<>();
+        for (double[] row : rows) ids.add((int) row[0]);
+        return ids;
+    }
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = from; i <= to; i++) ids.add(i);
+        return ids;
+    }
+}
@@ -0,0 +1,168 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/** {@link EmployeeSearchIndex} against a plain {@code contains} over the same rows. */
+class EmployeeSearchIndexTest {
+    private static final String[] REMOVED = {null, null};
+
+    private final EmployeeSearchIndex index = new EmployeeSearchIndex();
+    private final List<String[]> rows = new ArrayList<>(); // by id: name, email; null once removed
+
+    private void add(int id, String name, String email) {
+        while (rows.size() <= id) rows.add(REMOVED);
+        rows.set(id, new String[] {name, email});
+        index.add(id, name, email);
+    }
+
+    private void remove(int id) {
+        rows.set(id, REMOVED);
+        index.remove(id);
+    }
+
+    /** Every indexed id the index matches is one whose name or email contains the query, and the other way round. */
+    private void assertSameAsContains(String query, EmployeeSearchIndex.Matches matches) {
+        String q = query.toLowerCase(Locale.ROOT);
+        int expected = 0;
+        for (int id = 0; id < rows.size(); id++) {
+            String[] row = rows.get(id);
+            boolean contains = contains(row[0], q) || contains(row[1], q);
+            if (contains) expected++;
+            assertEquals(contains, matches.contains(id), "'" + query + "' and row " + id + " " + row[0] + " " + row[1]);
+        }
+        assertEquals(expected, matches.size(), query);
+    }
+
+    private static boolean contains(String text, String q) {
+        return text != null && text.toLowerCase(Locale.ROOT).contains(q);
+    }
+
+    @Test
+    void randomRowsMatchLikeContains() {
+        Random random = new Random(42);
+        // a small alphabet, so trigram lists are long and intersect in many ways
+        String alphabet = "abcde.@";
+        for (int id = 1; id <= 5_000; id++) {
+            add(id, word(random, alphabet, 3 + random.nextInt(10)),
+                    random.nextInt(5) == 0 ? null : word(random, alphabet, 5 + random.nextInt(12)));
+        }
+        for (int i = 0; i < 300; i++) {
+            String query = word(random, alphabet, 1 + random.nextInt(7));
+            assertSameAsContains(query, index.search(query));
+        }
+    }
+
+    @Test
+    void sparseListsAreIntersectedByGalloping() {
+        // "xyz" in every 1000th row, "wxy" in every 7th: one long list, one short, few ids in common
+        for (int id = 1; id <= 20_000; id++) {
+            String name = (id % 1000 == 0 ? "xyz" : "abc") + id;
+            String email = (id % 7 == 0 ? "wxy" : "qrs") + "@example.com";
+            add(id, name, email);
+        }
+        add(7_000, "wxyz", null); // both trigrams in one field
+        for (String query : new String[] {"xyz", "wxy", "wxyz", "xyz7", "abc1", "@example.com", "xyz7000", "nope"}) {
+            assertSameAsContains(query, index.search(query));
+        }
+        EmployeeSearchIndex.Matches both = index.search("wxyz");
+        assertEquals(1, both.size());
+        assertTrue(both.contains(7_000));
+    }
+
+    @Test
+    void shortQueriesAndCaseAreHandled() {
+        add(1, "Ann", "ann@example.com");
+        add(2, "Bob", null);
+        add(3, "Jo", "JO@EXAMPLE.COM");
+        for (String query : new String[] {"", "a", "B", "jo", "O", "An", "ANN", "@"}) {
+            assertSameAsContains(query, index.search(query));
+        }
+        assertEquals(3, index.search("").size());
+    }
+
+    @Test
+    void matchesDoNotSpanNameAndEmail() {
+        add(1, "ab", "cd@example.com");
+        assertEquals(0, index.search("abcd").size());
+        assertEquals(0, index.search("bc").size());
+        assertEquals(1, index.search("cd@").size());
+    }
+
+    @Test
+    void nonLatinTextIsIndexedThroughHashedTrigrams() {
+        add(1, "Иван Петров", "ivan@example.com");
+        add(2, "Пётр Иванов", null);
+        add(3, "山田太郎", "yamada@example.jp");
+        add(4, "太田一郎", null);
+        add(5, "Ιωάννης", null);
+        for (String query : new String[] {"иван", "ИВАН", "петр", "пётр", "田太郎", "太田", "一郎", "ιωά", "ΙΩΆ", "ва"}) {
+            assertSameAsContains(query, index.search(query));
+        }
+        assertEquals(2, index.search("иван").size());
+    }
+
+    @Test
+    void addingAnIdAgainReplacesItsRow() {
+        add(1, "Ann", "ann@example.com");
+        add(2, "Bob", "bob@example.com");
+        add(1, "Annabel", "annabel@example.org");
+        assertEquals(2, index.size());
+        assertSameAsContains("example.com", index.search("example.com"));
+        assertSameAsContains("abel", index.search("abel"));
+
+        remove(2);
+        assertFalse(index.remove(2));
+        assertEquals(1, index.size());
+        assertEquals(0, index.search("bob").size());
+        int trigrams = index.getTrigramCount();
+        remove(1);
+        assertEquals(0, index.size());
+        assertEquals(0, index.getTrigramCount()); // empty lists are dropped
+        assertTrue(trigrams > 0);
+    }
+
+    @Test
+    void narrowingReusesTheLastMatchesUntilTheIndexChanges() {
+        add(1, "Smith", null);
+        add(2, "Smithers", null);
+        add(3, "Jones", null);
+        EmployeeSearchIndex.Matches smi = index.search("smi");
+        EmployeeSearchIndex.Matches smith = index.search("smith", smi, () -> false);
+        assertSameAsContains("smith", smith);
+
+        add(4, "Blacksmith", null); // not among smi's matches, which are now out of date
+        EmployeeSearchIndex.Matches after = index.search("smithe", smith, () -> false);
+        assertSameAsContains("smithe", after);
+        assertSameAsContains("smith", index.search("smith", smith, () -> false));
+        assertTrue(index.search("smith", smith, () -> false).contains(4));
+        // a query that does not extend the last one is searched afresh
+        assertSameAsContains("jon", index.search("jon", smith, () -> false));
+    }
+
+    @Test
+    void cancelledSearchesReturnNull() {
+        add(1, "Smith", null);
+        add(2, "Smithers", null);
+        EmployeeSearchIndex.Matches smi = index.search("smi");
+        assertNull(index.search("sm", null, () -> true)); // scan
+        assertNull(index.search("smit", null, () -> true)); // trigram lists
+        assertNull(index.search("smit", smi, () -> true)); // narrowing
+    }
+
+    private static String word(Random random, String alphabet, int length) {
+        StringBuilder word = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            char c = alphabet.charAt(random.nextInt(alphabet.length()));
+            word.append(random.nextInt(4) == 0 ? Character.toUpperCase(c) : c);
+        }
+        return word.toString();
+    }
+}
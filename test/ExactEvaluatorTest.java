@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link ExactEvaluator} against {@link ExpressionEngine}: where the int
+ * path wraps, the exact result must agree with it modulo 2^32, and division,
+ * modulo and errors follow the engine's rules.
+ */
+class ExactEvaluatorTest {
+    private static final ExpressionEngine ENGINE = new ExpressionEngine();
+
+    private static Number exact(String expression) {
+        return ENGINE.compileExact(expression, false).evaluate();
+    }
+
+    private static Number decimal(String expression) {
+        return ENGINE.compileExact(expression, true).evaluate();
+    }
+
+    private static void assertExact(String expected, Number actual, String expression) {
+        assertEquals(0, new BigDecimal(expected).compareTo(new BigDecimal(actual.toString())),
+                expression + " = " + actual);
+    }
+
+    @Test
+    void ringOperationsAgreeWithTheWrappingIntPath() {
+        for (String expression : ExpressionBytecodeCompilerTest.corpus()) {
+            if (expression.matches(".*[/%.].*")) continue;
+            String engine = ExpressionBytecodeCompilerTest.outcome(() -> ENGINE.evaluateInt(expression));
+            if (engine.startsWith("java.")) continue; // literals over int range are valid here
+            assertEquals(engine, String.valueOf(exact(expression).intValue()), expression);
+        }
+        Random random = new Random(9);
+        for (int checked = 0; checked < 2_000; ) {
+            String expression = ExpressionBytecodeCompilerTest.randomExpression(random, 4);
+            if (expression.indexOf('/') >= 0 || expression.indexOf('%') >= 0) continue;
+            assertEquals(ENGINE.evaluateInt(expression), exact(expression).intValue(), expression);
+            checked++;
+        }
+    }
+
+    @Test
+    void overflowIsPromotedAndDemotedAgain() {
+        assertEquals(4294967294L, exact("2147483647*2"));
+        assertEquals(2147483647L, exact("(2147483647*2)/2"));
+        assertEquals(new BigInteger("9223372036854775808"), exact("9223372036854775807+1"));
+        assertEquals(4611686018427387904L, exact("(9223372036854775807+1)/2"));
+        assertEquals(new BigInteger("9223372036854775808"), exact("-(-9223372036854775807-1)"));
+        assertEquals(new BigInteger("9223372036854775808"), exact("(-9223372036854775807-1)/-1"));
+        assertEquals(BigInteger.TWO.pow(64).multiply(BigInteger.valueOf(3)).mod(BigInteger.valueOf(7)).longValue(),
+                exact("(18446744073709551616*3)%7"));
+        assertEquals(BigInteger.TEN.pow(300), exact("10" + "*10".repeat(299)));
+        assertEquals(1L, exact("10" + "*10".repeat(299) + "/1" + "0".repeat(300)));
+    }
+
+    @Test
+    void integerDivisionFollowsTheIntPath() {
+        for (String expression : new String[] {"7/2", "-7/2", "7/-2", "-7/-2", "7%3", "-7%3", "7%-3", "-7%-3", "0/5"}) {
+            assertEquals((long) ENGINE.evaluateInt(expression), exact(expression), expression);
+        }
+        assertEquals(-4611686018427387904L, exact("(-9223372036854775807*2-2)/4"));
+        assertEquals(-1L, exact("(-9223372036854775807*2-3)%2"));
+    }
+
+    @Test
+    void zeroDivisorsThrowTheEnginesErrors() {
+        for (String expression : new String[] {"1/0", "5%0", "1/(2-2)", "0%0"}) {
+            ArithmeticException engine = assertThrows(ArithmeticException.class, () -> ENGINE.evaluateInt(expression));
+            ArithmeticException exact = assertThrows(ArithmeticException.class, () -> exact(expression));
+            assertEquals(engine.getMessage(), exact.getMessage(), expression);
+            assertEquals(engine.getMessage(), assertThrows(ArithmeticException.class, () -> decimal(expression)).getMessage());
+        }
+        assertEquals("Division by zero",
+                assertThrows(ArithmeticException.class, () -> exact("(9223372036854775807*2)/(65536*65536-4294967296)")).getMessage());
+        assertEquals("Modulo by zero",
+                assertThrows(ArithmeticException.class, () -> exact("(9223372036854775807*2)%0")).getMessage());
+    }
+
+    @Test
+    void decimalModeIsExactUntilTheQuotientDoesNotTerminate() {
+        assertExact("0.3", decimal("0.1+0.2"), "0.1+0.2");
+        assertExact("0.25", decimal("1/4"), "1/4");
+        assertEquals(1L, decimal("3/3"));
+        assertEquals(2L, decimal("0.5*4"));
+        assertExact(BigDecimal.ONE.divide(BigDecimal.valueOf(3), MathContext.DECIMAL128).toPlainString(),
+                decimal("1/3"), "1/3");
+        assertExact("-3.5", decimal("-7/2"), "-7/2");
+        assertExact("0.000000000000000000000000000001", decimal("1/1000000000000000000000000000000"), "tiny");
+        assertExact("12345678901234567890.5", decimal("12345678901234567890+0.5"), "wide");
+    }
+
+    @Test
+    void deepNestingAndVariables() {
+        assertEquals(7L, exact("-".repeat(300) + "7"));
+        assertEquals(301L, exact("1+(".repeat(300) + "1" + ")".repeat(300)));
+        ExactEvaluator evaluator = ENGINE.compileExact("x*y-x", false, "x", "y");
+        BigInteger max = BigInteger.valueOf(Long.MAX_VALUE);
+        assertEquals(max.multiply(max).subtract(max), evaluator.evaluate(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(-12L, evaluator.evaluate(-3, 5));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluate(1));
+    }
+}
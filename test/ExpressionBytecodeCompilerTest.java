@@ -0,0 +1,126 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Generated evaluators of {@link ExpressionBytecodeCompiler} against
+ * {@link ExpressionEngine} on the same text: same value, or the same
+ * exception with the same message.
+ */
+class ExpressionBytecodeCompilerTest {
+    private static final ExpressionEngine ENGINE = new ExpressionEngine();
+
+    /** Expressions shared by the calculator tests: ordinary ones, then edge cases. */
+    static List<String> corpus() {
+        List<String> corpus = new ArrayList<>(List.of(
+                "1+2*3", "(1+2)*3", "2(3+4)", "(1)(2)(3)", "-5", "--5", "-(-3)", "3*-2", "1-2-3", "100/10/5",
+                "10/3", "-10/3", "10%3", "-10%3", "10%-3", "7/2*2", "0*-1", " 1 + 2 ", "1 2", "12*(3-4)%5",
+                "1.5*2", "0.1+0.2", "3.0/2", "-0.0*1", "1.25%0.5", "99999.5*99999.5",
+                // overflow: int arithmetic wraps
+                "2147483647+1", "-2147483647-1-1", "65536*65536", "46341*46341", "-2147483647-1/-1",
+                // division and modulo by zero
+                "1/0", "5%0", "1/(2-2)", "0%0", "1.0/0", "2(3)/(1-1)",
+                // malformed
+                "(1+2", "1+2)", "", "1+", "*2", "()", "2147483648", "1..2", "1+#"));
+        corpus.add("(".repeat(300) + "1" + ")".repeat(300));
+        corpus.add("-".repeat(301) + "7");
+        corpus.add("1+(".repeat(300) + "1" + ")".repeat(300));
+        corpus.add("2*(".repeat(40) + "3" + ")".repeat(40));
+        StringBuilder sum = new StringBuilder("0");
+        for (int i = 1; i <= 2_000; i++) sum.append(i % 3 == 0 ? '-' : '+').append(i);
+        corpus.add(sum.toString());
+        return corpus;
+    }
+
+    /** A random well-formed expression of +-*%/, unary minus, parentheses and implicit multiplication. */
+    static String randomExpression(Random random, int depth) {
+        StringBuilder expression = new StringBuilder();
+        appendSum(random, depth, expression);
+        return expression.toString();
+    }
+
+    private static void appendSum(Random random, int depth, StringBuilder out) {
+        int terms = 1 + random.nextInt(4);
+        for (int i = 0; i < terms; i++) {
+            if (i > 0) out.append("+-*/%".charAt(random.nextInt(5)));
+            appendFactor(random, depth, out);
+        }
+    }
+
+    private static void appendFactor(Random random, int depth, StringBuilder out) {
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            out.append('-');
+            appendFactor(random, depth, out);
+        } else if (kind < 4 && depth > 0) {
+            if (random.nextInt(3) == 0) out.append(1 + random.nextInt(9)); // implicit multiplication
+            out.append('(');
+            appendSum(random, depth - 1, out);
+            out.append(')');
+        } else {
+            out.append(random.nextInt(4) == 0 ? random.nextInt(100_000) : random.nextInt(10));
+        }
+    }
+
+    /** The value as a string, or the exception's class and message. */
+    static String outcome(Supplier<Object> evaluation) {
+        try {
+            return String.valueOf(evaluation.get());
+        } catch (RuntimeException e) {
+            return e.getClass().getName() + ": " + e.getMessage();
+        }
+    }
+
+    private static String compiledInt(String expression) {
+        return outcome(() -> ExpressionBytecodeCompiler.compileInt(ENGINE.compile(expression, false)).evaluate(new int[0]));
+    }
+
+    private static String compiledFloat(String expression) {
+        return outcome(() -> ExpressionBytecodeCompiler.compileFloat(ENGINE.compile(expression, true)).evaluate(new double[0]));
+    }
+
+    @Test
+    void corpusEvaluatesAsTheEngineDoes() {
+        for (String expression : corpus()) {
+            assertEquals(outcome(() -> ENGINE.evaluateInt(expression)), compiledInt(expression), expression);
+            assertEquals(outcome(() -> ENGINE.evaluateFloat(expression)), compiledFloat(expression), expression);
+        }
+    }
+
+    @Test
+    void randomExpressionsEvaluateAsTheEngineDoes() {
+        Random random = new Random(3);
+        for (int i = 0; i < 2_000; i++) {
+            String expression = randomExpression(random, 4);
+            assertEquals(outcome(() -> ENGINE.evaluateInt(expression)), compiledInt(expression), expression);
+            assertEquals(outcome(() -> ENGINE.evaluateFloat(expression)), compiledFloat(expression), expression);
+        }
+    }
+
+    @Test
+    void variablesArePassedPositionally() {
+        String source = "x*(y+3)-x/y+y%x-(-x)";
+        ExpressionBytecodeCompiler.IntEvaluator ints = ExpressionBytecodeCompiler.compileInt(ENGINE.compile(source, false, "x", "y"));
+        ExpressionBytecodeCompiler.FloatEvaluator floats =
+                ExpressionBytecodeCompiler.compileFloat(ENGINE.compile(source, true, "x", "y"));
+        int[][] values = {{1, 2}, {-7, 3}, {2147483647, 2}, {5, 0}, {0, 5}};
+        for (int[] v : values) {
+            String substituted = source.replace("x", "(" + v[0] + ")").replace("y", "(" + v[1] + ")");
+            assertEquals(outcome(() -> ENGINE.evaluateInt(substituted)), outcome(() -> ints.evaluate(v)), substituted);
+            assertEquals(outcome(() -> ENGINE.evaluateFloat(substituted)),
+                    outcome(() -> floats.evaluate(new double[] {v[0], v[1]})), substituted);
+        }
+    }
+
+    @Test
+    void modeMustMatch() {
+        assertThrows(IllegalStateException.class, () -> ExpressionBytecodeCompiler.compileInt(ENGINE.compile("1", true)));
+        assertThrows(IllegalStateException.class, () -> ExpressionBytecodeCompiler.compileFloat(ENGINE.compile("1", false)));
+    }
+}
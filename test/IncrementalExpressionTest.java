@@ -0,0 +1,130 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link IncrementalExpression} against {@link ExpressionEngine} on the
+ * edited text: after every edit the value, or the exception and its
+ * message, must be what the engine gives for {@link IncrementalExpression#getText()}.
+ */
+class IncrementalExpressionTest {
+    private static final ExpressionEngine ENGINE = new ExpressionEngine();
+
+    private static void assertSameAsEngine(IncrementalExpression expression) {
+        String text = expression.getText();
+        if (expression.isFloatMode()) {
+            assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> ENGINE.evaluateFloat(text)),
+                    ExpressionBytecodeCompilerTest.outcome(expression::evaluateFloat), text);
+        } else {
+            assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> ENGINE.evaluateInt(text)),
+                    ExpressionBytecodeCompilerTest.outcome(expression::evaluateInt), text);
+        }
+    }
+
+    @Test
+    void corpusEvaluatesAsTheEngineDoes() {
+        for (String text : ExpressionBytecodeCompilerTest.corpus()) {
+            assertSameAsEngine(new IncrementalExpression(text, false));
+            assertSameAsEngine(new IncrementalExpression(text, true));
+        }
+    }
+
+    @Test
+    void randomEditsEvaluateAsTheEngineDoes() {
+        Random random = new Random(13);
+        String alphabet = "0123456789 ()+-*/%.";
+        for (int i = 0; i < 300; i++) {
+            IncrementalExpression expression =
+                    new IncrementalExpression(ExpressionBytecodeCompilerTest.randomExpression(random, 3), random.nextBoolean());
+            StringBuilder expected = new StringBuilder(expression.getText());
+            for (int k = 0; k < 60; k++) {
+                int start = random.nextInt(expected.length() + 1);
+                int end = Math.min(expected.length(), start + (random.nextInt(3) == 0 ? random.nextInt(4) : 0));
+                StringBuilder replacement = new StringBuilder();
+                if (random.nextInt(10) == 0) {
+                    replacement.append(ExpressionBytecodeCompilerTest.randomExpression(random, 1));
+                } else {
+                    for (int n = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(3); n > 0; n--) {
+                        replacement.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                    }
+                }
+                expression.edit(start, end, replacement.toString());
+                expected.replace(start, end, replacement.toString());
+                assertEquals(expected.toString(), expression.getText());
+                if (random.nextInt(3) != 0) assertSameAsEngine(expression); // sometimes let edits pile up
+            }
+        }
+    }
+
+    @Test
+    void editsAtTheStartAndEndOfTheBuffer() {
+        IncrementalExpression expression = new IncrementalExpression("(1+2)*3", false);
+        assertEquals(9, expression.evaluateInt());
+        expression.insert(0, "4");
+        assertEquals("4(1+2)*3", expression.getText());
+        assertEquals(36, expression.evaluateInt());
+        expression.insert(expression.getText().length(), "0");
+        assertEquals(360, expression.evaluateInt());
+        expression.delete(0, 1);
+        assertEquals(90, expression.evaluateInt());
+        expression.edit(expression.getText().length() - 3, expression.getText().length(), "");
+        assertEquals("(1+2)", expression.getText());
+        assertEquals(3, expression.evaluateInt());
+        expression.insert(0, "-");
+        assertEquals(-3, expression.evaluateInt());
+        expression.insert(expression.getText().length(), "/0");
+        assertEquals("Division by zero", assertThrows(ArithmeticException.class, expression::evaluateInt).getMessage());
+        expression.delete(0, expression.getText().length());
+        assertEquals("", expression.getText());
+        assertSameAsEngine(expression);
+        expression.insert(0, "7");
+        assertEquals(7, expression.evaluateInt());
+    }
+
+    @Test
+    void unbalancedParenthesesRecoverAfterRebalancing() {
+        IncrementalExpression expression = new IncrementalExpression("2*(3+4)", true);
+        expression.delete(6, 7);
+        assertSameAsEngine(expression);
+        expression.insert(0, "(");
+        assertSameAsEngine(expression);
+        expression.insert(expression.getText().length(), "))");
+        assertEquals("(2*(3+4))", expression.getText());
+        assertEquals(14.0, expression.evaluateFloat());
+    }
+
+    @Test
+    void overflowWrapsAsInTheEngine() {
+        IncrementalExpression expression = new IncrementalExpression("2147483647+0", false);
+        expression.edit(11, 12, "1");
+        assertEquals(Integer.MIN_VALUE, expression.evaluateInt());
+        expression.insert(0, "2");
+        assertSameAsEngine(expression); // 22147483647 is not an int literal
+    }
+
+    @Test
+    void editsInDeepNestingReparseOnlyTheInnermostGroup() {
+        int depth = 300;
+        String text = "1+(".repeat(depth) + "1" + ")".repeat(depth);
+        IncrementalExpression expression = new IncrementalExpression(text, false);
+        assertEquals(depth + 1, expression.evaluateInt());
+        expression.edit(3 * depth, 3 * depth + 1, "5");
+        assertEquals(depth + 5, expression.evaluateInt());
+        assertTrue(expression.getLastReparsedChars() < 10, "reparsed " + expression.getLastReparsedChars());
+        expression.insert(0, "9*");
+        assertEquals(9 + depth - 1 + 5, expression.evaluateInt()); // 9*1+(1+(...(5)))
+    }
+
+    @Test
+    void editsOutsideTheTextAreRejected() {
+        IncrementalExpression expression = new IncrementalExpression("1+2", false);
+        assertThrows(IndexOutOfBoundsException.class, () -> expression.insert(4, "1"));
+        assertThrows(IndexOutOfBoundsException.class, () -> expression.delete(2, 1));
+        assertThrows(IndexOutOfBoundsException.class, () -> expression.delete(-1, 0));
+        assertEquals("1+2", expression.getText());
+    }
+}
@@ -0,0 +1,222 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/** Recovery and compaction of {@link LogEmployeeStore}. */
+class LogEmployeeStoreTest {
+    @TempDir
+    Path dir;
+
+    private Path file() {
+        return dir.resolve("employees.log");
+    }
+
+    @Test
+    void reopenedStoreHasTheSameRows() throws Exception {
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.createTableIfNotExists(true);
+            store.insert("Ann", "ann@example.com", 1000);
+            store.insert("Bob", null, 2000);
+            store.insert("Cid", "cid@example.com", 3000);
+            store.updateSalary(1, 1500);
+            store.update(2, "Robert", "bob@example.com", 2500);
+            store.delete(3);
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann ann@example.com 1500.0", "2 Robert bob@example.com 2500.0"), rows(store));
+            store.insert("Dee", null, 4000);
+            assertTrue(store.exists(4)); // generated ids continue after the highest one logged, deleted or not
+            assertEquals(0, store.getDiscardedBytes());
+        }
+    }
+
+    @Test
+    void recordWithABadChecksumAndEverythingAfterItAreDiscarded() throws Exception {
+        long thirdAt;
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.insert(1, "Ann", null, 1000);
+            store.insert(2, "Bob", null, 2000);
+            thirdAt = store.getLogBytes();
+            store.insert(3, "Cid", null, 3000);
+            store.insert(4, "Dee", null, 4000);
+        }
+        // flip a byte of the third record's salary, as a torn write would leave it
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, thirdAt + 14);
+            one.put(0, (byte) ~one.get(0)).rewind();
+            channel.write(one, thirdAt + 14);
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann null 1000.0", "2 Bob null 2000.0"), rows(store));
+            assertTrue(store.getDiscardedBytes() > 0);
+            assertEquals(thirdAt, store.getLogBytes());
+            store.insert(5, "Eve", null, 5000); // appended where the damage was
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann null 1000.0", "2 Bob null 2000.0", "5 Eve null 5000.0"), rows(store));
+            assertEquals(0, store.getDiscardedBytes());
+        }
+    }
+
+    @Test
+    void truncatedLastRecordIsDiscarded() throws Exception {
+        long lastAt;
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.insert(1, "Ann", null, 1000);
+            lastAt = store.getLogBytes();
+            store.insert(2, "Bob", null, 2000);
+        }
+        try (FileChannel channel = FileChannel.open(file(), StandardOpenOption.WRITE)) {
+            channel.truncate(lastAt + 10); // the process died part-way through the append
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann null 1000.0"), rows(store));
+            assertEquals(lastAt, store.getLogBytes());
+        }
+    }
+
+    @Test
+    void fileThatIsNotAStoreIsRefused() throws Exception {
+        Files.writeString(file(), "id,name,email,salary\n");
+        assertThrows(java.io.IOException.class, () -> new LogEmployeeStore(file()));
+        assertEquals("id,name,email,salary\n", Files.readString(file()));
+    }
+
+    @Test
+    void compactionRunsOnceGarbageDominatesAndKeepsTheLiveRows() throws Exception {
+        try (LogEmployeeStore store = new LogEmployeeStore(file(), false, 1024)) {
+            store.createTableIfNotExists(false);
+            for (int id = 1; id <= 10; id++) store.insert(id, "Employee " + id, "e" + id + "@example.com", id);
+            for (int round = 0; round < 50; round++) {
+                for (int id = 1; id <= 10; id++) store.updateSalary(id, round * 100 + id);
+            }
+            store.delete(10);
+            assertTrue(store.getCompactionCount() > 0);
+            assertTrue(store.getGarbageBytes() <= store.getLogBytes() / 2 + 1024);
+            assertEquals(9, store.size());
+            assertFalse(Files.exists(dir.resolve("employees.log.compact")));
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(9, store.size());
+            assertEquals(4909.0, store.findById(9, (id, name, email, salary) -> salary));
+            assertNull(store.findById(10, (id, name, email, salary) -> salary));
+        }
+    }
+
+    @Test
+    void failedCompactionDoesNotFailTheWriteAndIsRetriedLater() throws Exception {
+        Path blocker = dir.resolve("employees.log.compact");
+        try (LogEmployeeStore store = new LogEmployeeStore(file(), false, 1024)) {
+            store.insert(1, "Ann", null, 1000);
+            Files.createDirectory(blocker); // the compacted file cannot be created
+            for (int round = 0; round < 60; round++) store.updateSalary(1, round);
+            assertEquals(1, store.getCompactionFailureCount()); // not retried on every write
+            assertEquals(0, store.getCompactionCount());
+            assertEquals(59.0, store.findById(1, (id, name, email, salary) -> salary));
+
+            Files.delete(blocker);
+            long failedAt = store.getGarbageBytes();
+            while (store.getCompactionCount() == 0) store.updateSalary(1, 5000);
+            assertTrue(store.getLogBytes() < failedAt);
+            store.insert(2, "Bob", null, 2000); // the swapped-in file takes writes
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann null 5000.0", "2 Bob null 2000.0"), rows(store));
+        }
+    }
+
+    @Test
+    void configuredStoreThatCannotBeOpenedIsReportedAsSqlException() throws Exception {
+        Files.writeString(file(), "not a store");
+        System.setProperty(EmployeeStore.LOG_FILE_PROPERTY, file().toString());
+        try {
+            SQLException e = assertThrows(SQLException.class, () -> EmployeeStore.configured(null));
+            assertEquals("58030", e.getSQLState());
+        } finally {
+            System.clearProperty(EmployeeStore.LOG_FILE_PROPERTY);
+        }
+    }
+
+    @Test
+    void explicitCompactionLeavesOnlyLiveRowsAndConstraints() throws Exception {
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.createTableIfNotExists(false);
+            store.insert(2, "Bob", "bob@example.com", 2000);
+            store.insert(1, "Ann", "ann@example.com", 1000);
+            store.update(2, "Bob", "robert@example.com", 2100);
+            store.insert(3, "Cid", null, 3000);
+            store.delete(3);
+            long before = store.getLogBytes();
+
+            store.compact();
+            assertEquals(0, store.getGarbageBytes());
+            assertTrue(store.getLogBytes() < before);
+            assertEquals(List.of("1 Ann ann@example.com 1000.0", "2 Bob robert@example.com 2100.0"), rows(store));
+
+            SQLException duplicate = assertThrows(SQLException.class,
+                    () -> store.insert(4, "Other", "ANN@example.com", 1));
+            assertEquals("23000", duplicate.getSQLState());
+            store.insert(4, "Other", "bob@example.com", 1); // freed by the update
+        }
+    }
+
+    @Test
+    void leftoverCompactionFileIsRemovedOnOpen() throws Exception {
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.insert(1, "Ann", null, 1000);
+        }
+        Path leftover = dir.resolve("employees.log.compact");
+        Files.write(leftover, new byte[100]);
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertFalse(Files.exists(leftover));
+            assertEquals(List.of("1 Ann null 1000.0"), rows(store));
+        }
+    }
+
+    @Test
+    void fileOpenInAnotherStoreIsRefused() throws Exception {
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            store.insert(1, "Ann", null, 1000);
+            java.io.IOException e = assertThrows(java.io.IOException.class, () -> new LogEmployeeStore(file()));
+            assertTrue(e.getMessage().contains("already open"), e.getMessage());
+
+            store.updateSalary(1, 2000);
+            store.compact(); // the lock moves to the compacted file
+            assertThrows(java.io.IOException.class, () -> new LogEmployeeStore(file()));
+            store.insert(2, "Bob", null, 2000);
+        }
+        try (LogEmployeeStore store = new LogEmployeeStore(file())) {
+            assertEquals(List.of("1 Ann null 2000.0", "2 Bob null 2000.0"), rows(store));
+        }
+    }
+
+    @Test
+    void closedStoreRefusesOperations() throws Exception {
+        LogEmployeeStore store = new LogEmployeeStore(file());
+        store.close();
+        SQLException closed = assertThrows(SQLException.class, () -> store.exists(1));
+        assertEquals("08003", closed.getSQLState());
+    }
+
+    private static List<String> rows(EmployeeStore store) throws SQLException {
+        List<String> rows = new ArrayList<>();
+        new EmployeePager(store, 2).forEachRemaining(
+                (id, name, email, salary) -> rows.add(id + " " + name + " " + email + " " + salary));
+        return rows;
+    }
+}
@@ -0,0 +1,160 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * {@link ParallelEvaluator} against {@link ExpressionEngine} and sequential
+ * {@link CompiledExpression} evaluation: same int values, bit-identical
+ * floats, and the exception sequential evaluation would throw first.
+ */
+class ParallelEvaluatorTest {
+    private static final ExpressionEngine ENGINE = new ExpressionEngine();
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdownNow();
+    }
+
+    private static void assertSameAsEngine(String expression, int threshold) {
+        assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> ENGINE.evaluateInt(expression)),
+                ExpressionBytecodeCompilerTest.outcome(
+                        () -> new ParallelEvaluator(ENGINE.compile(expression, false), threshold, pool).evaluateInt()),
+                expression);
+        assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> ENGINE.evaluateFloat(expression)),
+                ExpressionBytecodeCompilerTest.outcome(
+                        () -> new ParallelEvaluator(ENGINE.compile(expression, true), threshold, pool).evaluateFloat()),
+                expression);
+    }
+
+    /** A sum of {@code terms} mixed terms over x and y, long enough to be split many times. */
+    private static String longExpression(Random random, int terms) {
+        StringBuilder expression = new StringBuilder("x");
+        for (int i = 1; i < terms; i++) {
+            expression.append("+-*".charAt(random.nextInt(3) == 0 ? 1 : 0));
+            switch (random.nextInt(4)) {
+                case 0: expression.append(random.nextInt(1000)).append(".25*y"); break;
+                case 1: expression.append("(x-").append(random.nextInt(100)).append(")/(y+1)"); break;
+                case 2: expression.append('(').append(safeExpression(random)).append(')'); break;
+                default: expression.append("y*y*").append(random.nextInt(100_000)); break;
+            }
+        }
+        return expression.toString();
+    }
+
+    /** A random expression that evaluates without error in both modes. */
+    private static String safeExpression(Random random) {
+        while (true) {
+            String expression = ExpressionBytecodeCompilerTest.randomExpression(random, 2);
+            try {
+                ENGINE.evaluateInt(expression);
+                ENGINE.evaluateFloat(expression);
+                return expression;
+            } catch (ArithmeticException e) {
+                // zero divisor, try another
+            }
+        }
+    }
+
+    @Test
+    void corpusEvaluatesAsTheEngineDoes() {
+        for (String expression : ExpressionBytecodeCompilerTest.corpus()) {
+            assertSameAsEngine(expression, 1);
+            assertSameAsEngine(expression, 16);
+        }
+    }
+
+    @Test
+    void randomExpressionsEvaluateAsTheEngineDoes() {
+        Random random = new Random(15);
+        for (int i = 0; i < 500; i++) {
+            assertSameAsEngine(ExpressionBytecodeCompilerTest.randomExpression(random, 5), 1 + random.nextInt(8));
+        }
+    }
+
+    @Test
+    void largeExpressionsMatchSequentialEvaluationBitForBit() {
+        Random random = new Random(1);
+        for (int round = 0; round < 5; round++) {
+            String source = longExpression(random, 1_500);
+            CompiledExpression floats = ENGINE.compile(source, true, "x", "y");
+            ParallelEvaluator parallelFloats = new ParallelEvaluator(floats, 64, pool);
+            CompiledExpression ints = ENGINE.compile(source.replace(".25", ""), false, "x", "y");
+            ParallelEvaluator parallelInts = new ParallelEvaluator(ints, 64, pool);
+            assertTrue(parallelFloats.isParallel());
+            for (int k = 0; k < 5; k++) {
+                double x = random.nextDouble() * 1e6;
+                double y = random.nextDouble() - 0.5;
+                assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> Double.doubleToRawLongBits(floats.evaluateFloat(x, y))),
+                        ExpressionBytecodeCompilerTest.outcome(
+                                () -> Double.doubleToRawLongBits(parallelFloats.evaluateFloat(x, y))), source);
+                int xi = random.nextInt();
+                int yi = random.nextInt(1000);
+                assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> ints.evaluateInt(xi, yi)),
+                        ExpressionBytecodeCompilerTest.outcome(() -> parallelInts.evaluateInt(xi, yi)), source);
+            }
+        }
+    }
+
+    @Test
+    void overflowWrapsAsInSequentialEvaluation() {
+        String source = "2147483647" + "+2147483647".repeat(9_999);
+        ParallelEvaluator evaluator = new ParallelEvaluator(ENGINE.compile(source, false), 8, pool);
+        assertTrue(evaluator.isParallel());
+        assertEquals(ENGINE.evaluateInt(source), evaluator.evaluateInt());
+        assertEquals(2147483647 * 10_000, evaluator.evaluateInt());
+    }
+
+    @Test
+    void theFirstFailureInEvaluationOrderIsThrown() {
+        // term k fails with "Modulo by zero" when x == k and with "Division by zero" when y == k
+        StringBuilder source = new StringBuilder("0");
+        for (int k = 1; k <= 1_000; k++) source.append("+").append(k).append("%(x-").append(k).append(")+")
+                .append(k).append("/(y-").append(k).append(")");
+        CompiledExpression ints = ENGINE.compile(source.toString(), false, "x", "y");
+        CompiledExpression floats = ENGINE.compile(source.toString().replace("%", "*0%"), true, "x", "y");
+        ParallelEvaluator parallel = new ParallelEvaluator(ints, 16, pool);
+        ParallelEvaluator parallelFloats = new ParallelEvaluator(floats, 16, pool);
+        for (int round = 0; round < 20; round++) {
+            int x = 1 + round * 50;
+            int y = 999 - round * 50;
+            String expected = x <= y ? "Modulo by zero" : "Division by zero";
+            assertEquals(expected, assertThrows(ArithmeticException.class, () -> ints.evaluateInt(x, y)).getMessage());
+            assertEquals(expected, assertThrows(ArithmeticException.class, () -> parallel.evaluateInt(x, y)).getMessage());
+            assertEquals(ExpressionBytecodeCompilerTest.outcome(() -> floats.evaluateFloat(x, y)),
+                    ExpressionBytecodeCompilerTest.outcome(() -> parallelFloats.evaluateFloat(x, y)));
+        }
+        assertEquals(ints.evaluateInt(-1, -1), parallel.evaluateInt(-1, -1));
+    }
+
+    @Test
+    void deepNestingIsEvaluated() {
+        String source = "1+(".repeat(300) + "1" + ")".repeat(300);
+        assertSameAsEngine(source, 8);
+        assertEquals(301, new ParallelEvaluator(ENGINE.compile(source, false), 8, pool).evaluateInt());
+    }
+
+    @Test
+    void smallExpressionsStayOnTheCallingThread() {
+        ParallelEvaluator evaluator = new ParallelEvaluator(ENGINE.compile("x*2+1", false, "x"));
+        assertFalse(evaluator.isParallel());
+        assertEquals(7, evaluator.evaluateInt(3));
+        assertThrows(IllegalArgumentException.class, () -> evaluator.evaluateInt());
+        assertThrows(IllegalStateException.class, () -> evaluator.evaluateFloat(3));
+        assertThrows(IllegalArgumentException.class, () -> new ParallelEvaluator(ENGINE.compile("1", false), 0, pool));
+    }
+}